@@ -1,7 +1,10 @@
 package org.fuusio.app;
 
+import android.os.SystemClock;
+
 import org.fuusio.api.app.FuusioApplication;
 import org.fuusio.api.dependency.ApplicationScope;
+import org.fuusio.api.util.L;
 
 /*
 import com.floxp.library.components.Calculator;
@@ -42,8 +45,32 @@ public class FuusioSampleApp extends FuusioApplication {
     public final static String PATH_RESOURCES_NINEPATCHES = PATH_RESOURCES + "/resources";
     public final static String PATH_RESOURCES_SOUNDS = PATH_RESOURCES + "/sounds";
 
+    /**
+     * The uptime in milliseconds when this {@link FuusioSampleApp} was constructed. Used as
+     * the reference point for the startup time measurements logged by {@link #logStartupTime}.
+     */
+    private static long sStartTime;
+
     public FuusioSampleApp() {
         super();
+        sStartTime = SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        logStartupTime(this, "onCreate");
+    }
+
+    /**
+     * Logs the time elapsed since the construction of this {@link FuusioSampleApp}. This is
+     * used for measuring the effect of resolving dependencies lazily on the startup time.
+     *
+     * @param object The object that reached the measured startup phase.
+     * @param method The name of the method in which the measured startup phase was reached.
+     */
+    public static void logStartupTime(final Object object, final String method) {
+        L.d(object, method, "Startup time: " + (SystemClock.uptimeMillis() - sStartTime) + " ms");
     }
 
     @Override
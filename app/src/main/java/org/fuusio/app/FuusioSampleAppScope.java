@@ -13,13 +13,9 @@ public class FuusioSampleAppScope extends FuusioApplicationScope {
         super(pApp);
     }
 
-    @Override
-    protected <T> T getDependency() {
-
-        if (type(TestFlow.class)) {
-            return dependency(new TestFlowImpl(D.get(FlowFragmentContainer.class), null));
-        }
-        return super.getDependency();
+    @Provides
+    protected TestFlow provideTestFlow() {
+        return new TestFlowImpl(D.get(FlowFragmentContainer.class), null);
     }
 
     @Override
@@ -14,15 +14,13 @@ public class HomeDependencyScope extends DependencyScope {
         mActivity = pActivity;
     }
 
-    @Override
-    protected <T> T getDependency() {
-
-        if (type(HomePresenter.class)) {
-            return dependency(new HomePresenterImpl());
-        } else if (type(HomeView.class)) {
-            return dependency(mActivity);
-        }
+    @Provides
+    protected HomePresenter provideHomePresenter() {
+        return new HomePresenterImpl();
+    }
 
-        return null;
+    @Provides
+    protected HomeView provideHomeView() {
+        return mActivity;
     }
 }
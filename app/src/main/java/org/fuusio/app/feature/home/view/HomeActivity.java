@@ -18,6 +18,7 @@ import org.fuusio.api.dependency.DependencyScope;
 import org.fuusio.api.dependency.DependencyScopeOwner;
 import org.fuusio.api.flow.FlowManager;
 import org.fuusio.app.FuusioBaseActivity;
+import org.fuusio.app.FuusioSampleApp;
 import org.fuusio.app.R;
 import org.fuusio.app.feature.home.HomeDependencyScope;
 import org.fuusio.app.feature.home.presenter.HomePresenter;
@@ -104,6 +105,7 @@ public class HomeActivity extends FuusioBaseActivity<HomePresenter> implements H
         // REMOVE mToolbar.setHomeButtonEnabled(true);
 */
         mPresenter = D.get(HomePresenter.class, this);
+        FuusioSampleApp.logStartupTime(this, "onCreate");
     }
 
     @SuppressWarnings("unchecked")
@@ -122,6 +124,7 @@ public class HomeActivity extends FuusioBaseActivity<HomePresenter> implements H
 
         FlowManager.startFlow(TestFlow.class, this, null);
         // OPTION FlowManager.startFlow(D.get(TestFlow.class, this), null);
+        FuusioSampleApp.logStartupTime(this, "onStart");
     }
 
     @Override
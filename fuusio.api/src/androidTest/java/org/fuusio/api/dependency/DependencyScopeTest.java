@@ -15,6 +15,8 @@
  */
 package org.fuusio.api.dependency;
 
+import android.app.Application;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
@@ -27,13 +29,32 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(AndroidJUnit4.class)
 @SmallTest
 public class DependencyScopeTest {
 
+    private static final int THREAD_COUNT = 8;
+    private static final int RESOLUTION_COUNT = 10000;
+    private static final int DEPENDANT_COUNT = 100000;
+
     private Context mApplicationContext;
     private FlowFragmentContainer mFragmentHost;
     private TestView mTestView;
@@ -78,6 +99,21 @@ public class DependencyScopeTest {
         assertTrue(scope.wasDisposed());
         assertTrue(scope.isCleared());
 
+        // Without an active scope, dependencies are resolved from the ApplicationScope
+
+        final TestApplicationScope applicationScope = new TestApplicationScope(new Application());
+
+        try {
+            assertSame(applicationScope, ApplicationScope.getInstance());
+            assertSame(D.get(TestApplicationScope.Corge.class), applicationScope.getDependency(TestApplicationScope.Corge.class, null, false));
+        } finally {
+            applicationScope.dispose();
+        }
+
+        // Without an active scope and an ApplicationScope, there is no scope to resolve from
+
+        assertNull(ApplicationScope.getInstance());
+
         boolean npeCatched = false;
 
         try {
@@ -89,6 +125,421 @@ public class DependencyScopeTest {
         assertTrue(npeCatched);
     }
 
+    @Test
+    public void testProvides() {
+
+        final TestProvidingDependencyScope.Subscope scope = new TestProvidingDependencyScope.Subscope();
+
+        final TestProvidingDependencyScope.Bar bar = scope.getDependency(TestProvidingDependencyScope.Bar.class, null, false);
+        assertNotNull(bar);
+        assertSame(bar, scope.getDependency(TestProvidingDependencyScope.Bar.class, null, false));
+        assertEquals(1, scope.getProvideCount());
+
+        // A supertype is resolved by the first provider method returning a subtype of it
+
+        final TestProvidingDependencyScope.Baz baz = scope.getDependency(TestProvidingDependencyScope.Baz.class, null, false);
+        assertEquals(TestProvidingDependencyScope.Bar.class, baz.getClass());
+
+        final TestProvidingDependencyScope.BarSubclass barSubclass = scope.getDependency(TestProvidingDependencyScope.BarSubclass.class, null, false);
+        assertEquals(TestProvidingDependencyScope.BarSubclass.class, barSubclass.getClass());
+
+        assertNotNull(scope.getDependency(TestProvidingDependencyScope.Qux.class, null, false));
+    }
+
+    @Test
+    public void testResolutionMemoization() {
+
+        final TestProvidingDependencyScope.Subscope scope = new TestProvidingDependencyScope.Subscope();
+        scope.setParentScope(mParentScope);
+
+        final TestParentDependencyScope.Foo foo = scope.getDependency(TestParentDependencyScope.Foo.class, null, false);
+        assertNotNull(foo);
+        assertEquals(1, scope.getDependencyRequestCount());
+
+        // The resolving parent scope is memoized
+
+        assertSame(foo, scope.getDependency(TestParentDependencyScope.Foo.class, null, false));
+        assertSame(foo, scope.getDependency(TestParentDependencyScope.Foo.class, null, true));
+        assertEquals(1, scope.getDependencyRequestCount());
+
+        // Changing the chain invalidates the memoized resolutions
+
+        final TestParentDependencyScope parentScope = new TestParentDependencyScope();
+        scope.setParentScope(parentScope);
+
+        final TestParentDependencyScope.Foo newFoo = scope.getDependency(TestParentDependencyScope.Foo.class, null, false);
+        assertTrue(foo != newFoo);
+        assertEquals(2, scope.getDependencyRequestCount());
+
+        // A cached dependency is returned also when a new instance is allowed to be created
+
+        final TestProvidingDependencyScope.Bar bar = scope.getDependency(TestProvidingDependencyScope.Bar.class, null, false);
+        assertSame(bar, scope.getDependency(TestProvidingDependencyScope.Bar.class, null, true));
+    }
+
+    @Test
+    public void testResolutionInvalidation() {
+
+        final TestProvidingDependencyScope.Subscope scope = new TestProvidingDependencyScope.Subscope();
+        scope.setParentScope(mParentScope);
+
+        final TestParentDependencyScope.Foo foo = scope.getDependency(TestParentDependencyScope.Foo.class, null, false);
+        assertEquals(1, scope.getDependencyRequestCount());
+
+        // Changes outside of the scope chain and dependants of other types keep the memoized resolutions
+
+        final TestParentDependencyScope otherScope = new TestParentDependencyScope();
+        otherScope.cache(String.class, "Value");
+        scope.addDependant(new TestProvidingDependencyScope.Qux());
+
+        assertSame(foo, scope.getDependency(TestParentDependencyScope.Foo.class, null, false));
+        assertEquals(1, scope.getDependencyRequestCount());
+
+        // A dependant of the resolved type invalidates the memoized resolution
+
+        otherScope.addDependant(mParentScope.new Foo());
+
+        assertSame(foo, scope.getDependency(TestParentDependencyScope.Foo.class, null, false));
+        assertEquals(2, scope.getDependencyRequestCount());
+
+        // A cached dependency in the scope chain invalidates the memoized resolutions
+
+        mParentScope.cache(String.class, "Value");
+
+        assertSame(foo, scope.getDependency(TestParentDependencyScope.Foo.class, null, false));
+        assertEquals(3, scope.getDependencyRequestCount());
+        assertSame(foo, scope.getDependency(TestParentDependencyScope.Foo.class, null, false));
+        assertEquals(3, scope.getDependencyRequestCount());
+    }
+
+    @Test
+    public void testConcurrentResolution() throws InterruptedException {
+
+        final TestProvidingDependencyScope.Subscope scope = new TestProvidingDependencyScope.Subscope();
+        scope.setParentScope(mParentScope);
+
+        final DependencyScopeOwner owner = createOwner("ConcurrentResolution", scope);
+
+        Dependency.activateScope(owner, scope);
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        final AtomicReference<Object> firstBar = new AtomicReference<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+
+                        for (int j = 0; j < RESOLUTION_COUNT; j++) {
+                            final TestProvidingDependencyScope.Bar bar = D.get(TestProvidingDependencyScope.Bar.class);
+
+                            if (!firstBar.compareAndSet(null, bar) && firstBar.get() != bar) {
+                                throw new IllegalStateException("Different instances returned");
+                            }
+
+                            // Resolutions via getOrCreate are not served from the cache, so that
+                            // the requested types of the threads are interleaved in the scopes
+
+                            assertNotNull(D.getOrCreate(TestParentDependencyScope.Foo.class));
+                            assertNotNull(D.getOrCreate(TestProvidingDependencyScope.Quux.class));
+                            assertNotNull(D.getOrCreate(TestProvidingDependencyScope.Baz.class));
+                            assertNotNull(D.get(TestProvidingDependencyScope.Qux.class));
+                        }
+                    } catch (final Throwable throwable) {
+                        failure.set(throwable);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        startLatch.countDown();
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        Dependency.deactivateScope(owner);
+
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void testLazyAndProvider() {
+
+        final TestProvidingDependencyScope.Subscope scope = new TestProvidingDependencyScope.Subscope();
+
+        final DependencyScopeOwner owner = createOwner("LazyAndProvider", scope);
+
+        Dependency.activateScope(owner, scope);
+
+        final Lazy<TestProvidingDependencyScope.Bar> lazyBar = D.lazy(TestProvidingDependencyScope.Bar.class);
+        final Provider<TestProvidingDependencyScope.Bar> barProvider = D.provider(TestProvidingDependencyScope.Bar.class);
+        assertEquals(0, scope.getProvideCount());
+
+        // A Lazy resolves the dependency on the first get() and caches it to the scope
+
+        final TestProvidingDependencyScope.Bar bar = lazyBar.get();
+        assertNotNull(bar);
+        assertSame(bar, lazyBar.get());
+        assertSame(bar, barProvider.get());
+        assertEquals(1, scope.getProvideCount());
+
+        // A Provider resolves the dependency from the scope on each get(), served from its cache
+
+        final Provider<TestProvidingDependencyScope.Quux> quuxProvider = D.provider(TestProvidingDependencyScope.Quux.class);
+        assertEquals(0, scope.getDependencyRequestCount());
+        assertNotNull(quuxProvider.get());
+        assertNotNull(quuxProvider.get());
+        assertEquals(1, scope.getDependencyRequestCount());
+
+        Dependency.deactivateScope(owner);
+    }
+
+    @Test
+    public void testScopeRetaining() {
+
+        final DependencyScopeCache cache = new DependencyScopeCache(null, 1);
+        Dependency.setScopeCache(cache);
+
+        try {
+            final TestProvidingDependencyScope.Subscope scope1 = createDisposableScope();
+            final TestProvidingDependencyScope.Subscope scope2 = createDisposableScope();
+            final TestProvidingDependencyScope.Subscope scope3 = createDisposableScope();
+            final DependencyScopeOwner owner1 = createOwner("Retaining1", scope1);
+            final DependencyScopeOwner owner2 = createOwner("Retaining2", scope2);
+            final DependencyScopeOwner owner3 = createOwner("Retaining3", scope3);
+
+            Dependency.activateScope(owner1);
+            final TestProvidingDependencyScope.Bar bar = D.get(TestProvidingDependencyScope.Bar.class);
+
+            // Switching between the owners reuses the retained scope and its dependencies
+
+            Dependency.activateScope(owner2);
+            assertEquals(1, cache.getRetainedScopeCount());
+
+            Dependency.activateScope(owner1);
+            assertSame(scope1, Dependency.getActiveScope());
+            assertSame(bar, D.get(TestProvidingDependencyScope.Bar.class));
+            assertEquals(1, scope1.getProvideCount());
+
+            // The least recently used scope is evicted and disposed
+
+            Dependency.activateScope(owner2);
+            Dependency.activateScope(owner3);
+            assertEquals(1, cache.getRetainedScopeCount());
+            assertNull(scope1.getOwner());
+            assertSame(owner2, scope2.getOwner());
+
+            cache.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            assertEquals(0, cache.getRetainedScopeCount());
+            assertNull(scope2.getOwner());
+
+            Dependency.deactivateScope(owner3);
+        } finally {
+            Dependency.setScopeCache(null);
+        }
+    }
+
+    @Test
+    public void testWarmUp() {
+
+        final TestApplicationScope applicationScope = new TestApplicationScope(new Application());
+        final List<Runnable> pendingTasks = new ArrayList<>();
+
+        try {
+            applicationScope.warmUp(new Executor() {
+                @Override
+                public void execute(final Runnable task) {
+                    pendingTasks.add(task);
+                }
+            });
+
+            assertEquals(2, pendingTasks.size());
+            assertTrue(applicationScope.isWarmingUp());
+
+            // A request for a dependency whose warm-up has not started runs the warm-up inline
+
+            final TestApplicationScope.Grault grault = D.get(TestApplicationScope.Grault.class);
+            assertNotNull(grault);
+            assertSame(grault.getCorge(), D.get(TestApplicationScope.Corge.class));
+            assertFalse(applicationScope.isWarmingUp());
+            assertEquals(1, applicationScope.getWarmUpCompletedCount());
+
+            // Running the already completed warm-ups does not construct the dependencies again
+
+            for (final Runnable task : pendingTasks) {
+                task.run();
+            }
+
+            assertSame(grault, D.get(TestApplicationScope.Grault.class));
+            assertEquals(1, applicationScope.getWarmUpCompletedCount());
+
+            final Map<Class<?>, Long> report = applicationScope.getWarmUpReport();
+            assertEquals(2, report.size());
+            assertTrue(report.containsKey(TestApplicationScope.Corge.class));
+            assertTrue(report.containsKey(TestApplicationScope.Grault.class));
+        } finally {
+            applicationScope.dispose();
+        }
+    }
+
+    @Test
+    public void testProfiler() {
+
+        final TestApplicationScope applicationScope = new TestApplicationScope(new Application());
+        final DependencyProfiler profiler = new DependencyProfiler();
+        Dependency.setProfiler(profiler);
+
+        try {
+            final TestApplicationScope.Grault grault = D.get(TestApplicationScope.Grault.class);
+            assertSame(grault, D.get(TestApplicationScope.Grault.class));
+
+            final List<DependencyProfiler.ResolutionRecord> records = profiler.getResolutions();
+            assertEquals(3, records.size());
+
+            // The nested resolution of Corge completes before the resolution of Grault
+
+            assertEquals(TestApplicationScope.Corge.class.getName(), records.get(0).getTypeName());
+            assertEquals(DependencyProfiler.Kind.PROVIDED, records.get(0).getKind());
+            assertEquals(1, records.get(0).getDepth());
+            assertEquals(TestApplicationScope.Grault.class.getName(), records.get(1).getTypeName());
+            assertEquals(DependencyProfiler.Kind.PROVIDED, records.get(1).getKind());
+            assertEquals(0, records.get(1).getDepth());
+            assertEquals(DependencyProfiler.Kind.CACHED, records.get(2).getKind());
+            assertEquals(TestApplicationScope.class.getName(), records.get(2).getScopeName());
+
+            final List<DependencyProfiler.Node> nodes = profiler.getGraphs().get(TestApplicationScope.class.getName());
+            assertEquals(2, nodes.size());
+
+            final DependencyProfiler.Node graultNode = nodes.get(1);
+            assertEquals(TestApplicationScope.Grault.class.getName(), graultNode.getTypeName());
+            assertEquals(1, graultNode.getConstructionCount());
+            assertTrue(graultNode.getDependencyTypeNames().contains(TestApplicationScope.Corge.class.getName()));
+        } finally {
+            Dependency.setProfiler(null);
+            applicationScope.dispose();
+        }
+    }
+
+    @Test
+    public void testDependantLookup() {
+
+        final TestProvidingDependencyScope.Subscope scope = new TestProvidingDependencyScope.Subscope();
+        scope.setParentScope(mParentScope);
+
+        // Repeated requests by the same dependant do not accumulate duplicates
+
+        final Object dependant = new Object();
+
+        for (int i = 0; i < DEPENDANT_COUNT; i++) {
+            scope.getDependency(TestProvidingDependencyScope.Bar.class, dependant, false);
+        }
+
+        assertEquals(1, scope.mDependants.size());
+
+        for (int i = 0; i < DEPENDANT_COUNT; i++) {
+            scope.getDependency(TestProvidingDependencyScope.Bar.class, new Object(), false);
+        }
+
+        assertEquals(DEPENDANT_COUNT + 1, scope.mDependants.size());
+        assertNotNull(scope.getDependency(TestParentDependencyScope.Foo.class, null, false));
+
+        // The most recent dependant assignable to the requested type is found
+
+        final TestView view = Mockito.mock(TestView.class);
+        scope.addDependant(view);
+        assertSame(view, scope.getDependency(TestView.class, null, false));
+        assertEquals(DEPENDANT_COUNT + 1, scope.mDependants.size());
+    }
+
+    @Test
+    public void testMultiBindings() {
+
+        final DependencyScope parentScope = new TestProvidingDependencyScope() {
+            @Override
+            protected void contributeBindings(final MultiBindings bindings) {
+                bindings.addToSet(String.class, "parent");
+                bindings.putInMap(String.class, Integer.class, "shared", 1);
+                bindings.putInMap(String.class, Integer.class, "parent", 2);
+            }
+        };
+
+        final TestProvidingDependencyScope.Subscope scope = new TestProvidingDependencyScope.Subscope() {
+            @Override
+            protected void contributeBindings(final MultiBindings bindings) {
+                bindings.addToSet(String.class, "child");
+                bindings.putInMap(String.class, Integer.class, "shared", 3);
+            }
+        };
+
+        scope.setParentScope(parentScope);
+        final DependencyScopeOwner owner = createOwner("MultiBindings", scope);
+        Dependency.activateScope(owner);
+
+        try {
+            final Set<String> strings = D.getSet(String.class);
+            assertEquals(Arrays.asList("parent", "child"), new ArrayList<>(strings));
+            assertSame(strings, D.getSet(String.class));
+            assertTrue(D.getSet(Integer.class).isEmpty());
+
+            final Map<String, Integer> integers = D.getMap(String.class, Integer.class);
+            assertEquals(2, integers.size());
+            assertEquals(Integer.valueOf(3), integers.get("shared"));
+            assertEquals(Integer.valueOf(2), integers.get("parent"));
+            assertSame(integers, D.getMap(String.class, Integer.class));
+
+            try {
+                strings.add("other");
+                fail();
+            } catch (UnsupportedOperationException e) {
+                // Expected
+            }
+
+            // Creating and linking scopes outside of the scope chain keeps the merged bindings
+
+            new TestParentDependencyScope().setParentScope(parentScope);
+            assertSame(strings, D.getSet(String.class));
+            assertSame(integers, D.getMap(String.class, Integer.class));
+
+            // Changing the parent scope merges the bindings again
+
+            scope.setParentScope(null);
+            assertEquals(Collections.singleton("child"), D.getSet(String.class));
+        } finally {
+            Dependency.deactivateScope(owner);
+        }
+    }
+
+    private static TestProvidingDependencyScope.Subscope createDisposableScope() {
+        return new TestProvidingDependencyScope.Subscope() {
+            @Override
+            public boolean isDisposable() {
+                return true;
+            }
+        };
+    }
+
+    private static DependencyScopeOwner createOwner(final String scopeId, final DependencyScope scope) {
+        return new DependencyScopeOwner() {
+            @Override
+            public String getScopeId() {
+                return scopeId;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public <T extends DependencyScope> T getDependencyScope() {
+                return (T) scope;
+            }
+        };
+    }
+
     @After
     public void afterTests() {
     }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.dependency;
+
+import android.app.Application;
+
+import java.util.Map;
+
+public class TestApplicationScope extends ApplicationScope<Application> {
+
+    private int mWarmUpCompletedCount;
+
+    public TestApplicationScope(final Application application) {
+        super(application);
+    }
+
+    public int getWarmUpCompletedCount() {
+        return mWarmUpCompletedCount;
+    }
+
+    @Provides
+    protected Corge provideCorge() {
+        return new Corge();
+    }
+
+    @Provides
+    protected Grault provideGrault() {
+        return new Grault(D.get(Corge.class));
+    }
+
+    @Override
+    protected Class<?>[] getWarmUpDependencies() {
+        return new Class<?>[]{Corge.class, Grault.class};
+    }
+
+    @Override
+    protected void onWarmUpCompleted(final Map<Class<?>, Long> report) {
+        mWarmUpCompletedCount++;
+    }
+
+    public static class Corge {
+    }
+
+    public static class Grault {
+
+        private final Corge mCorge;
+
+        public Grault(final Corge corge) {
+            mCorge = corge;
+        }
+
+        public Corge getCorge() {
+            return mCorge;
+        }
+    }
+}
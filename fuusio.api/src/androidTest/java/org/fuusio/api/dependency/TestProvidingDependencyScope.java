@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.dependency;
+
+public class TestProvidingDependencyScope extends DependencyScope {
+
+    private int mProvideCount;
+    private int mDependencyRequestCount;
+
+    public final int getProvideCount() {
+        return mProvideCount;
+    }
+
+    public final int getDependencyRequestCount() {
+        return mDependencyRequestCount;
+    }
+
+    @Provides
+    protected Bar provideBar() {
+        mProvideCount++;
+        return new Bar();
+    }
+
+    @Provides
+    protected BarSubclass provideBarSubclass() {
+        mProvideCount++;
+        return new BarSubclass();
+    }
+
+    @Override
+    protected <T> T getDependency() {
+
+        mDependencyRequestCount++;
+
+        if (type(Quux.class)) {
+            return dependency(new Quux());
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean isDisposable() {
+        return false;
+    }
+
+    public interface Baz {
+    }
+
+    public static class Bar implements Baz {
+    }
+
+    public static class BarSubclass extends Bar {
+    }
+
+    public static class Qux {
+    }
+
+    public static class Quux {
+    }
+
+    public static class Subscope extends TestProvidingDependencyScope {
+
+        @Provides
+        protected Qux provideQux() {
+            return new Qux();
+        }
+    }
+}
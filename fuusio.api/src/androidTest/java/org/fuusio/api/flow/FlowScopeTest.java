@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.flow;
+
+import android.os.Bundle;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.fuusio.api.dependency.D;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class FlowScopeTest {
+
+    private FlowFragmentContainer mFragmentHost;
+    private FlowManager mFlowManager;
+
+    @Before
+    public void beforeTests() {
+        mFragmentHost = Mockito.mock(FlowFragmentContainer.class);
+        mFlowManager = FlowManager.getInstance();
+        mFlowManager.clearScopeSnapshots();
+    }
+
+    @Test
+    public void testSnapshot() {
+
+        final ReusingFlow flow1 = new ReusingFlow(mFragmentHost, null);
+        final ReusingScope scope1 = flow1.getDependencyScope();
+        D.activateScope(flow1);
+
+        final Cache cache = D.get(Cache.class);
+        final Session session = D.get(Session.class);
+        assertEquals(2, scope1.getProvideCount());
+
+        mFlowManager.saveScopeSnapshot(flow1);
+        D.deactivateScope(flow1);
+
+        // Only the dependencies declared reusable are restored for the next flow instance
+
+        final ReusingFlow flow2 = new ReusingFlow(mFragmentHost, null);
+        final ReusingScope scope2 = flow2.getDependencyScope();
+        assertTrue(mFlowManager.restoreScopeSnapshot(flow2));
+        D.activateScope(flow2);
+
+        assertSame(cache, D.get(Cache.class));
+        assertNotSame(session, D.get(Session.class));
+        assertEquals(1, scope2.getProvideCount());
+
+        D.deactivateScope(flow2);
+
+        mFlowManager.clearScopeSnapshots();
+        assertFalse(mFlowManager.restoreScopeSnapshot(new ReusingFlow(mFragmentHost, null)));
+    }
+
+    @After
+    public void afterTests() {
+        mFlowManager.clearScopeSnapshots();
+    }
+
+    public static class Cache {
+    }
+
+    public static class Session {
+    }
+
+    public static class ReusingFlow extends AbstractFlow {
+
+        public ReusingFlow(final FlowFragmentContainer container, final Bundle params) {
+            super(container, params);
+        }
+
+        @Override
+        protected FlowScope createDependencyScope() {
+            return new ReusingScope(this);
+        }
+    }
+
+    public static class ReusingScope extends FlowScope<ReusingFlow> {
+
+        private int mProvideCount;
+
+        protected ReusingScope(final ReusingFlow flow) {
+            super(flow);
+        }
+
+        public int getProvideCount() {
+            return mProvideCount;
+        }
+
+        @Override
+        protected Class<?>[] getReusableDependencies() {
+            return new Class<?>[]{Cache.class};
+        }
+
+        @Override
+        protected <T> T getDependency() {
+
+            if (type(Cache.class)) {
+                mProvideCount++;
+                return dependency(new Cache());
+            } else if (type(Session.class)) {
+                mProvideCount++;
+                return dependency(new Session());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.fsm;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class EventQueueTest {
+
+    private static final int PRODUCER_COUNT = 4;
+    private static final int EVENT_COUNT = 100000;
+
+    private TestStateMachine mStateMachine;
+    private int mDispatchCount;
+
+    @Before
+    public void beforeTests() {
+        mStateMachine = new TestStateMachine(new CoffeeMaker());
+        mDispatchCount = 0;
+    }
+
+    @Test
+    public void testBoundedQueue() {
+
+        final List<Runnable> runnables = new ArrayList<>();
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(final Runnable runnable) {
+                runnables.add(runnable);
+            }
+        };
+
+        final EventQueue<TestStateMachine> queue = new EventQueue<>(mStateMachine, executor, 3);
+        final List<Integer> dispatched = new ArrayList<>();
+
+        assertEquals(4, queue.getCapacity());
+
+        for (int i = 0; i < 5; i++) {
+            final int index = i;
+            final boolean accepted = queue.offer(new EventQueue.Event<TestStateMachine>() {
+                @Override
+                public void dispatch(final TestStateMachine stateMachine) {
+                    dispatched.add(index);
+                }
+            });
+            assertEquals(i < 4, accepted);
+        }
+
+        // The queue is scheduled once, and it is not dispatched before the executor runs it
+
+        assertEquals(1, runnables.size());
+        assertTrue(dispatched.isEmpty());
+        assertEquals(1, queue.getRejectedCount());
+
+        runnables.remove(0).run();
+
+        assertEquals(4, dispatched.size());
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i), dispatched.get(i));
+        }
+
+        assertTrue(runnables.isEmpty());
+        assertTrue(queue.offer(createCountingEvent()));
+        assertEquals(1, runnables.size());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final EventQueue<TestStateMachine> queue = new EventQueue<>(mStateMachine, executor, 256);
+        final EventQueue.Event<TestStateMachine> event = createCountingEvent();
+        final CountDownLatch latch = new CountDownLatch(PRODUCER_COUNT);
+
+        for (int i = 0; i < PRODUCER_COUNT; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < EVENT_COUNT; j++) {
+                        while (!queue.offer(event)) {
+                            Thread.yield();
+                        }
+                    }
+                    latch.countDown();
+                }
+            }.start();
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        // The last drain may still be running or scheduled
+
+        final CountDownLatch drained = new CountDownLatch(1);
+        final EventQueue.Event<TestStateMachine> lastEvent = new EventQueue.Event<TestStateMachine>() {
+            @Override
+            public void dispatch(final TestStateMachine stateMachine) {
+                drained.countDown();
+            }
+        };
+
+        while (!queue.offer(lastEvent)) {
+            Thread.yield();
+        }
+
+        assertTrue(drained.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(PRODUCER_COUNT * EVENT_COUNT, mDispatchCount);
+    }
+
+    private EventQueue.Event<TestStateMachine> createCountingEvent() {
+        return new EventQueue.Event<TestStateMachine>() {
+            @Override
+            public void dispatch(final TestStateMachine stateMachine) {
+                mDispatchCount++;
+            }
+        };
+    }
+
+    @After
+    public void afterTests() {
+    }
+}
@@ -121,6 +121,283 @@ public class StateMachineTest extends AndroidTestCase {
         assertTrue(filteringCoffeeState.isDisposed());
     }
 
+    @Test
+    public void testCompiled() {
+
+        final CoffeeMaker coffeeMaker = new CoffeeMaker();
+
+        mStateMachine = new TestStateMachine(coffeeMaker);
+        mStateMachine.compile(PowerOffState.class, CoffeeReadyState.class, FilteringCoffeeState.class);
+
+        assertTrue(mStateMachine.isCompiled());
+        assertEquals(0, mStateMachine.getStateId());
+
+        // Initial substates are compiled even if they are not listed
+
+        final IdleState idleState = mStateMachine.getStateInstance(IdleState.class);
+        assertTrue(idleState.getStateId() > 0);
+
+        mStateMachine.start();
+
+        assertEquals(PowerOffState.class, mStateMachine.getCurrentState().getClass());
+        assertEquals(1, mStateMachine.getCompiledTransitionCount());
+
+        mStateMachine.switchPowerOn();
+        mStateMachine.makeButtonPressed();
+        mStateMachine.waterTankFull();
+        mStateMachine.waterTankEmpty();
+        mStateMachine.switchPowerOff();
+
+        // Each transition is executed using the precomputed paths
+
+        assertEquals(6, mStateMachine.getCompiledTransitionCount());
+
+        final List<String> traces = coffeeMaker.getTraces();
+
+        assertEquals(EXPECTED_TRACE.length, traces.size());
+
+        for (int i = 0; i < EXPECTED_TRACE.length; i++) {
+            assertEquals(EXPECTED_TRACE[i], traces.get(i));
+        }
+
+        mStateMachine.reset();
+        assertTrue(mStateMachine.isCompiled());
+        mStateMachine.stop();
+    }
+
+    @Test
+    public void testCompiledHierarchyTransitions() {
+
+        final List<String> traces = traceHierarchyTransitions(false);
+        final List<String> compiledTraces = traceHierarchyTransitions(true);
+
+        assertEquals(traces, compiledTraces);
+    }
+
+    /**
+     * Drives a coffee maker into a nested substate and causes a transition from the substate to
+     * a super state of it, and then from a super state level to a nested substate.
+     *
+     * @param compiled A {@code boolean} value specifying if the state machine is compiled.
+     * @return The traces of the coffee maker.
+     */
+    private List<String> traceHierarchyTransitions(final boolean compiled) {
+
+        final CoffeeMaker coffeeMaker = new CoffeeMaker();
+
+        mStateMachine = new TestStateMachine(coffeeMaker);
+
+        if (compiled) {
+            mStateMachine.compile(PowerOffState.class, CoffeeReadyState.class, FilteringCoffeeState.class);
+        }
+
+        mStateMachine.start();
+        mStateMachine.switchPowerOn();
+        mStateMachine.makeButtonPressed();
+        mStateMachine.waterTankFull();
+
+        assertEquals(FilteringCoffeeState.class, mStateMachine.getCurrentState().getClass());
+
+        // From a substate to its super state
+
+        final int compiledTransitionCount = mStateMachine.getCompiledTransitionCount();
+
+        mStateMachine.toState(PowerOnState.class);
+
+        // From a substate of a super state to a nested substate of the super state
+
+        mStateMachine.toState(FilteringCoffeeState.class);
+
+        assertEquals(FilteringCoffeeState.class, mStateMachine.getCurrentState().getClass());
+        assertEquals(compiled ? compiledTransitionCount + 2 : 0, mStateMachine.getCompiledTransitionCount());
+
+        mStateMachine.switchPowerOff();
+        mStateMachine.stop();
+
+        return coffeeMaker.getTraces();
+    }
+
+    @Test
+    public void testPrepare() {
+
+        final CoffeeMaker coffeeMaker = new CoffeeMaker();
+
+        mStateMachine = new TestStateMachine(coffeeMaker);
+        mStateMachine.prepare(PowerOffState.class, CoffeeReadyState.class, FilteringCoffeeState.class);
+
+        final IdleState idleState = mStateMachine.getStateInstance(IdleState.class);
+        final MakingCoffeeState makingCoffeeState = mStateMachine.getStateInstance(MakingCoffeeState.class);
+
+        mStateMachine.start();
+        mStateMachine.switchPowerOn();
+        mStateMachine.makeButtonPressed();
+
+        assertEquals(FillingWaterTankState.class, mStateMachine.getCurrentState().getClass());
+
+        // Resetting retains the state instances but clears the current state and the history
+
+        mStateMachine.reset();
+
+        assertNull(mStateMachine.getCurrentState());
+        assertNull(makingCoffeeState.getCurrentState());
+        assertSame(idleState, mStateMachine.getStateInstance(IdleState.class));
+        assertSame(makingCoffeeState, mStateMachine.getStateInstance(MakingCoffeeState.class));
+
+        mStateMachine.start();
+
+        assertEquals(PowerOffState.class, mStateMachine.getCurrentState().getClass());
+
+        mStateMachine.switchPowerOn();
+
+        assertSame(idleState, mStateMachine.getCurrentState());
+
+        mStateMachine.stop();
+    }
+
+    @Test
+    public void testTransitionTracing() {
+
+        for (final boolean compiled : new boolean[]{false, true}) {
+            mStateMachine = new TestStateMachine(new CoffeeMaker());
+
+            if (compiled) {
+                mStateMachine.compile(PowerOffState.class, CoffeeReadyState.class, FilteringCoffeeState.class);
+            }
+
+            final TransitionTracer tracer = new TransitionTracer(4);
+            mStateMachine.setTransitionListener(tracer);
+
+            mStateMachine.start();
+            mStateMachine.switchPowerOn();
+            mStateMachine.makeButtonPressed();
+            mStateMachine.waterTankFull();
+            mStateMachine.waterTankEmpty();
+            mStateMachine.switchPowerOff();
+
+            // Entering the initial substates is a part of the outermost transition
+
+            assertEquals(6, tracer.getTransitionCount());
+
+            final List<TransitionTracer.Record> records = tracer.getRecords();
+
+            assertEquals(4, records.size());
+            assertEquals(2, records.get(0).getSequence());
+            assertEquals(IdleState.class.getSimpleName(), records.get(0).getSourceName());
+            assertEquals(FillingWaterTankState.class.getSimpleName(), records.get(0).getTargetName());
+            assertEquals(CoffeeReadyState.class.getSimpleName(), records.get(3).getSourceName());
+            assertEquals(PowerOffState.class.getSimpleName(), records.get(3).getTargetName());
+            assertTrue(records.get(3).getExitNanos() >= 0);
+            assertTrue(records.get(3).getEnterNanos() >= 0);
+
+            tracer.reset();
+            assertEquals(0, tracer.getRecords().size());
+
+            mStateMachine.setTransitionListener(null);
+            mStateMachine.switchPowerOn();
+            assertEquals(0, tracer.getTransitionCount());
+            mStateMachine.stop();
+        }
+    }
+
+    @Test
+    public void testConcurrentTransitionTracing() throws InterruptedException {
+
+        final TransitionTracer tracer = new TransitionTracer(16);
+        final StateMachine stateMachine = new TestStateMachine(new CoffeeMaker());
+        final Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int writer = i;
+
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int count = 0; count < 10000; count++) {
+                        tracer.onTransition(stateMachine, null, stateMachine, ((long) writer << 32) | count, writer, count, count);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, tracer.getTransitionCount());
+
+        // Each retained transition is copied as written by a single writer
+
+        long previousSequence = -1;
+
+        for (final TransitionTracer.Record record : tracer.getRecords()) {
+            assertTrue(record.getSequence() > previousSequence);
+            assertEquals(((long) record.getEntryPoint() << 32) | record.getExitNanos(), record.getEvent());
+            assertEquals(record.getExitNanos(), record.getEnterNanos());
+            previousSequence = record.getSequence();
+        }
+    }
+
+    @Test
+    public void testSnapshot() {
+
+        mStateMachine = new TestStateMachine(new CoffeeMaker());
+        mStateMachine.prepare(PowerOffState.class, CoffeeReadyState.class, FilteringCoffeeState.class);
+        mStateMachine.start();
+        mStateMachine.switchPowerOn();
+        mStateMachine.makeButtonPressed();
+        mStateMachine.waterTankFull();
+        mStateMachine.switchPowerOff();
+
+        final byte[] snapshot = mStateMachine.saveSnapshot();
+
+        assertEquals(mStateMachine.getSnapshotSize(), snapshot.length);
+        mStateMachine.stop();
+
+        // The snapshot is restored without entering the states
+
+        final CoffeeMaker coffeeMaker = new CoffeeMaker();
+
+        mStateMachine = new TestStateMachine(coffeeMaker);
+        mStateMachine.prepare(PowerOffState.class, CoffeeReadyState.class, FilteringCoffeeState.class);
+
+        assertTrue(mStateMachine.restoreSnapshot(snapshot));
+        assertEquals(PowerOffState.class, mStateMachine.getCurrentState().getClass());
+        assertTrue(coffeeMaker.getTraces().isEmpty());
+
+        // The history states are restored
+
+        final TestStateMachine state = mStateMachine.toHistoryState(PowerOnState.class, true);
+
+        assertEquals(FilteringCoffeeState.class, state.getClass());
+        assertEquals(FilteringCoffeeState.class, mStateMachine.getCurrentState().getClass());
+        mStateMachine.stop();
+
+        // A snapshot of a differently prepared state machine is not restored
+
+        mStateMachine = new TestStateMachine(new CoffeeMaker());
+        mStateMachine.prepare(CoffeeReadyState.class, PowerOffState.class, FilteringCoffeeState.class);
+
+        assertFalse(mStateMachine.restoreSnapshot(snapshot));
+        assertFalse(mStateMachine.restoreSnapshot(null));
+        assertNull(mStateMachine.getCurrentState());
+        mStateMachine.stop();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPrepareFailure() {
+        mStateMachine = new TestStateMachine(new CoffeeMaker());
+        mStateMachine.prepare(PowerOffState.class, FailingState.class);
+    }
+
+    public static class FailingState extends TestStateMachine {
+
+        public FailingState() {
+            super(TestStateMachine.class, null);
+            throw new IllegalStateException("Failed to construct");
+        }
+    }
+
     @After
     public void afterTests() {
     }
@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class PluginBusTest {
+
+    private static final int THREAD_COUNT = 8;
+    private static final int ITERATION_COUNT = 1000;
+    private static final int[] PLUGIN_COUNTS = {10, 1000, 10000};
+
+    private TestPlugin mPlugin1;
+    private TestPlugin mPlugin2;
+
+    @Before
+    public void beforeTests() {
+        mPlugin1 = new TestPlugin();
+        mPlugin2 = new TestPlugin();
+    }
+
+    @Test
+    public void testReplugKeepsPlug() {
+
+        PluginBus.plug(mPlugin1);
+
+        final TestPluginInterface plug = mPlugin1.getTestPlug();
+
+        PluginBus.plug(mPlugin2);
+        PluginBus.unplug(mPlugin1);
+        PluginBus.unplug(mPlugin2);
+        PluginBus.plug(mPlugin2);
+
+        assertSame(plug, mPlugin2.getTestPlug());
+        assertSame(plug, PluginBus.getPlug(TestPluginInterface.class));
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                plug.onEvent(1);
+            }
+        });
+
+        assertEquals(0, mPlugin1.getEventCount());
+        assertEquals(1, mPlugin2.getEventCount());
+
+        PluginBus.unplug(mPlugin2);
+        assertNull(mPlugin2.getTestPlug());
+    }
+
+    @Test
+    public void testConcurrentGetPlug() throws InterruptedException {
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        final AtomicReference<Object> firstPlug = new AtomicReference<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            final String plugName = "Concurrent";
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        final TestPluginInterface plug = PluginBus.getPlug(TestPluginInterface.class, plugName);
+
+                        if (!firstPlug.compareAndSet(null, plug) && firstPlug.get() != plug) {
+                            throw new IllegalStateException("Different plugs returned");
+                        }
+                    } catch (final Throwable throwable) {
+                        failure.set(throwable);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        startLatch.countDown();
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void testConcurrentPlugAndDispatch() throws InterruptedException {
+
+        final PluginInvocationHandler handler = new PluginInvocationHandler(TestPluginInterface.class, PluginBus.getInstance());
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final TestPlugin plugin = new TestPlugin();
+
+                        for (int j = 0; j < ITERATION_COUNT; j++) {
+                            handler.plug(plugin);
+                            handler.getPlugins();
+                            handler.unplug(plugin);
+                        }
+                    } catch (final Throwable throwable) {
+                        failure.set(throwable);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(0, handler.getPluginCount());
+    }
+
+    @Test
+    public void testBatchedDelivery() throws InterruptedException {
+
+        PluginBus.plug(mPlugin1);
+
+        final TestBatchedPluginInterface plug = PluginBus.getPlug(TestBatchedPluginInterface.class);
+
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= ITERATION_COUNT; i++) {
+                    plug.onValueChanged(i);
+                    plug.onCountChanged(i);
+                }
+            }
+        });
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                thread.start();
+
+                try {
+                    thread.join();
+                } catch (final InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        assertEquals(1, mPlugin1.getValueChangedCount());
+        assertEquals(ITERATION_COUNT, mPlugin1.getLastValue());
+        assertEquals(ITERATION_COUNT, mPlugin1.getLastCount());
+    }
+
+    @Test
+    public void testSerialAffinity() throws Exception {
+
+        PluginBus.plug(mPlugin1);
+
+        final TestSerialPluginInterface plug = PluginBus.getPlug(TestSerialPluginInterface.class);
+        final String threadName = plug.getThreadNameAsync().get();
+
+        assertTrue(threadName.startsWith("PluginBus-"));
+        assertEquals(threadName, plug.getThreadNameAsync().get());
+
+        PluginBus.setThreadAffinity(TestSerialPluginInterface.class, Plugin.DEFAULT_PLUG_NAME, ThreadAffinity.CALLER);
+
+        try {
+            assertEquals(Thread.currentThread().getName(), plug.getThreadNameAsync().get());
+        } finally {
+            PluginBus.setThreadAffinity(TestSerialPluginInterface.class, Plugin.DEFAULT_PLUG_NAME, ThreadAffinity.SERIAL);
+        }
+    }
+
+    @Test
+    public void testBackgroundAffinity() throws Exception {
+
+        PluginBus.plug(mPlugin1);
+
+        final TestBackgroundPluginInterface plug = PluginBus.getPlug(TestBackgroundPluginInterface.class);
+        final Future<String> future = plug.getThreadNameAsync();
+
+        assertTrue(future.get().startsWith("PluginBus-"));
+        assertTrue(future.isDone());
+    }
+
+    @Test
+    public void testCrossThreadInvocationFails() {
+
+        final TestAggregatePlugin plugin = new TestAggregatePlugin(1);
+
+        PluginBus.plug(plugin);
+
+        try {
+            final TestAggregatePluginInterface plug = PluginBus.getPlug(TestAggregatePluginInterface.class);
+
+            PluginBus.setThreadAffinity(TestAggregatePluginInterface.class, Plugin.DEFAULT_PLUG_NAME, ThreadAffinity.BACKGROUND);
+
+            // A method returning a value is not invoked by blocking the calling thread
+
+            try {
+                plug.findName(1);
+                fail();
+            } catch (final IllegalStateException e) {
+                // Expected
+            }
+
+            assertEquals(0, plugin.getInvocationCount());
+        } finally {
+            PluginBus.setThreadAffinity(TestAggregatePluginInterface.class, Plugin.DEFAULT_PLUG_NAME, ThreadAffinity.MAIN);
+            PluginBus.unplug(plugin);
+        }
+    }
+
+    @Test
+    public void testPlugAndUnplugScaling() {
+
+        for (final int pluginCount : PLUGIN_COUNTS) {
+            final TestPlugin[] plugins = new TestPlugin[pluginCount];
+
+            for (int i = 0; i < pluginCount; i++) {
+                plugins[i] = new TestPlugin();
+                PluginBus.plug(plugins[i]);
+            }
+
+            final PluginInvocationHandler handler = PluginBus.getInstance().getInvocationHandler(TestPluginInterface.class, Plugin.DEFAULT_PLUG_NAME);
+
+            assertEquals(pluginCount, handler.getPluginCount());
+            assertEquals(pluginCount, handler.getPluginSnapshot().length);
+
+            for (final TestPlugin plugin : plugins) {
+                PluginBus.unplug(plugin);
+            }
+
+            assertEquals(0, handler.getPluginCount());
+            assertEquals(0, handler.getPluginSnapshot().length);
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+
+        final PluginMetrics metrics = new PluginMetrics();
+        PluginBus.setMetrics(metrics);
+
+        try {
+            PluginBus.plug(mPlugin1);
+            PluginBus.plug(mPlugin2);
+
+            final TestPluginInterface plug = PluginBus.getPlug(TestPluginInterface.class);
+
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    plug.onEvent(1);
+                    plug.onEvent(2);
+                    plug.onEvent(3);
+                }
+            });
+
+            final PluginMetrics.Snapshot snapshot = metrics.getSnapshot();
+
+            assertEquals(3, snapshot.getInvocationCount(TestPluginInterface.class, "onEvent"));
+            assertEquals(1, snapshot.getLatencies().size());
+            assertEquals(6, snapshot.getSlowestPlugins(1).get(0).getCount());
+            assertEquals(TestPlugin.class.getName(), snapshot.getSlowestPlugins(1).get(0).getPluginClassName());
+        } finally {
+            PluginBus.setMetrics(null);
+        }
+    }
+
+    @Test
+    public void testQueueDepthMetrics() throws Exception {
+
+        final PluginMetrics metrics = new PluginMetrics();
+        PluginBus.setMetrics(metrics);
+
+        try {
+            PluginBus.plug(mPlugin1);
+
+            final TestSerialPluginInterface plug = PluginBus.getPlug(TestSerialPluginInterface.class);
+
+            plug.getThreadNameAsync().get();
+            plug.getThreadNameAsync().get();
+
+            final List<PluginMetrics.QueueDepthStats> depths = metrics.getSnapshot().getQueueDepths();
+
+            assertEquals(1, depths.size());
+            assertEquals(TestSerialPluginInterface.class.getName(), depths.get(0).getPluginInterfaceName());
+            assertEquals(0, depths.get(0).getCurrent());
+            assertEquals(1, depths.get(0).getMax());
+        } finally {
+            PluginBus.setMetrics(null);
+        }
+    }
+
+    @Test
+    public void testAggregation() {
+
+        final TestAggregatePlugin plugin1 = new TestAggregatePlugin(1);
+        final TestAggregatePlugin plugin2 = new TestAggregatePlugin(2);
+        final TestAggregatePlugin plugin3 = new TestAggregatePlugin(3);
+
+        PluginBus.plug(plugin1);
+        PluginBus.plug(plugin2);
+        PluginBus.plug(plugin3);
+
+        try {
+            final TestAggregatePluginInterface plug = PluginBus.getPlug(TestAggregatePluginInterface.class);
+            final AtomicReference<Object[]> results = new AtomicReference<>();
+
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    results.set(new Object[]{plug.findName(2), plug.getNames(), plug.hasValue(2), plug.getSum(), plug.getValue()});
+                }
+            });
+
+            assertEquals("Plugin2", results.get()[0]);
+            assertEquals(3, ((List<?>) results.get()[1]).size());
+            assertEquals(Boolean.TRUE, results.get()[2]);
+            assertEquals(6, results.get()[3]);
+            assertEquals(1, results.get()[4]);
+
+            // Plugins are invoked in reverse plugging order, so plugin1 is never reached
+            assertEquals(0, plugin1.getInvocationCount());
+        } finally {
+            PluginBus.unplug(plugin1);
+            PluginBus.unplug(plugin2);
+            PluginBus.unplug(plugin3);
+        }
+    }
+
+    @Test
+    public void testGenericSuperInterface() {
+
+        final TestStringPlugin plugin = new TestStringPlugin();
+
+        PluginBus.plug(plugin);
+
+        try {
+            final TestStringPluginInterface plug = PluginBus.getPlug(TestStringPluginInterface.class);
+            final AtomicReference<String> value = new AtomicReference<>();
+
+            assertEquals(TestStringPluginInterface.class.getName() + PluginDispatcher.POSTFIX_DISPATCHER, plug.getClass().getName());
+
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    plug.onValue("Value");
+                    value.set(plug.getValue());
+                }
+            });
+
+            assertEquals("Value", plugin.getValue());
+            assertEquals("Value", value.get());
+        } finally {
+            PluginBus.unplug(plugin);
+        }
+    }
+
+    @Test
+    public void testWeakRegistration() throws InterruptedException {
+
+        final PluginInvocationHandler handler = PluginBus.getInstance().getInvocationHandler(TestPluginInterface.class, Plugin.DEFAULT_PLUG_NAME);
+
+        PluginBus.plug(mPlugin1);
+        PluginBus.plugWeakly(new TestPlugin());
+
+        assertEquals(2, handler.getPluginSnapshot().length);
+
+        for (int i = 0; i < 10 && handler.getPluginSnapshot().length > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        final Plugin[] plugins = handler.getPluginSnapshot();
+
+        assertEquals(1, plugins.length);
+        assertSame(mPlugin1, plugins[0]);
+        assertEquals(1, handler.getPluginCount());
+        assertTrue(PluginBus.getLeakReport(0).isEmpty());
+    }
+
+    @After
+    public void afterTests() {
+        PluginBus.unplug(mPlugin1);
+        PluginBus.unplug(mPlugin2);
+    }
+}
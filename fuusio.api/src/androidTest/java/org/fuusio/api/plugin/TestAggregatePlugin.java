@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import java.util.Collections;
+import java.util.List;
+
+public class TestAggregatePlugin extends PluginComponent implements TestAggregatePluginInterface {
+
+    private final int mValue;
+
+    private int mInvocationCount;
+
+    public TestAggregatePlugin(final int value) {
+        mValue = value;
+    }
+
+    public final int getInvocationCount() {
+        return mInvocationCount;
+    }
+
+    @Override
+    public String findName(final int value) {
+        mInvocationCount++;
+        return (value == mValue) ? getName() : null;
+    }
+
+    @Override
+    public List<String> getNames() {
+        return Collections.singletonList(getName());
+    }
+
+    @Override
+    public boolean hasValue(final int value) {
+        mInvocationCount++;
+        return value == mValue;
+    }
+
+    @Override
+    public Integer getSum() {
+        return mValue;
+    }
+
+    @Override
+    public Object getValue() {
+        return mValue;
+    }
+
+    private String getName() {
+        return "Plugin" + mValue;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import java.util.List;
+
+@Plugin.Dispatched
+public interface TestAggregatePluginInterface extends PluginInterface {
+
+    @Plugin.Aggregate(Aggregation.FIRST_NON_NULL)
+    String findName(int value);
+
+    @Plugin.Aggregate(Aggregation.LIST)
+    List<String> getNames();
+
+    @Plugin.Aggregate(Aggregation.ANY_TRUE)
+    boolean hasValue(int value);
+
+    @Plugin.Aggregate(value = Aggregation.REDUCE, reducer = SumReducer.class)
+    Integer getSum();
+
+    Object getValue();
+
+    class SumReducer implements PluginResultReducer<Integer> {
+
+        @Override
+        public Integer reduce(final Integer accumulated, final Integer value) {
+            return accumulated + value;
+        }
+    }
+}
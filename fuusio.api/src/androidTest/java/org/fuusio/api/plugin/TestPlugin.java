@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestPlugin extends PluginComponent implements TestPluginInterface, TestBatchedPluginInterface, TestSerialPluginInterface,
+        TestBackgroundPluginInterface {
+
+    private final AtomicInteger mEventCount;
+
+    private int mLastValue;
+    private int mLastCount;
+    private int mValueChangedCount;
+
+    @Plug
+    TestPluginInterface mTestPlug;
+
+    public TestPlugin() {
+        mEventCount = new AtomicInteger();
+    }
+
+    public final int getEventCount() {
+        return mEventCount.get();
+    }
+
+    public final int getLastValue() {
+        return mLastValue;
+    }
+
+    public final int getLastCount() {
+        return mLastCount;
+    }
+
+    public final int getValueChangedCount() {
+        return mValueChangedCount;
+    }
+
+    public final TestPluginInterface getTestPlug() {
+        return mTestPlug;
+    }
+
+    @Override
+    public void onEvent(final int value) {
+        mLastValue = value;
+        mEventCount.incrementAndGet();
+    }
+
+    @Override
+    public void onValueChanged(final int value) {
+        mLastValue = value;
+        mValueChangedCount++;
+    }
+
+    @Override
+    public void onCountChanged(final int count) {
+        mLastCount = count;
+    }
+
+    public String getThreadName() {
+        return Thread.currentThread().getName();
+    }
+
+    @Override
+    public Future<String> getThreadNameAsync() {
+        return PluginFuture.of(getThreadName());
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+public class TestStringPlugin extends PluginComponent implements TestStringPluginInterface {
+
+    private String mValue;
+
+    @Override
+    public void onValue(final String value) {
+        mValue = value;
+    }
+
+    @Override
+    public String getValue() {
+        return mValue;
+    }
+}
@@ -24,14 +24,22 @@ import android.os.Bundle;
 import android.preference.PreferenceManager;
 
 import org.fuusio.api.dependency.ApplicationScope;
+import org.fuusio.api.dependency.Dependency;
 import org.fuusio.api.dependency.DependencyScope;
 import org.fuusio.api.dependency.DependencyScopeCache;
 import org.fuusio.api.dependency.DependencyScopeOwner;
 import org.fuusio.api.util.AppToolkit;
 import org.fuusio.api.util.UIToolkit;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 public abstract class FuusioApplication extends Application implements Application.ActivityLifecycleCallbacks {
 
+    private static final long WARM_UP_THREAD_KEEP_ALIVE_SECONDS = 1;
+
     private static FuusioApplication sInstance = null;
 
     protected final ApplicationScope mDependencyScope;
@@ -43,6 +51,7 @@ public abstract class FuusioApplication extends Application implements Applicati
         setInstance(this);
         mDependencyScope = createDependencyScope();
         mDependencyScopeCache = createDependencyScopeCache();
+        Dependency.setScopeCache(mDependencyScopeCache);
     }
 
 
@@ -150,9 +159,39 @@ public abstract class FuusioApplication extends Application implements Applicati
     public void onCreate() {
         super.onCreate();
         AppToolkit.setApplication(this);
+        mDependencyScope.warmUp(createWarmUpExecutor());
         readPreferences();
     }
 
+    /**
+     * Creates the {@link Executor} used for warming up the dependencies declared by
+     * {@link ApplicationScope#getWarmUpDependencies()}. The threads of the created {@link Executor}
+     * are terminated when they have been idle for a while after the warm-up.
+     *
+     * @return An {@link Executor}.
+     */
+    protected Executor createWarmUpExecutor() {
+        final int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                WARM_UP_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public void onTrimMemory(final int level) {
+        super.onTrimMemory(level);
+        mDependencyScopeCache.onTrimMemory(level);
+        mDependencyScope.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        mDependencyScopeCache.evictAll();
+        mDependencyScope.onLowMemory();
+    }
+
     @Override
     public void onActivityCreated(final Activity activity, final Bundle inState) {
         // Do nothing by default
@@ -193,6 +232,7 @@ public abstract class FuusioApplication extends Application implements Applicati
 
             if (scope != null && scope.isDisposable()) {
                 mDependencyScopeCache.removeDependencyScope(owner);
+                mDependencyScopeCache.evictDependencyScope(owner);
             }
         }
     }
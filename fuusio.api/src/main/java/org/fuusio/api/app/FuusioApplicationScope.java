@@ -24,6 +24,9 @@ import org.fuusio.api.model.ModelObjectManager;
 import org.fuusio.api.rest.RequestManager;
 import org.fuusio.api.rest.volley.VolleyRequestManager;
 import org.fuusio.api.ui.action.ActionManager;
+import org.fuusio.api.util.L;
+
+import java.util.Map;
 
 public abstract class FuusioApplicationScope extends ApplicationScope<FuusioApplication> {
 
@@ -32,22 +35,52 @@ public abstract class FuusioApplicationScope extends ApplicationScope<FuusioAppl
     }
 
     @Override
-    protected <T> T getDependency() {
-        if (type(ActionManager.class)) {
-            return dependency(new ActionManager(getApplicationContext()));
-        } else if (type(BitmapManager.class)) {
-            return dependency(new BitmapManagerImpl());
-        } else if (type(DependencyScopeCache.class)) {
-            return dependency(getApplication().getDependencyScopeCache());
-        } else if (type(ModelObjectManager.class)) {
-            return dependency(getModelObjectManager());
-        } else if (type(FlowManager.class)) {
-            return dependency(FlowManager.getInstance());
-        } else if (type(RequestManager.class)) {
-            return dependency(new VolleyRequestManager());
+    protected Class<?>[] getWarmUpDependencies() {
+        return new Class<?>[]{BitmapManager.class, ModelObjectManager.class, RequestManager.class};
+    }
+
+    @Override
+    protected void onWarmUpCompleted(final Map<Class<?>, Long> report) {
+        for (final Map.Entry<Class<?>, Long> entry : report.entrySet()) {
+            L.d(this, "onWarmUpCompleted", entry.getKey().getSimpleName() + ": " + (entry.getValue() / 1000) + " us");
         }
-        return super.getDependency();
     }
 
+    @Override
+    public void onTrimMemory(final int level) {
+        FlowManager.getInstance().onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        FlowManager.getInstance().onLowMemory();
+    }
+
+    @Provides
+    protected ActionManager provideActionManager() {
+        return new ActionManager(getApplicationContext());
+    }
+
+    @Provides
+    protected BitmapManager provideBitmapManager() {
+        return new BitmapManagerImpl();
+    }
+
+    @Provides
+    protected DependencyScopeCache provideDependencyScopeCache() {
+        return getApplication().getDependencyScopeCache();
+    }
+
+    @Provides
     protected abstract ModelObjectManager getModelObjectManager();
+
+    @Provides
+    protected FlowManager provideFlowManager() {
+        return FlowManager.getInstance();
+    }
+
+    @Provides
+    protected RequestManager provideRequestManager() {
+        return new VolleyRequestManager();
+    }
 }
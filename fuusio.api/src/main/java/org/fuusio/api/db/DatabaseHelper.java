@@ -23,6 +23,7 @@ import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import org.fuusio.api.dependency.D;
+import org.fuusio.api.dependency.Lazy;
 import org.fuusio.api.model.ModelObject;
 import org.fuusio.api.model.ModelObjectManager;
 import org.fuusio.api.model.ModelObjectMetaInfo;
@@ -38,7 +39,7 @@ import java.util.List;
 public abstract class DatabaseHelper extends SQLiteOpenHelper {
 
     private final HashMap<Class<? extends ModelObject>, ModelObjectTableDescriptor> mObjectTableDescriptors;
-    private final ModelObjectManager mModelManager = D.get(ModelObjectManager.class);
+    private final Lazy<ModelObjectManager> mModelManager = D.lazy(ModelObjectManager.class);
 
     public DatabaseHelper(final Context context, final String name, final CursorFactory factory,
                           final int version) {
@@ -55,7 +56,7 @@ public abstract class DatabaseHelper extends SQLiteOpenHelper {
         ModelObjectTableDescriptor descriptor = mObjectTableDescriptors.get(objectClass);
 
         if (descriptor == null) {
-            final ModelObjectMetaInfo metaInfo = mModelManager.getMetaInfo(objectClass);
+            final ModelObjectMetaInfo metaInfo = mModelManager.get().getMetaInfo(objectClass);
 
             descriptor = new ModelObjectTableDescriptor(metaInfo);
             mObjectTableDescriptors.put(objectClass, descriptor);
@@ -168,7 +169,7 @@ public abstract class DatabaseHelper extends SQLiteOpenHelper {
         final Class<? extends ModelObject> objectClass = object.getClass();
         final ModelObjectTableDescriptor tableDescriptor = getTableDescriptorFor(objectClass);
 
-        for (final Property property : mModelManager.getProperties(object)) {
+        for (final Property property : mModelManager.get().getProperties(object)) {
             if (!property.isTransientFor(objectClass)) {
                 final Object value = property.get(object);
                 final int columnIndex = property.getColumnIndex();
@@ -269,7 +270,7 @@ public abstract class DatabaseHelper extends SQLiteOpenHelper {
             e.printStackTrace();
         }
 
-        final ModelObject object = mModelManager.createInstance(actualObjectClass);
+        final ModelObject object = mModelManager.get().createInstance(actualObjectClass);
 
         setProperties(object, cursor);
 
@@ -296,7 +297,7 @@ public abstract class DatabaseHelper extends SQLiteOpenHelper {
         if (cursor.moveToFirst()) {
 
             do {
-                final ModelObject object = mModelManager.createInstance(objectClass);
+                final ModelObject object = mModelManager.get().createInstance(objectClass);
                 setProperties(object, cursor);
                 allObjects.add((T) object);
             } while (cursor.moveToNext());
@@ -32,6 +32,16 @@ import android.os.Vibrator;
 import android.view.WindowManager;
 import android.view.inputmethod.InputMethodManager;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * {@link ApplicationScope} provides an abstract base class for implementing an application
  * specific {@link DependencyScope} that has the same lifecycle as the application. An instance of
@@ -39,13 +49,21 @@ import android.view.inputmethod.InputMethodManager;
  */
 public abstract class ApplicationScope<T_Application extends Application> extends DependencyScope {
 
-    private static ApplicationScope sInstance = null;
+    private static volatile ApplicationScope sInstance = null;
 
     private final T_Application mApplication;
+    private final ConcurrentHashMap<Class<?>, WarmUpTask> mWarmUpTasks;
+    private final ConcurrentHashMap<Class<?>, Long> mWarmUpTimes;
+    private final AtomicInteger mPendingWarmUps;
 
     protected ApplicationScope(final T_Application application) {
         mApplication = application;
+        mWarmUpTasks = new ConcurrentHashMap<>();
+        mWarmUpTimes = new ConcurrentHashMap<>();
+        mPendingWarmUps = new AtomicInteger();
         sInstance = this;
+        invalidateResolutions();
+        invalidateApplicationScope();
     }
 
     /**
@@ -61,37 +79,73 @@ public abstract class ApplicationScope<T_Application extends Application> extend
         return (T) sInstance;
     }
 
+    @Provides
+    protected Application provideApplication() {
+        return mApplication;
+    }
+
+    @Provides
+    protected AccountManager provideAccountManager() {
+        return (AccountManager) getApplicationContext().getSystemService(Context.ACCOUNT_SERVICE);
+    }
+
+    @Provides
+    protected ActivityManager provideActivityManager() {
+        return (ActivityManager) getApplicationContext().getSystemService(Context.ACTIVITY_SERVICE);
+    }
+
+    @Provides
+    protected AlarmManager provideAlarmManager() {
+        return (AlarmManager) getApplicationContext().getSystemService(Context.ALARM_SERVICE);
+    }
+
+    @Provides
+    protected AudioManager provideAudioManager() {
+        return (AudioManager) getApplicationContext().getSystemService(Context.AUDIO_SERVICE);
+    }
+
+    @Provides
+    protected InputMethodManager provideInputMethodManager() {
+        return (InputMethodManager) getApplicationContext().getSystemService(Context.INPUT_METHOD_SERVICE);
+    }
+
+    @Provides
+    protected LocationManager provideLocationManager() {
+        return (LocationManager) getApplicationContext().getSystemService(Context.LOCATION_SERVICE);
+    }
+
+    @Provides
+    protected NfcManager provideNfcManager() {
+        return (NfcManager) getApplicationContext().getSystemService(Context.NFC_SERVICE);
+    }
+
+    @Provides
+    protected PackageManager providePackageManager() {
+        return getApplicationContext().getPackageManager();
+    }
+
+    @Provides
+    protected SensorManager provideSensorManager() {
+        return (SensorManager) getApplicationContext().getSystemService(Context.SENSOR_SERVICE);
+    }
+
+    @Provides
+    protected Vibrator provideVibrator() {
+        return (Vibrator) getApplicationContext().getSystemService(Context.VIBRATOR_SERVICE);
+    }
+
+    @Provides
+    protected WindowManager provideWindowManager() {
+        return (WindowManager) getApplicationContext().getSystemService(Context.WINDOW_SERVICE);
+    }
+
+    /**
+     * {@link BluetoothManager} is not declared using a {@link Provides} method because
+     * the generated resolver would refer to the class also on API levels that do not have it.
+     */
     @Override
     protected <T> T getDependency() {
 
-        if (type(Application.class)) {
-            return dependency(mApplication);
-        } else if (type(Context.class)) {
-            return dependency(mApplication.getApplicationContext());
-        } else if (type(AccountManager.class)) {
-            return dependency(getApplicationContext().getSystemService(Context.ACCOUNT_SERVICE));
-        } else if (type(ActivityManager.class)) {
-            return dependency(getApplicationContext().getSystemService(Context.ACTIVITY_SERVICE));
-        } else if (type(AlarmManager.class)) {
-            return dependency(getApplicationContext().getSystemService(Context.ALARM_SERVICE));
-        } else if (type(AudioManager.class)) {
-            return dependency(getApplicationContext().getSystemService(Context.AUDIO_SERVICE));
-        }  else if (type(InputMethodManager.class)) {
-            return dependency(getApplicationContext().getSystemService(Context.INPUT_METHOD_SERVICE));
-        } else if (type(LocationManager.class)) {
-            return dependency(getApplicationContext().getSystemService(Context.LOCATION_SERVICE));
-        } else if (type(NfcManager.class)) {
-            return dependency(getApplicationContext().getSystemService(Context.NFC_SERVICE));
-        } else if (type(PackageManager.class)) {
-            return dependency(getApplicationContext().getPackageManager());
-        } else if (type(SensorManager.class)) {
-            return dependency(getApplicationContext().getSystemService(Context.SENSOR_SERVICE));
-        } else if (type(Vibrator.class)) {
-            return dependency(getApplicationContext().getSystemService(Context.VIBRATOR_SERVICE));
-        } else if (type(WindowManager.class)) {
-            return dependency(getApplicationContext().getSystemService(Context.WINDOW_SERVICE));
-        }
-
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
             if (type(BluetoothManager.class)) {
                 return dependency(getApplicationContext().getSystemService(Context.BLUETOOTH_SERVICE));
@@ -100,6 +154,161 @@ public abstract class ApplicationScope<T_Application extends Application> extend
         return null;
     }
 
+    /**
+     * Gets the types of the dependencies that are warmed up by
+     * {@link ApplicationScope#warmUp(Executor)}. This method can be overridden to declare
+     * the singletons that are expensive to construct and that are used soon after the startup.
+     *
+     * @return An array of {@link Class}es. By default an empty array is returned.
+     */
+    protected Class<?>[] getWarmUpDependencies() {
+        return new Class<?>[0];
+    }
+
+    /**
+     * Warms up the dependencies declared by {@link ApplicationScope#getWarmUpDependencies()} by
+     * constructing them using the given {@link Executor}. This method does not block.
+     *
+     * @param executor An {@link Executor}.
+     */
+    public void warmUp(final Executor executor) {
+
+        for (final Class<?> dependencyType : getWarmUpDependencies()) {
+            final WarmUpTask task = new WarmUpTask(dependencyType);
+
+            if (mWarmUpTasks.putIfAbsent(dependencyType, task) == null) {
+                mPendingWarmUps.incrementAndGet();
+                executor.execute(task);
+            }
+        }
+    }
+
+    /**
+     * Waits until all the dependencies being warmed up have been constructed. The warm-ups that
+     * have not yet been started are run on the calling thread.
+     */
+    public void awaitWarmUp() {
+        for (final WarmUpTask task : mWarmUpTasks.values()) {
+            task.await();
+        }
+    }
+
+    /**
+     * Tests if any of the declared dependencies is still being warmed up.
+     *
+     * @return A {@code boolean} value.
+     */
+    public boolean isWarmingUp() {
+        return mPendingWarmUps.get() > 0;
+    }
+
+    /**
+     * Gets a report of the construction times of the warmed up dependencies.
+     *
+     * @return A {@link Map} containing the construction times in nanoseconds keyed by
+     * the dependency types.
+     */
+    public Map<Class<?>, Long> getWarmUpReport() {
+        return Collections.unmodifiableMap(new HashMap<>(mWarmUpTimes));
+    }
+
+    /**
+     * Invoked when all the dependencies declared for warm-up have been constructed. The invoking
+     * thread is the thread that completed the last warm-up. This method can be overridden, for
+     * instance, to log the given report.
+     *
+     * @param report A {@link Map} containing the construction times in nanoseconds keyed by
+     *               the dependency types.
+     */
+    protected void onWarmUpCompleted(final Map<Class<?>, Long> report) {
+        // By default do nothing
+    }
+
+    /**
+     * Invoked by the application when the system asks it to trim memory. This method can be
+     * overridden to release the memory retained by the application scoped dependencies.
+     *
+     * @param level The memory trim level defined in {@link android.content.ComponentCallbacks2}.
+     */
+    public void onTrimMemory(final int level) {
+        // By default do nothing
+    }
+
+    /**
+     * Invoked by the application when the system is running low on memory.
+     */
+    public void onLowMemory() {
+        // By default do nothing
+    }
+
+    /**
+     * Overridden to block a request of a dependency that is being warmed up until the warm-up of it
+     * has completed.
+     */
+    @Override
+    protected <T> T getDependency(final Class<T> dependencyType, final Object dependant, final boolean pCreateNew) {
+        final WarmUpTask task = mWarmUpTasks.get(dependencyType);
+
+        if (task != null) {
+            task.await();
+        }
+        return super.getDependency(dependencyType, dependant, pCreateNew);
+    }
+
+    private Object warmUpDependency(final Class<?> dependencyType) {
+        final long startTime = System.nanoTime();
+        final Object dependency = super.getDependency(dependencyType, null, false);
+
+        if (dependency != null) {
+            mWarmUpTimes.put(dependencyType, System.nanoTime() - startTime);
+        }
+        return dependency;
+    }
+
+    /**
+     * {@link WarmUpTask} constructs a dependency declared for warm-up.
+     */
+    private final class WarmUpTask extends FutureTask<Object> {
+
+        private final Class<?> mDependencyType;
+
+        WarmUpTask(final Class<?> dependencyType) {
+            super(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return warmUpDependency(dependencyType);
+                }
+            });
+            mDependencyType = dependencyType;
+        }
+
+        /**
+         * Waits until this {@link WarmUpTask} has completed. If this {@link WarmUpTask} has not
+         * yet been started, it is run on the calling thread. A failed warm-up is ignored, so that
+         * the failure is thrown to the requesting thread when the dependency is requested.
+         */
+        void await() {
+            run();
+
+            try {
+                get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                // The dependency is resolved again by the requesting thread
+            }
+        }
+
+        @Override
+        protected void done() {
+            mWarmUpTasks.remove(mDependencyType, this);
+
+            if (mPendingWarmUps.decrementAndGet() == 0) {
+                onWarmUpCompleted(getWarmUpReport());
+            }
+        }
+    }
+
     /**
      * Gets the application {@link Context}.
      *
@@ -119,6 +328,20 @@ public abstract class ApplicationScope<T_Application extends Application> extend
         return mApplication;
     }
 
+    /**
+     * Overridden to clear the singleton instance if this {@link ApplicationScope} is the singleton
+     * instance.
+     */
+    @Override
+    protected void dispose() {
+        super.dispose();
+
+        if (sInstance == this) {
+            sInstance = null;
+            invalidateApplicationScope();
+        }
+    }
+
     /**
      * Overrides to return a {@code boolean} value {@code false }because an instance of
      * {@link ApplicationScope} is not disposable.
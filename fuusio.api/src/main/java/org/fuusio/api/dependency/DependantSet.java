@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.dependency;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link DependantSet} is the set of dependants cached by a {@link DependencyScope}. Dependants are
+ * compared by identity, so the same dependant is retained only once however many times it
+ * requests dependencies. Each dependant is indexed by all of its supertypes, so that finding
+ * a dependant assignable to a requested type does not require scanning the dependants. If several
+ * dependants are assignable to a requested type, the most recently added one is found. Access to
+ * a {@link DependantSet} is synchronized on it.
+ */
+public final class DependantSet {
+
+    /**
+     * A cache of the supertypes, including the type itself, of the dependant types.
+     */
+    private static final ConcurrentHashMap<Class<?>, Class<?>[]> sSupertypes = new ConcurrentHashMap<>();
+
+    private final Set<Object> mDependants;
+    private final HashMap<Class<?>, ArrayList<Object>> mTypeIndex;
+
+    DependantSet() {
+        mDependants = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        mTypeIndex = new HashMap<>();
+    }
+
+    /**
+     * Adds the given dependant unless it is already contained.
+     *
+     * @param dependant A dependant {@link Object}.
+     * @return A {@code boolean} value {@code true} if the dependant was added.
+     */
+    synchronized boolean add(final Object dependant) {
+
+        if (!mDependants.add(dependant)) {
+            return false;
+        }
+
+        for (final Class<?> supertype : getSupertypes(dependant.getClass())) {
+            ArrayList<Object> dependants = mTypeIndex.get(supertype);
+
+            if (dependants == null) {
+                dependants = new ArrayList<>(1);
+                mTypeIndex.put(supertype, dependants);
+            }
+            dependants.add(dependant);
+        }
+        return true;
+    }
+
+    /**
+     * Removes and returns the most recently added dependant that is assignable to the specified type.
+     *
+     * @param dependencyType A {@link Class} specifying the type.
+     * @return The removed dependant or {@code null} if not found.
+     */
+    synchronized Object take(final Class<?> dependencyType) {
+        final ArrayList<Object> dependants = mTypeIndex.get(dependencyType);
+
+        if (dependants == null || dependants.isEmpty()) {
+            return null;
+        }
+
+        final Object dependant = dependants.get(dependants.size() - 1);
+        remove(dependant);
+        return dependant;
+    }
+
+    private void remove(final Object dependant) {
+        mDependants.remove(dependant);
+
+        for (final Class<?> supertype : getSupertypes(dependant.getClass())) {
+            final ArrayList<Object> dependants = mTypeIndex.get(supertype);
+
+            for (int i = dependants.size() - 1; i >= 0; i--) {
+                if (dependants.get(i) == dependant) {
+                    dependants.remove(i);
+                    break;
+                }
+            }
+
+            if (dependants.isEmpty()) {
+                mTypeIndex.remove(supertype);
+            }
+        }
+    }
+
+    /**
+     * Tests if the given dependant is contained.
+     *
+     * @param dependant A dependant {@link Object}.
+     * @return A {@code boolean} value.
+     */
+    public synchronized boolean contains(final Object dependant) {
+        return mDependants.contains(dependant);
+    }
+
+    /**
+     * Tests if this {@link DependantSet} is empty.
+     *
+     * @return A {@code boolean} value.
+     */
+    public synchronized boolean isEmpty() {
+        return mDependants.isEmpty();
+    }
+
+    /**
+     * Gets the number of contained dependants.
+     *
+     * @return The number as an {@code int} value.
+     */
+    public synchronized int size() {
+        return mDependants.size();
+    }
+
+    /**
+     * Removes all the dependants.
+     */
+    synchronized void clear() {
+        mDependants.clear();
+        mTypeIndex.clear();
+    }
+
+    /**
+     * Gets the supertypes, including the type itself, of the given dependant type.
+     *
+     * @param type A {@link Class} specifying the type.
+     * @return An array of {@link Class}es.
+     */
+    static Class<?>[] getSupertypes(final Class<?> type) {
+        Class<?>[] supertypes = sSupertypes.get(type);
+
+        if (supertypes == null) {
+            final Set<Class<?>> collectedTypes = new LinkedHashSet<>();
+
+            for (Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+                collectSupertypes(superclass, collectedTypes);
+            }
+
+            supertypes = collectedTypes.toArray(new Class<?>[collectedTypes.size()]);
+            sSupertypes.putIfAbsent(type, supertypes);
+        }
+        return supertypes;
+    }
+
+    private static void collectSupertypes(final Class<?> type, final Set<Class<?>> collectedTypes) {
+        if (collectedTypes.add(type)) {
+            for (final Class<?> superinterface : type.getInterfaces()) {
+                collectSupertypes(superinterface, collectedTypes);
+            }
+        }
+    }
+}
@@ -15,26 +15,73 @@
  */
 package org.fuusio.api.dependency;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * {@link Dependency} provides an API to pull and create dependencies. It also provides a static
  * API for managing {@link DependencyScope} instances, such as methods for activating and deactivating
- * {@link DependencyScope} instances.
+ * {@link DependencyScope} instances. If no {@link DependencyScope} is active, dependencies are
+ * requested from the {@link ApplicationScope}.
  */
 public class Dependency {
 
     /**
-     * A {@link HashMap} containing the activated {@link DependencyScope}s using method
+     * A {@link ConcurrentHashMap} containing the activated {@link DependencyScope}s using method
      * {@link Dependency#activateScope(DependencyScopeOwner)}. Even if there can be multiple
      * activated {@link DependencyScope}s only one of them can be the active one.
      */
-    private final static HashMap<String, DependencyScope> sDependencyScopes = new HashMap<>();
+    private final static ConcurrentHashMap<String, DependencyScope> sDependencyScopes = new ConcurrentHashMap<>();
 
     /**
-     * The currently active {@link DependencyScope}.
+     * The currently active {@link DependencyScope}. The active {@link DependencyScope} is changed
+     * only while holding the lock of class {@link Dependency}, but it can be read from any thread.
      */
-    private static DependencyScope sActiveScope = null;
+    private static volatile DependencyScope sActiveScope = null;
+
+    /**
+     * An optional {@link DependencyScopeCache} for retaining the {@link DependencyScope}s that are
+     * deactivated when another {@link DependencyScope} is activated.
+     */
+    private static DependencyScopeCache sScopeCache = null;
+
+    /**
+     * The optional {@link DependencyProfiler} recording resolutions. Read on each resolution.
+     */
+    static volatile DependencyProfiler sProfiler = null;
+
+    /**
+     * Gets the {@link DependencyProfiler} recording resolutions.
+     *
+     * @return A {@link DependencyProfiler} or {@code null} if resolutions are not recorded.
+     */
+    public static DependencyProfiler getProfiler() {
+        return sProfiler;
+    }
+
+    /**
+     * Sets the {@link DependencyProfiler} for recording resolutions. Recording is disabled by
+     * default, and it can be disabled by setting {@code null}.
+     *
+     * @param profiler A {@link DependencyProfiler}. May be {@code null}.
+     */
+    public static void setProfiler(final DependencyProfiler profiler) {
+        sProfiler = profiler;
+    }
+
+    /**
+     * Sets the {@link DependencyScopeCache} used for retaining deactivated {@link DependencyScope}s.
+     * When a {@link DependencyScope} is deactivated because another {@link DependencyScope} is
+     * activated, it is retained to the {@link DependencyScopeCache} instead of disposing it.
+     * Activating its {@link DependencyScopeOwner} again reuses the retained object graph. If no
+     * {@link DependencyScopeCache} is set, deactivated {@link DependencyScope}s are disposed.
+     *
+     * @param cache A {@link DependencyScopeCache}. May be {@code null}.
+     */
+    public static synchronized void setScopeCache(final DependencyScopeCache cache) {
+        sScopeCache = cache;
+    }
 
     /**
      * Adds the {@link DependencyScope} managed by the given {@link DependencyScopeOwner} to
@@ -43,7 +90,7 @@ public class Dependency {
      * @param owner A {@link DependencyScopeOwner}
      * @return A {@link DependencyScope}.
      */
-    public static DependencyScope addScope(final DependencyScopeOwner owner) {
+    public static synchronized DependencyScope addScope(final DependencyScopeOwner owner) {
 
         final DependencyScope scope = owner.getDependencyScope();
         sDependencyScopes.put(owner.getScopeId(), scope);
@@ -89,24 +136,32 @@ public class Dependency {
     /**
      * Activates a {@link DependencyScope} for the given {@link DependencyScopeOwner}.
      * The active {@link DependencyScope} is used for resolving dependencies. Setting the currently
-     * active {@link DependencyScope} is not thread safe. Therefore this method can be invoked
-     * only from the Main UI thread.
+     * active {@link DependencyScope} is synchronized, but it should be done from the Main UI thread
+     * to keep it in sync with the lifecycle of the {@link DependencyScopeOwner}. The previously
+     * active {@link DependencyScope} is retained to the {@link DependencyScopeCache}, if one is set,
+     * and a retained {@link DependencyScope} of the given {@link DependencyScopeOwner} is reused.
      *
      * @param owner A {@link DependencyScopeOwner}.
      */
-    public static void activateScope(final DependencyScopeOwner owner) {
+    public static synchronized void activateScope(final DependencyScopeOwner owner) {
 
         DependencyScope scope = sDependencyScopes.get(owner.getScopeId());
 
         if (scope == null) {
-            scope = addScope(owner);
-            scope.setOwner(owner);
+            scope = (sScopeCache != null) ? sScopeCache.restoreDependencyScope(owner) : null;
+
+            if (scope != null) {
+                sDependencyScopes.put(owner.getScopeId(), scope);
+            } else {
+                scope = addScope(owner);
+                scope.setOwner(owner);
+            }
         }
 
         if (sActiveScope != scope) {
 
             if (sActiveScope != null) {
-                deactivateScope(sActiveScope.getOwner());
+                deactivateScope(sActiveScope.getOwner(), true);
             }
 
             if (scope != null) {
@@ -122,16 +177,24 @@ public class Dependency {
     /**
      * Activates the given {@link DependencyScope} for the given {@link DependencyScopeOwner}.
      * The active {@link DependencyScope} is used for resolving dependencies. Setting the currently
-     * active {@link DependencyScope} is not thread safe. Therefore this method can be invoked
-     * only from the Main UI thread. This method is suitable to be used when the actual instance
+     * active {@link DependencyScope} is synchronized, but it should be done from the Main UI thread
+     * to keep it in sync with the lifecycle of the {@link DependencyScopeOwner}. This method is suitable to be used when the actual instance
      *
      * @param owner A {@link DependencyScopeOwner}.
      * @param scope A {@link DependencyScope}.
      */
-    public static void activateScope(final DependencyScopeOwner owner, final DependencyScope scope) {
+    public static synchronized void activateScope(final DependencyScopeOwner owner, final DependencyScope scope) {
 
         assert (scope != null);
 
+        if (sScopeCache != null) {
+            final DependencyScope retainedScope = sScopeCache.restoreDependencyScope(owner);
+
+            if (retainedScope != null && retainedScope != scope) {
+                retainedScope.dispose();
+            }
+        }
+
         sDependencyScopes.put(owner.getScopeId(), scope);
         scope.addDependant(owner);
         scope.setOwner(owner);
@@ -139,7 +202,7 @@ public class Dependency {
         if (sActiveScope != scope) {
 
             if (sActiveScope != null) {
-                deactivateScope(sActiveScope.getOwner());
+                deactivateScope(sActiveScope.getOwner(), true);
             }
 
             sActiveScope = scope;
@@ -150,17 +213,38 @@ public class Dependency {
     /**
      * Deactivates a {@link DependencyScope} managed by the given {@link DependencyScopeOwner}.
      * When a {@link DependencyScope} is deactivated it is also disposed if disposing is allowed
-     * for the deactivated {@link DependencyScope}.
+     * for the deactivated {@link DependencyScope}. A {@link DependencyScope} deactivated using this
+     * method is never retained to the {@link DependencyScopeCache}.
      *
      * @param owner A {@link DependencyScopeOwner}.
      */
-    public static void deactivateScope(final DependencyScopeOwner owner) {
+    public static synchronized void deactivateScope(final DependencyScopeOwner owner) {
+        deactivateScope(owner, false);
+    }
+
+    /**
+     * Deactivates a {@link DependencyScope} managed by the given {@link DependencyScopeOwner}.
+     * A disposable {@link DependencyScope} is retained to the {@link DependencyScopeCache}, if
+     * retaining is requested and a {@link DependencyScopeCache} is set. Otherwise it is disposed.
+     *
+     * @param owner  A {@link DependencyScopeOwner}.
+     * @param retain A {@code boolean} value specifying if the {@link DependencyScope} is retained.
+     */
+    private static void deactivateScope(final DependencyScopeOwner owner, final boolean retain) {
 
         final DependencyScope scope = owner.getDependencyScope();
 
         if (scope.isDisposable()) {
             sDependencyScopes.remove(owner.getScopeId());
-            scope.dispose();
+
+            if (retain && sScopeCache != null) {
+                sScopeCache.retainDependencyScope(owner, scope);
+            } else {
+                if (sScopeCache != null) {
+                    sScopeCache.evictDependencyScope(owner);
+                }
+                scope.dispose();
+            }
         }
 
         scope.onDeactivated(owner);
@@ -180,7 +264,7 @@ public class Dependency {
      * an {@link DependencyScope} implementation.
      */
     public static <T> T get(final Class<T> dependencyType) {
-        return sActiveScope.getDependency(dependencyType, null, false);
+        return resolve(getResolvingScope(), dependencyType, null, false);
     }
 
     /**
@@ -195,7 +279,158 @@ public class Dependency {
      * an {@link DependencyScope} implementation.
      */
     public static <T> T get(final Class<T> dependencyType, final Object dependant) {
-        return sActiveScope.getDependency(dependencyType, dependant, false);
+        return resolve(getResolvingScope(), dependencyType, dependant, false);
+    }
+
+    /**
+     * Gets a {@link Lazy} handle to a dependency of the specified type. The dependency is not
+     * resolved until {@link Lazy#get()} is invoked for the first time. The dependency is resolved
+     * from the {@link DependencyScope} that is active when this method is invoked, or from
+     * the then active {@link DependencyScope} if no {@link DependencyScope} is active now.
+     *
+     * @param dependencyType A {@link Class} specifying the type of the requested dependency.
+     * @param <T>            A type parameter for the type of the requested dependency.
+     * @return A {@link Lazy}.
+     */
+    public static <T> Lazy<T> lazy(final Class<T> dependencyType) {
+        return new LazyDependency<>(sActiveScope, dependencyType, null);
+    }
+
+    /**
+     * Gets a {@link Lazy} handle to a dependency of the specified type. The dependency is not
+     * resolved until {@link Lazy#get()} is invoked for the first time.
+     *
+     * @param dependencyType A {@link Class} specifying the type of the requested dependency.
+     * @param dependant      The object requesting the dependency.
+     * @param <T>            A type parameter for the type of the requested dependency.
+     * @return A {@link Lazy}.
+     */
+    public static <T> Lazy<T> lazy(final Class<T> dependencyType, final Object dependant) {
+        return new LazyDependency<>(sActiveScope, dependencyType, dependant);
+    }
+
+    /**
+     * Gets a {@link Provider} handle to a dependency of the specified type. The dependency is
+     * resolved each time {@link Provider#get()} is invoked from the {@link DependencyScope} that
+     * is active when this method is invoked.
+     *
+     * @param dependencyType A {@link Class} specifying the type of the requested dependency.
+     * @param <T>            A type parameter for the type of the requested dependency.
+     * @return A {@link Provider}.
+     */
+    public static <T> Provider<T> provider(final Class<T> dependencyType) {
+        return new DependencyProvider<>(sActiveScope, dependencyType, null);
+    }
+
+    /**
+     * Gets a {@link Provider} handle to a dependency of the specified type. The dependency is
+     * resolved each time {@link Provider#get()} is invoked.
+     *
+     * @param dependencyType A {@link Class} specifying the type of the requested dependency.
+     * @param dependant      The object requesting the dependency.
+     * @param <T>            A type parameter for the type of the requested dependency.
+     * @return A {@link Provider}.
+     */
+    public static <T> Provider<T> provider(final Class<T> dependencyType, final Object dependant) {
+        return new DependencyProvider<>(sActiveScope, dependencyType, dependant);
+    }
+
+    /**
+     * Gets the set multibinding of the specified element type from the currently active
+     * {@link DependencyScope}. The set merges the elements contributed by the active
+     * {@link DependencyScope}, its ancestors, and the {@link ApplicationScope} in
+     * {@link DependencyScope#contributeBindings(MultiBindings)}.
+     *
+     * @param elementType A {@link Class} specifying the element type.
+     * @param <T>         A type parameter for the element type.
+     * @return An immutable {@link Set}. May be empty, but not {@code null}.
+     */
+    public static <T> Set<T> getSet(final Class<T> elementType) {
+        return getResolvingScope().getSetBinding(elementType);
+    }
+
+    /**
+     * Gets the map multibinding of the specified key and value types from the currently active
+     * {@link DependencyScope}. The entries contributed by the active {@link DependencyScope}
+     * override the entries with the same keys contributed by its ancestors and by
+     * the {@link ApplicationScope}.
+     *
+     * @param keyType   A {@link Class} specifying the key type.
+     * @param valueType A {@link Class} specifying the value type.
+     * @param <K>       A type parameter for the key type.
+     * @param <V>       A type parameter for the value type.
+     * @return An immutable {@link Map}. May be empty, but not {@code null}.
+     */
+    public static <K, V> Map<K, V> getMap(final Class<K> keyType, final Class<V> valueType) {
+        return getResolvingScope().getMapBinding(keyType, valueType);
+    }
+
+    /**
+     * Gets a requested dependency of the specified type from the given {@link DependencyScope}.
+     * If the given {@link DependencyScope} is {@code null}, the currently active
+     * {@link DependencyScope}, or the {@link ApplicationScope}, is used.
+     */
+    static <T> T get(final DependencyScope scope, final Class<T> dependencyType, final Object dependant) {
+        final DependencyScope resolvingScope = (scope != null) ? scope : getResolvingScope();
+        return resolve(resolvingScope, dependencyType, dependant, false);
+    }
+
+    /**
+     * Resolves a dependency of the specified type from the given {@link DependencyScope}. The
+     * resolution is recorded if a {@link DependencyProfiler} is set.
+     */
+    private static <T> T resolve(final DependencyScope scope, final Class<T> dependencyType, final Object dependant, final boolean createNew) {
+        final DependencyProfiler profiler = sProfiler;
+
+        if (profiler == null) {
+            return scope.getDependency(dependencyType, dependant, createNew);
+        }
+
+        final DependencyProfiler.Frame frame = profiler.onResolutionStarted(dependencyType, dependant);
+        T dependency = null;
+
+        try {
+            dependency = scope.getDependency(dependencyType, dependant, createNew);
+            return dependency;
+        } finally {
+            profiler.onResolutionFinished(frame, dependency);
+        }
+    }
+
+    /**
+     * Creates a dependency of the specified type using the given {@link DependencyScope}. The
+     * creation is recorded if a {@link DependencyProfiler} is set.
+     */
+    private static <T> T create(final DependencyScope scope, final Class<T> dependencyType, final Object dependant) {
+        final DependencyProfiler profiler = sProfiler;
+
+        if (profiler == null) {
+            return scope.createDependency(dependencyType, dependant);
+        }
+
+        final DependencyProfiler.Frame frame = profiler.onResolutionStarted(dependencyType, dependant);
+        T dependency = null;
+
+        try {
+            dependency = scope.createDependency(dependencyType, dependant);
+            return dependency;
+        } finally {
+            profiler.onResolutionFinished(frame, dependency);
+        }
+    }
+
+    /**
+     * Gets the {@link DependencyScope} used for resolving dependencies. This is the currently
+     * active {@link DependencyScope} or, if no {@link DependencyScope} is active, for instance,
+     * while the application is being started, the {@link ApplicationScope}.
+     *
+     * @return A {@link DependencyScope}. May return {@code null} if there is neither an active
+     * {@link DependencyScope} nor an {@link ApplicationScope}, in which case the resolution
+     * fails with a {@link NullPointerException}.
+     */
+    private static DependencyScope getResolvingScope() {
+        final DependencyScope scope = sActiveScope;
+        return (scope != null) ? scope : ApplicationScope.getInstance();
     }
 
     /**
@@ -209,7 +444,7 @@ public class Dependency {
      * an {@link DependencyScope} implementation.
      */
     public static <T> T getOrCreate(final Class<T> dependencyType) {
-        return sActiveScope.getDependency(dependencyType, null, true);
+        return resolve(getResolvingScope(), dependencyType, null, true);
     }
 
     /**
@@ -225,7 +460,7 @@ public class Dependency {
      * an {@link DependencyScope} implementation.
      */
     public static <T> T getOrCreate(final Class<T> dependencyType, final Object dependant) {
-        return sActiveScope.getDependency(dependencyType, dependant, true);
+        return resolve(getResolvingScope(), dependencyType, dependant, true);
     }
 
     /**
@@ -238,7 +473,7 @@ public class Dependency {
      * an {@link DependencyScope} implementation.
      */
     public static <T> T create(final Class<T> dependencyType) {
-        return sActiveScope.createDependency(dependencyType, null);
+        return create(getResolvingScope(), dependencyType, null);
     }
 
     /**
@@ -253,6 +488,6 @@ public class Dependency {
      * an {@link DependencyScope} implementation.
      */
     public static <T> T create(final Class<T> dependencyType, final Object dependant) {
-        return sActiveScope.createDependency(dependencyType, dependant);
+        return create(getResolvingScope(), dependencyType, dependant);
     }
 }
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.dependency;
+
+import org.fuusio.api.util.L;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link DependencyProfiler} records dependency resolutions when it is set using
+ * {@link Dependency#setProfiler(DependencyProfiler)}. Each resolution requested via
+ * {@link Dependency} is recorded as a {@link ResolutionRecord} specifying the requested type,
+ * the requesting dependant, the {@link DependencyScope} that satisfied the request, how
+ * the request was satisfied, and the elapsed time. The resolutions requested while constructing
+ * a dependency are recorded as the edges of the object graph of the {@link DependencyScope} that
+ * constructed it. When no {@link DependencyProfiler} is set, the only overhead in resolving
+ * dependencies is a single volatile read.
+ * <p>
+ * The elapsed times are inclusive, i.e. the time of resolving a dependency includes the time
+ * of resolving the dependencies requested while constructing it.
+ */
+public class DependencyProfiler {
+
+    /**
+     * The default maximum number of the most recent {@link ResolutionRecord}s retained.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * {@link Kind} specifies how a resolution was satisfied.
+     */
+    public enum Kind {
+
+        /**
+         * The dependency was already cached by the {@link DependencyScope}.
+         */
+        CACHED,
+
+        /**
+         * The dependency was constructed by a provider method or by
+         * {@link DependencyScope#getDependency()}.
+         */
+        PROVIDED,
+
+        /**
+         * The dependency was constructed by {@link DependencyScope#createDependency()}.
+         */
+        CREATED,
+
+        /**
+         * The dependency could not be resolved.
+         */
+        UNRESOLVED
+    }
+
+    private final int mCapacity;
+    private final ThreadLocal<Frame> mCurrentFrame;
+    private final ArrayDeque<ResolutionRecord> mRecords;
+    private final Map<String, Map<Class<?>, Node>> mGraphs;
+
+    public DependencyProfiler() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DependencyProfiler(final int capacity) {
+        mCapacity = capacity;
+        mCurrentFrame = new ThreadLocal<>();
+        mRecords = new ArrayDeque<>();
+        mGraphs = new LinkedHashMap<>();
+    }
+
+    /**
+     * Invoked by {@link Dependency} when a resolution is started.
+     *
+     * @param dependencyType A {@link Class} specifying the requested type.
+     * @param dependant      The requesting dependant. May be {@code null}.
+     * @return A {@link Frame} to be given to {@link #onResolutionFinished(Frame, Object)}.
+     */
+    Frame onResolutionStarted(final Class<?> dependencyType, final Object dependant) {
+        final Frame frame = new Frame(dependencyType, dependant, mCurrentFrame.get());
+        mCurrentFrame.set(frame);
+        frame.mStartTime = System.nanoTime();
+        return frame;
+    }
+
+    /**
+     * Invoked by {@link Dependency} when a resolution is finished.
+     *
+     * @param frame      The {@link Frame} returned by {@link #onResolutionStarted(Class, Object)}.
+     * @param dependency The resolved dependency. May be {@code null}.
+     */
+    void onResolutionFinished(final Frame frame, final Object dependency) {
+        final long nanos = System.nanoTime() - frame.mStartTime;
+        final Frame parentFrame = frame.mParent;
+
+        if (parentFrame != null) {
+            mCurrentFrame.set(parentFrame);
+            parentFrame.addChild(frame.mDependencyType);
+        } else {
+            mCurrentFrame.remove();
+        }
+
+        if (frame.mKind == null) {
+            frame.mKind = (dependency != null) ? Kind.CACHED : Kind.UNRESOLVED;
+        }
+
+        record(frame, nanos);
+    }
+
+    /**
+     * Invoked by a {@link DependencyScope} when it satisfies a request of the given type.
+     *
+     * @param scope          The satisfying {@link DependencyScope}.
+     * @param dependencyType A {@link Class} specifying the requested type.
+     * @param kind           The {@link Kind} of the resolution.
+     */
+    void onResolved(final DependencyScope scope, final Class<?> dependencyType, final Kind kind) {
+        final Frame frame = mCurrentFrame.get();
+
+        if (frame != null && frame.mKind == null && frame.mDependencyType == dependencyType) {
+            frame.mKind = kind;
+            frame.mScopeName = getScopeName(scope);
+        }
+    }
+
+    private synchronized void record(final Frame frame, final long nanos) {
+        final ResolutionRecord record = new ResolutionRecord(frame.mDependencyType.getName(), frame.mDependantName,
+                frame.mScopeName, frame.mKind, nanos, frame.getDepth());
+
+        if (mRecords.size() >= mCapacity) {
+            mRecords.removeFirst();
+        }
+        mRecords.addLast(record);
+
+        if (frame.mScopeName != null && (frame.mKind == Kind.PROVIDED || frame.mKind == Kind.CREATED)) {
+            Map<Class<?>, Node> graph = mGraphs.get(frame.mScopeName);
+
+            if (graph == null) {
+                graph = new LinkedHashMap<>();
+                mGraphs.put(frame.mScopeName, graph);
+            }
+
+            Node node = graph.get(frame.mDependencyType);
+
+            if (node == null) {
+                node = new Node(frame.mDependencyType.getName());
+                graph.put(frame.mDependencyType, node);
+            }
+            node.record(nanos, frame.mChildren);
+        }
+    }
+
+    /**
+     * Clears all the recorded resolutions and object graphs.
+     */
+    public synchronized void reset() {
+        mRecords.clear();
+        mGraphs.clear();
+    }
+
+    /**
+     * Gets the most recent recorded resolutions.
+     *
+     * @return A {@link List} of {@link ResolutionRecord}s in the order of completion.
+     */
+    public synchronized List<ResolutionRecord> getResolutions() {
+        return Collections.unmodifiableList(new ArrayList<>(mRecords));
+    }
+
+    /**
+     * Gets the recorded object graphs.
+     *
+     * @return A {@link Map} containing a {@link List} of {@link Node}s for each
+     * {@link DependencyScope}. The keys are the names of the {@link DependencyScope}s.
+     */
+    public synchronized Map<String, List<Node>> getGraphs() {
+        final Map<String, List<Node>> graphs = new LinkedHashMap<>();
+
+        for (final Map.Entry<String, Map<Class<?>, Node>> entry : mGraphs.entrySet()) {
+            final List<Node> nodes = new ArrayList<>();
+
+            for (final Node node : entry.getValue().values()) {
+                nodes.add(node.copy());
+            }
+            graphs.put(entry.getKey(), Collections.unmodifiableList(nodes));
+        }
+        return Collections.unmodifiableMap(graphs);
+    }
+
+    /**
+     * Writes the recorded object graphs to the log using {@link L}. Dependencies constructed more
+     * than once in the same {@link DependencyScope} are marked as repeated.
+     */
+    public void dump() {
+        for (final Map.Entry<String, List<Node>> entry : getGraphs().entrySet()) {
+            L.d(this, "dump", "Scope: " + entry.getKey());
+
+            for (final Node node : entry.getValue()) {
+                final StringBuilder builder = new StringBuilder();
+                builder.append("  ").append(node.getTypeName());
+                builder.append(": constructed = ").append(node.getConstructionCount());
+                builder.append(", total = ").append(node.getTotalNanos()).append(" ns");
+                builder.append(", max = ").append(node.getMaxNanos()).append(" ns");
+
+                if (node.getConstructionCount() > 1) {
+                    builder.append(" (repeated)");
+                }
+
+                if (!node.getDependencyTypeNames().isEmpty()) {
+                    builder.append(" -> ").append(node.getDependencyTypeNames());
+                }
+                L.d(this, "dump", builder.toString());
+            }
+        }
+    }
+
+    private static String getScopeName(final DependencyScope scope) {
+        final DependencyScopeOwner owner = scope.getOwner();
+        final String className = scope.getClass().getName();
+        return (owner != null) ? owner.getScopeId() + " (" + className + ")" : className;
+    }
+
+    /**
+     * {@link Frame} represents a resolution in progress on the current thread.
+     */
+    static final class Frame {
+
+        private final Class<?> mDependencyType;
+        private final String mDependantName;
+        private final Frame mParent;
+
+        private Set<Class<?>> mChildren;
+        private Kind mKind;
+        private String mScopeName;
+        private long mStartTime;
+
+        Frame(final Class<?> dependencyType, final Object dependant, final Frame parent) {
+            mDependencyType = dependencyType;
+            mDependantName = (dependant != null) ? dependant.getClass().getName() : null;
+            mParent = parent;
+        }
+
+        void addChild(final Class<?> dependencyType) {
+            if (mChildren == null) {
+                mChildren = new LinkedHashSet<>();
+            }
+            mChildren.add(dependencyType);
+        }
+
+        int getDepth() {
+            int depth = 0;
+
+            for (Frame frame = mParent; frame != null; frame = frame.mParent) {
+                depth++;
+            }
+            return depth;
+        }
+    }
+
+    /**
+     * {@link ResolutionRecord} is an immutable record of a single resolution.
+     */
+    public static final class ResolutionRecord {
+
+        private final String mTypeName;
+        private final String mDependantName;
+        private final String mScopeName;
+        private final Kind mKind;
+        private final long mNanos;
+        private final int mDepth;
+
+        ResolutionRecord(final String typeName, final String dependantName, final String scopeName,
+                         final Kind kind, final long nanos, final int depth) {
+            mTypeName = typeName;
+            mDependantName = dependantName;
+            mScopeName = scopeName;
+            mKind = kind;
+            mNanos = nanos;
+            mDepth = depth;
+        }
+
+        public String getTypeName() {
+            return mTypeName;
+        }
+
+        /**
+         * Gets the class name of the requesting dependant.
+         *
+         * @return A {@link String}. May return {@code null} if there was no dependant.
+         */
+        public String getDependantName() {
+            return mDependantName;
+        }
+
+        /**
+         * Gets the name of the {@link DependencyScope} that satisfied the resolution.
+         *
+         * @return A {@link String}. May return {@code null} if the resolution was not satisfied
+         * by a {@link DependencyScope}.
+         */
+        public String getScopeName() {
+            return mScopeName;
+        }
+
+        public Kind getKind() {
+            return mKind;
+        }
+
+        public long getNanos() {
+            return mNanos;
+        }
+
+        /**
+         * Gets the nesting depth of the resolution. A resolution requested while constructing
+         * another dependency has a depth greater than zero.
+         *
+         * @return The depth as an {@code int} value.
+         */
+        public int getDepth() {
+            return mDepth;
+        }
+    }
+
+    /**
+     * {@link Node} is a dependency constructed by a {@link DependencyScope} in a recorded object
+     * graph. The edges of the graph are the types of the dependencies resolved while constructing
+     * the dependency.
+     */
+    public static final class Node {
+
+        private final String mTypeName;
+        private final Set<String> mDependencyTypeNames;
+
+        private int mConstructionCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        Node(final String typeName) {
+            mTypeName = typeName;
+            mDependencyTypeNames = new LinkedHashSet<>();
+        }
+
+        void record(final long nanos, final Set<Class<?>> dependencyTypes) {
+            mConstructionCount++;
+            mTotalNanos += nanos;
+            mMaxNanos = Math.max(mMaxNanos, nanos);
+
+            if (dependencyTypes != null) {
+                for (final Class<?> dependencyType : dependencyTypes) {
+                    mDependencyTypeNames.add(dependencyType.getName());
+                }
+            }
+        }
+
+        Node copy() {
+            final Node node = new Node(mTypeName);
+            node.mDependencyTypeNames.addAll(mDependencyTypeNames);
+            node.mConstructionCount = mConstructionCount;
+            node.mTotalNanos = mTotalNanos;
+            node.mMaxNanos = mMaxNanos;
+            return node;
+        }
+
+        public String getTypeName() {
+            return mTypeName;
+        }
+
+        public Set<String> getDependencyTypeNames() {
+            return Collections.unmodifiableSet(mDependencyTypeNames);
+        }
+
+        public int getConstructionCount() {
+            return mConstructionCount;
+        }
+
+        public long getTotalNanos() {
+            return mTotalNanos;
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.dependency;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link DependencyResolver} provides an abstract base class for dependency resolvers generated
+ * at compile time by {@code org.fuusio.compiler.DependencyResolverProcessor}. A resolver is
+ * generated for each {@link DependencyScope} class that declares methods annotated with
+ * {@link DependencyScope.Provides}. The types provided by the annotated methods, including
+ * their supertypes, are mapped to precomputed type indices, and a generated resolver invokes
+ * the provider method selected by the index of the requested type directly.
+ * <p>
+ * A generated resolver class is named after its {@link DependencyScope} using postfix
+ * {@link DependencyResolver#POSTFIX_RESOLVER}. A resolver delegates the types it does not
+ * resolve to the resolver of the super class of its {@link DependencyScope}.
+ *
+ * @param <T_Scope> The type of the {@link DependencyScope}.
+ */
+public abstract class DependencyResolver<T_Scope extends DependencyScope> {
+
+    public static final String POSTFIX_RESOLVER = "$$DependencyResolver";
+
+    private static final ConcurrentHashMap<Class<?>, DependencyResolver<?>> sResolvers = new ConcurrentHashMap<>();
+
+    /**
+     * A sentinel cached for {@link DependencyScope} classes that do not have a resolver.
+     */
+    private static final DependencyResolver<?> NO_RESOLVER = new DependencyResolver<DependencyScope>() {
+        @Override
+        protected Object provide(final DependencyScope scope, final int typeIndex) {
+            return null;
+        }
+    };
+
+    private final HashMap<Class<?>, Integer> mTypeIndices;
+
+    private DependencyResolver<?> mSuperResolver;
+
+    /**
+     * Constructs a new instance of {@link DependencyResolver} for the given provided types. The
+     * index of a type in the given array is the type index passed to
+     * {@link DependencyResolver#provide(DependencyScope, int)}.
+     *
+     * @param types The provided types as {@link Class}es.
+     */
+    protected DependencyResolver(final Class<?>... types) {
+        mTypeIndices = new HashMap<>(types.length * 2);
+
+        for (int i = 0; i < types.length; i++) {
+            mTypeIndices.put(types[i], i);
+        }
+    }
+
+    /**
+     * Provides a dependency for the specified type index by invoking the provider method of
+     * the given {@link DependencyScope}.
+     *
+     * @param scope     A {@link DependencyScope}.
+     * @param typeIndex The type index of the requested type.
+     * @return The provided dependency. May return {@code null}.
+     */
+    protected abstract Object provide(T_Scope scope, int typeIndex);
+
+    /**
+     * Resolves a dependency of the specified type using the given {@link DependencyScope}.
+     *
+     * @param scope          A {@link DependencyScope}.
+     * @param dependencyType A {@link Class} specifying the type of the requested dependency.
+     * @return The resolved dependency or {@code null} if the type is not provided.
+     */
+    @SuppressWarnings("unchecked")
+    final Object resolve(final DependencyScope scope, final Class<?> dependencyType) {
+        final Integer typeIndex = mTypeIndices.get(dependencyType);
+
+        if (typeIndex != null) {
+            final Object dependency = provide((T_Scope) scope, typeIndex);
+
+            if (dependency != null) {
+                return dependency;
+            }
+        }
+        return (mSuperResolver != null) ? mSuperResolver.resolve(scope, dependencyType) : null;
+    }
+
+    /**
+     * Gets the {@link DependencyResolver} for the specified {@link DependencyScope} class. The
+     * lookup result is cached.
+     *
+     * @param scopeClass A {@link Class} specifying the {@link DependencyScope}.
+     * @return A {@link DependencyResolver} or {@code null} if no resolver has been generated for
+     * the class or any of its super classes.
+     */
+    static DependencyResolver<?> getResolver(final Class<?> scopeClass) {
+
+        if (scopeClass == null || scopeClass == DependencyScope.class) {
+            return null;
+        }
+
+        DependencyResolver<?> resolver = sResolvers.get(scopeClass);
+
+        if (resolver == null) {
+            final DependencyResolver<?> newResolver = createResolver(scopeClass);
+            resolver = sResolvers.putIfAbsent(scopeClass, newResolver);
+
+            if (resolver == null) {
+                resolver = newResolver;
+            }
+        }
+        return (resolver != NO_RESOLVER) ? resolver : null;
+    }
+
+    private static DependencyResolver<?> createResolver(final Class<?> scopeClass) {
+
+        final DependencyResolver<?> superResolver = getResolver(scopeClass.getSuperclass());
+
+        try {
+            final String className = scopeClass.getName() + POSTFIX_RESOLVER;
+            final Class<?> resolverClass = Class.forName(className, true, scopeClass.getClassLoader());
+            final DependencyResolver<?> resolver = (DependencyResolver<?>) resolverClass.newInstance();
+            resolver.mSuperResolver = superResolver;
+            return resolver;
+        } catch (final ClassNotFoundException e) {
+            // No generated resolver. The resolver of the super class is used instead.
+            return (superResolver != null) ? superResolver : NO_RESOLVER;
+        } catch (final Exception e) {
+            throw new IllegalStateException("Invalid dependency resolver for: " + scopeClass.getName(), e);
+        }
+    }
+}
@@ -15,8 +15,19 @@
  */
 package org.fuusio.api.dependency;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link DependencyScope} provides an abstract base class for implementing objects that act
@@ -27,40 +38,102 @@ import java.util.HashMap;
  */
 public abstract class DependencyScope {
 
+    /**
+     * {@link Provides} can be used to annotate a method of a {@link DependencyScope} that provides
+     * a dependency of its return type. A provider method may not be private or static and it may
+     * not have parameters. A {@link DependencyResolver} is generated at compile time for each
+     * {@link DependencyScope} that declares provider methods. Dependencies provided by
+     * the annotated methods are resolved before {@link DependencyScope#getDependency()} is invoked.
+     */
+    @Retention(RetentionPolicy.CLASS)
+    @Target(ElementType.METHOD)
+    public @interface Provides {
+    }
+
+    /**
+     * The currently requested type of dependency for each thread. A resolution that is delegated
+     * to another {@link DependencyScope} saves and restores the type, so that the type is always
+     * the one requested from the {@link DependencyScope} that is resolving on the thread.
+     */
+    private static final ThreadLocal<Class> sDependencyType = new ThreadLocal<>();
+
+    /**
+     * The source of resolution stamps. Each change that may cause a type to be resolved by
+     * a different scope than before is stamped with a new, greater value than any earlier stamp.
+     */
+    private static final AtomicInteger sResolutionStamp = new AtomicInteger();
+
+    /**
+     * The resolution stamps of the types for which a dependant has been added to
+     * a {@link DependencyScope}, keyed by the supertypes of the dependants.
+     */
+    private static final ConcurrentHashMap<Class<?>, Integer> sDependantStamps = new ConcurrentHashMap<>();
+
+    /**
+     * The resolution stamp of the latest change of the {@link ApplicationScope} singleton instance.
+     */
+    private static volatile int sApplicationStamp;
+
     /**
      * A cache of dependants that have request dependencies. These dependants are cached because
      * they can also be dependencies for other objects.
      */
-    protected final ArrayList<Object> mDependants;
+    protected final DependantSet mDependants;
 
     /**
      * A cache of dependencies.
      */
-    protected final HashMap<Class, Object> mDependencies;
+    protected final ConcurrentHashMap<Class, Object> mDependencies;
 
     /**
      * A reference to an optional overriding {@link DependencyScope} used providing mock dependencies.
      */
-    protected DependencyScope mMockScope;
+    protected volatile DependencyScope mMockScope;
 
     /**
      * The {@link DependencyScopeOwner} that manages this {@link DependencyScope}.
      */
-    private DependencyScopeOwner mOwner;
+    private volatile DependencyScopeOwner mOwner;
 
     /**
      * A reference to an optional parent {@link DependencyScope}.
      */
-    protected DependencyScope mParentScope;
+    protected volatile DependencyScope mParentScope;
+
+    /**
+     * The generated {@link DependencyResolver} of this {@link DependencyScope}. May be {@code null}.
+     */
+    private final DependencyResolver<?> mResolver;
 
     /**
-     * A helper field for storing the currently requested type of dependency.
+     * The memoized {@link Resolution}s of the types that this {@link DependencyScope} could not
+     * resolve by itself.
      */
-    private Class mDependencyType;
+    private final ConcurrentHashMap<Class, Resolution> mResolutions;
+
+    /**
+     * The resolution stamp of the latest change of the parent, the mocked scope, or the cached
+     * dependencies of this {@link DependencyScope}.
+     */
+    private volatile int mResolutionStamp;
+
+    /**
+     * The merged multibindings keyed by element types and {@link MultiBindings.MapKey}s.
+     */
+    private final ConcurrentHashMap<Object, MergedBinding> mMergedBindings;
+
+    /**
+     * The multibindings contributed by this {@link DependencyScope}. Collected on first use.
+     */
+    private volatile MultiBindings mMultiBindings;
 
     protected DependencyScope() {
-        mDependencies = new HashMap<>();
-        mDependants = new ArrayList<>();
+        mDependencies = new ConcurrentHashMap<>();
+        mDependants = new DependantSet();
+        mResolver = DependencyResolver.getResolver(getClass());
+        mResolutions = new ConcurrentHashMap<>();
+        mMergedBindings = new ConcurrentHashMap<>();
+        mResolutionStamp = sResolutionStamp.incrementAndGet();
     }
 
     /**
@@ -97,6 +170,7 @@ public abstract class DependencyScope {
      */
     public void setParentScope(final DependencyScope parent) {
         mParentScope = parent;
+        invalidateResolutions();
     }
 
     /**
@@ -117,6 +191,7 @@ public abstract class DependencyScope {
      */
     public void setMockedScope(final DependencyScope scope) {
         mMockScope = scope;
+        invalidateResolutions();
     }
 
     /**
@@ -134,7 +209,193 @@ public abstract class DependencyScope {
      * @param dependant An {@link Object}.
      */
     public void addDependant(final Object dependant) {
-        mDependants.add(dependant);
+        if (mDependants.add(dependant)) {
+            final Integer stamp = sResolutionStamp.incrementAndGet();
+
+            for (final Class<?> supertype : DependantSet.getSupertypes(dependant.getClass())) {
+                sDependantStamps.put(supertype, stamp);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the memoized resolutions that depend on this {@link DependencyScope}, i.e.
+     * the resolutions of this {@link DependencyScope} and its descendants and, for
+     * an {@link ApplicationScope}, of all {@link DependencyScope}s. This method is invoked when
+     * a parent, a mocked scope, or a cached dependency is set to this {@link DependencyScope}.
+     * An implementation of {@link DependencyScope#getDependency()} that does not always return
+     * a dependency of a type it is able to provide has to invoke this method when it becomes able
+     * to provide the type.
+     */
+    protected void invalidateResolutions() {
+        mResolutionStamp = sResolutionStamp.incrementAndGet();
+    }
+
+    /**
+     * Gets the resolution stamp of the specified type for this {@link DependencyScope}. The stamp
+     * is the greatest stamp of this {@link DependencyScope}, its ancestors, the
+     * {@link ApplicationScope}, and the dependants of the type. A {@link Resolution} memoized
+     * with a different stamp is stale.
+     *
+     * @param dependencyType A {@link Class} specifying the type of the requested dependency.
+     * @return The stamp as an {@code int} value.
+     */
+    private int getResolutionStamp(final Class<?> dependencyType) {
+        final Integer dependantStamp = sDependantStamps.get(dependencyType);
+        final int stamp = getChainStamp();
+        return (dependantStamp != null) ? Math.max(stamp, dependantStamp) : stamp;
+    }
+
+    /**
+     * Gets the greatest resolution stamp of this {@link DependencyScope}, its ancestors, and
+     * the {@link ApplicationScope}. The stamp changes whenever any of these scopes changes, or
+     * the {@link ApplicationScope} singleton instance is set or cleared.
+     *
+     * @return The stamp as an {@code int} value.
+     */
+    private int getChainStamp() {
+        int stamp = sApplicationStamp;
+
+        for (DependencyScope scope = this; scope != null; scope = scope.mParentScope) {
+            stamp = Math.max(stamp, scope.mResolutionStamp);
+        }
+
+        final DependencyScope applicationScope = ApplicationScope.getInstance();
+
+        if (applicationScope != null) {
+            stamp = Math.max(stamp, applicationScope.mResolutionStamp);
+        }
+        return stamp;
+    }
+
+    /**
+     * Invalidates the memoized resolutions and the merged multibindings that depend on
+     * the {@link ApplicationScope}. Invoked when the {@link ApplicationScope} singleton instance is
+     * set or cleared.
+     */
+    static void invalidateApplicationScope() {
+        sApplicationStamp = sResolutionStamp.incrementAndGet();
+    }
+
+    /**
+     * This method can be overridden to contribute set and map multibindings using the given
+     * {@link MultiBindings}. This method is invoked once, when a multibinding is requested from
+     * this {@link DependencyScope} or from a descendant of it for the first time.
+     *
+     * @param bindings A {@link MultiBindings} for contributing the multibindings.
+     */
+    protected void contributeBindings(final MultiBindings bindings) {
+        // By default do nothing
+    }
+
+    /**
+     * Gets the set multibinding of the specified element type. The elements contributed by
+     * the {@link ApplicationScope} come first, followed by the elements contributed by
+     * the ancestor {@link DependencyScope}s from the root towards this {@link DependencyScope}.
+     * The merged set is computed once and cached until this {@link DependencyScope}, one of its
+     * ancestors, or the {@link ApplicationScope} changes.
+     *
+     * @param elementType A {@link Class} specifying the element type.
+     * @param <T>         The element type.
+     * @return An immutable {@link Set}. May be empty, but not {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    protected final <T> Set<T> getSetBinding(final Class<T> elementType) {
+        final int stamp = getChainStamp();
+        final MergedBinding mergedBinding = mMergedBindings.get(elementType);
+
+        if (mergedBinding != null && mergedBinding.mStamp == stamp) {
+            return (Set<T>) mergedBinding.mCollection;
+        }
+
+        final LinkedHashSet<Object> elements = new LinkedHashSet<>();
+        final List<DependencyScope> chain = getBindingChain();
+
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            elements.addAll(chain.get(i).getMultiBindings().getSet(elementType));
+        }
+
+        final Set<T> set = (Set<T>) Collections.unmodifiableSet(elements);
+        mMergedBindings.put(elementType, new MergedBinding(set, stamp));
+        return set;
+    }
+
+    /**
+     * Gets the map multibinding of the specified key and value types. An entry contributed by
+     * a {@link DependencyScope} overrides an entry with the same key contributed by its ancestor
+     * {@link DependencyScope}s or by the {@link ApplicationScope}. The merged map is computed once
+     * and cached until this {@link DependencyScope}, one of its ancestors, or
+     * the {@link ApplicationScope} changes.
+     *
+     * @param keyType   A {@link Class} specifying the key type.
+     * @param valueType A {@link Class} specifying the value type.
+     * @param <K>       The key type.
+     * @param <V>       The value type.
+     * @return An immutable {@link Map}. May be empty, but not {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    protected final <K, V> Map<K, V> getMapBinding(final Class<K> keyType, final Class<V> valueType) {
+        final MultiBindings.MapKey mapKey = new MultiBindings.MapKey(keyType, valueType);
+        final int stamp = getChainStamp();
+        final MergedBinding mergedBinding = mMergedBindings.get(mapKey);
+
+        if (mergedBinding != null && mergedBinding.mStamp == stamp) {
+            return (Map<K, V>) mergedBinding.mCollection;
+        }
+
+        final LinkedHashMap<Object, Object> entries = new LinkedHashMap<>();
+        final List<DependencyScope> chain = getBindingChain();
+
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            entries.putAll(chain.get(i).getMultiBindings().getMap(mapKey));
+        }
+
+        final Map<K, V> map = (Map<K, V>) Collections.unmodifiableMap(entries);
+        mMergedBindings.put(mapKey, new MergedBinding(map, stamp));
+        return map;
+    }
+
+    /**
+     * Gets the multibindings contributed by this {@link DependencyScope}.
+     *
+     * @return A {@link MultiBindings}.
+     */
+    private MultiBindings getMultiBindings() {
+        MultiBindings bindings = mMultiBindings;
+
+        if (bindings == null) {
+            synchronized (mMergedBindings) {
+                bindings = mMultiBindings;
+
+                if (bindings == null) {
+                    bindings = new MultiBindings();
+                    contributeBindings(bindings);
+                    mMultiBindings = bindings;
+                }
+            }
+        }
+        return bindings;
+    }
+
+    /**
+     * Gets this {@link DependencyScope}, its ancestors, and the {@link ApplicationScope} in
+     * the order of precedence of their multibindings.
+     *
+     * @return A {@link List} of {@link DependencyScope}s.
+     */
+    private List<DependencyScope> getBindingChain() {
+        final ArrayList<DependencyScope> chain = new ArrayList<>();
+
+        for (DependencyScope scope = this; scope != null; scope = scope.mParentScope) {
+            chain.add(scope);
+        }
+
+        final DependencyScope applicationScope = ApplicationScope.getInstance();
+
+        if (applicationScope != null && !chain.contains(applicationScope)) {
+            chain.add(applicationScope);
+        }
+        return chain;
     }
 
     /**
@@ -145,7 +406,7 @@ public abstract class DependencyScope {
      */
     @SuppressWarnings("unchecked")
     protected boolean type(final Class<?> dependencyType) {
-        return mDependencyType.isAssignableFrom(dependencyType);
+        return sDependencyType.get().isAssignableFrom(dependencyType);
     }
 
     /**
@@ -158,11 +419,13 @@ public abstract class DependencyScope {
     @SuppressWarnings("unchecked")
     protected <T> T dependency(final Object dependency) {
         if (dependency != null) {
-            if (mDependencyType != null) {
-                if (mDependencyType.isInstance(dependency)) {
-                    return (T) cache(mDependencyType, dependency);
+            final Class dependencyType = sDependencyType.get();
+
+            if (dependencyType != null) {
+                if (dependencyType.isInstance(dependency)) {
+                    return (T) cacheIfAbsent(dependencyType, dependency);
                 } else {
-                    throw new IllegalStateException("The given dependency object is not an instance of: " + mDependencyType.getName());
+                    throw new IllegalStateException("The given dependency object is not an instance of: " + dependencyType.getName());
                 }
             } else {
                 throw new IllegalStateException("The method DependencyScope#dependency(Object) is meant to be used only in method DependencyScope#getDependency()");
@@ -184,6 +447,7 @@ public abstract class DependencyScope {
     public <T> T cache(final Class<T> dependencyType, final Object dependency) {
         if (dependency != null) {
             mDependencies.put(dependencyType, dependency);
+            invalidateResolutions();
             return (T) dependency;
         } else {
             throw new IllegalArgumentException("Parameter 'dependency' may not be null");
@@ -191,8 +455,25 @@ public abstract class DependencyScope {
     }
 
     /**
-     * This method is meant to be implemented by each concrete implementation of {@link DependencyScope}.
-     * The requested dependency instance is returned by the implementation, if it is capable of providing
+     * Caches the given resolved dependency {@link Object} unless a dependency of the same type
+     * has already been cached by another thread. The cached dependency is returned, so that all
+     * the threads resolving the same type concurrently receive the same instance.
+     *
+     * @param dependencyType The dependence type as a {@link Class} used as a key.
+     * @param dependency     The resolved dependency {@link Object} to be cached.
+     * @param <T>            The generic return type of the cached dependency.
+     * @return The cached dependency {@link Object}.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T cacheIfAbsent(final Class<T> dependencyType, final Object dependency) {
+        final Object cachedDependency = mDependencies.putIfAbsent(dependencyType, dependency);
+        return (T) ((cachedDependency != null) ? cachedDependency : dependency);
+    }
+
+    /**
+     * This method can be overridden by a concrete implementation of {@link DependencyScope} that
+     * does not declare its dependencies using {@link Provides} annotated methods. The requested
+     * dependency instance is returned by the implementation, if it is capable of providing
      * a such instance. The implementation of this method should not delegate the request to any other
      * {@link DependencyScope}. If the implementation is not able to cache the requested instance,
      * the design contract is to return {@code null} instead.
@@ -201,7 +482,55 @@ public abstract class DependencyScope {
      * @return The requested dependency instance if is this {@link DependencyScope} implementation is
      * capable of providing such instance otherwise {@code null}.
      */
-    protected abstract <T> T getDependency();
+    protected <T> T getDependency() {
+        return null;
+    }
+
+    /**
+     * Provides a dependency of the specified type from this {@link DependencyScope}. The generated
+     * {@link DependencyResolver} is used first, if there is one, and then
+     * {@link DependencyScope#getDependency()}.
+     *
+     * @param dependencyType A {@link Class} specifying the type of the requested dependency.
+     * @param <T>            A type parameter for casting the requested instance to expected type.
+     * @return The provided dependency or {@code null}.
+     */
+    private <T> T provideDependency(final Class<T> dependencyType) {
+
+        T dependency = null;
+
+        if (mResolver != null) {
+            final Object providedDependency = mResolver.resolve(this, dependencyType);
+
+            if (providedDependency != null) {
+                dependency = cacheIfAbsent(dependencyType, providedDependency);
+            }
+        }
+
+        if (dependency == null) {
+            dependency = getDependency();
+        }
+
+        if (dependency != null) {
+            onProfiledResolution(dependencyType, DependencyProfiler.Kind.PROVIDED);
+        }
+        return dependency;
+    }
+
+    /**
+     * Reports a resolution satisfied by this {@link DependencyScope} to the {@link DependencyProfiler},
+     * if one is set.
+     *
+     * @param dependencyType A {@link Class} specifying the type of the requested dependency.
+     * @param kind           The {@link DependencyProfiler.Kind} of the resolution.
+     */
+    private void onProfiledResolution(final Class<?> dependencyType, final DependencyProfiler.Kind kind) {
+        final DependencyProfiler profiler = Dependency.sProfiler;
+
+        if (profiler != null) {
+            profiler.onResolved(this, dependencyType, kind);
+        }
+    }
 
     /**
      * Gets an dependency instance of the specified type. The requested dependency is first searched
@@ -221,52 +550,153 @@ public abstract class DependencyScope {
     @SuppressWarnings("unchecked")
     protected <T> T getDependency(final Class<T> dependencyType, final Object dependant, final boolean pCreateNew) {
 
-        final Class savedDependencyType = mDependencyType;
-
-        mDependencyType = dependencyType;
-
         if (dependant != null) {
-            mDependants.add(dependant);
+            addDependant(dependant);
         }
 
-        T dependency = null;
-
-        if (!pCreateNew) {
-            dependency = (T) mDependencies.get(dependencyType);
-        }
+        T dependency = (T) mDependencies.get(dependencyType);
 
         if (dependency == null) {
             dependency = lookDependencyAmongDependants(dependencyType);
+        }
 
-            if (dependency == null) {
+        if (dependency != null) {
+            onProfiledResolution(dependencyType, DependencyProfiler.Kind.CACHED);
+            return dependency;
+        }
 
-                if (mMockScope != null) {
-                    dependency = mMockScope.getDependency(dependencyType, dependant, pCreateNew);
-                } else {
-                    dependency = getDependency();
-                }
+        final int stamp = getResolutionStamp(dependencyType);
+        final Resolution resolution = mResolutions.get(dependencyType);
 
-                if (dependency == null) {
+        if (resolution != null && resolution.mStamp == stamp && mMockScope == null) {
+            final DependencyScope resolvingScope = resolution.mResolvingScope;
 
-                    if (mParentScope != null) {
-                        dependency = mParentScope.getDependency(dependencyType, null, pCreateNew);
-                    }
+            if (resolvingScope != null) {
+                final Object resolvingDependant = (resolvingScope instanceof ApplicationScope) ? dependant : null;
+                dependency = resolvingScope.getDependency(dependencyType, resolvingDependant, pCreateNew);
 
-                    if (dependency == null && !(this instanceof ApplicationScope)) {
-                        dependency = ApplicationScope.getInstance().getDependency(dependencyType, dependant, pCreateNew);
-                    }
+                if (dependency != null) {
+                    return dependency;
                 }
+            } else if (!pCreateNew) {
+                return null;
+            }
+        }
 
-                if (dependency == null && pCreateNew) {
-                    return createDependency();
-                }
+        final Class savedDependencyType = sDependencyType.get();
+
+        sDependencyType.set(dependencyType);
+
+        try {
+            return resolveDependency(dependencyType, dependant, pCreateNew, stamp);
+        } finally {
+            restoreDependencyType(savedDependencyType);
+        }
+    }
+
+    private <T> T resolveDependency(final Class<T> dependencyType, final Object dependant, final boolean pCreateNew, final int stamp) {
+
+        final DependencyScope mockScope = mMockScope;
+        T dependency;
+
+        if (mockScope != null) {
+            dependency = mockScope.getDependency(dependencyType, dependant, pCreateNew);
+        } else {
+            dependency = provideDependency(dependencyType);
+        }
+
+        if (dependency == null) {
+            final DependencyScope parentScope = mParentScope;
+
+            if (parentScope != null) {
+                dependency = parentScope.getDependency(dependencyType, null, pCreateNew);
+            }
+
+            if (dependency == null && !(this instanceof ApplicationScope)) {
+                final DependencyScope applicationScope = ApplicationScope.getInstance();
+                dependency = applicationScope.getDependency(dependencyType, dependant, pCreateNew);
+            }
+
+            if (mockScope == null) {
+                memoizeResolution(dependencyType, dependency, pCreateNew, stamp);
             }
         }
 
-        mDependencyType = savedDependencyType;
+        if (dependency == null && pCreateNew) {
+            dependency = createDependency();
+
+            if (dependency != null) {
+                onProfiledResolution(dependencyType, DependencyProfiler.Kind.CREATED);
+            }
+        }
         return dependency;
     }
 
+    /**
+     * Memoizes the {@link DependencyScope} that resolved the specified type for this
+     * {@link DependencyScope}, or that the type is not resolvable. A dependency that was created
+     * instead of resolved is not memoized.
+     *
+     * @param dependencyType A {@link Class} specifying the type of the requested dependency.
+     * @param dependency     The resolved dependency. May be {@code null}.
+     * @param pCreateNew     A {@code boolean} value specifying if the dependency was requested to be
+     *                       created if not resolvable.
+     * @param stamp          The resolution stamp of the type at the beginning of the resolution.
+     */
+    private void memoizeResolution(final Class<?> dependencyType, final Object dependency, final boolean pCreateNew, final int stamp) {
+
+        if (stamp != getResolutionStamp(dependencyType)) {
+            return;
+        }
+
+        if (dependency != null) {
+            final DependencyScope resolvingScope = findResolvingScope(dependencyType, dependency);
+
+            if (resolvingScope != null) {
+                mResolutions.put(dependencyType, new Resolution(resolvingScope, stamp));
+            }
+        } else if (!pCreateNew) {
+            mResolutions.put(dependencyType, new Resolution(null, stamp));
+        }
+    }
+
+    /**
+     * Finds the ancestor {@link DependencyScope}, or the {@link ApplicationScope}, that has cached
+     * the given dependency of the specified type.
+     *
+     * @param dependencyType A {@link Class} specifying the type of the dependency.
+     * @param dependency     The dependency.
+     * @return A {@link DependencyScope} or {@code null} if not found.
+     */
+    private DependencyScope findResolvingScope(final Class<?> dependencyType, final Object dependency) {
+
+        for (DependencyScope scope = mParentScope; scope != null; scope = scope.mParentScope) {
+            if (scope.mDependencies.get(dependencyType) == dependency) {
+                return scope;
+            }
+        }
+
+        final DependencyScope applicationScope = ApplicationScope.getInstance();
+
+        if (applicationScope != null && applicationScope != this && applicationScope.mDependencies.get(dependencyType) == dependency) {
+            return applicationScope;
+        }
+        return null;
+    }
+
+    /**
+     * Restores the requested type of dependency of the current thread.
+     *
+     * @param dependencyType The saved type as a {@link Class}. May be {@code null}.
+     */
+    private static void restoreDependencyType(final Class dependencyType) {
+        if (dependencyType != null) {
+            sDependencyType.set(dependencyType);
+        } else {
+            sDependencyType.remove();
+        }
+    }
+
     /**
      * Creates a new instance of the specified dependency type. The currently active
      * {@link DependencyScope} is first requested to create the new instance. If it does not create
@@ -283,28 +713,34 @@ public abstract class DependencyScope {
     @SuppressWarnings("unchecked")
     protected <T> T createDependency(final Class<T> dependencyType, final Object dependant) {
 
-        final Class savedDependencyType = mDependencyType;
-
-        mDependencyType = dependencyType;
-
         if (dependant != null) {
-            mDependants.add(dependant);
+            addDependant(dependant);
         }
 
-        T dependency = createDependency();
+        final Class savedDependencyType = sDependencyType.get();
+        T dependency;
 
-        if (dependency == null) {
+        sDependencyType.set(dependencyType);
 
-            if (mParentScope != null) {
-                dependency = mParentScope.createDependency(dependencyType, dependant);
+        try {
+            dependency = createDependency();
+        } finally {
+            restoreDependencyType(savedDependencyType);
+        }
+
+        if (dependency != null) {
+            onProfiledResolution(dependencyType, DependencyProfiler.Kind.CREATED);
+        } else {
+            final DependencyScope parentScope = mParentScope;
+
+            if (parentScope != null) {
+                dependency = parentScope.createDependency(dependencyType, dependant);
             }
 
             if (dependency == null && !(this instanceof ApplicationScope)) {
                 dependency = ApplicationScope.getInstance().createDependency(dependencyType, null);
             }
         }
-
-        mDependencyType = savedDependencyType;
         return dependency;
     }
 
@@ -327,16 +763,37 @@ public abstract class DependencyScope {
      * @return The found requested instance or {@code null}.
      */
     private <T> T lookDependencyAmongDependants(final Class<T> dependencyType) {
+        final Object dependant = mDependants.take(dependencyType);
+        return (dependant != null) ? cacheIfAbsent(dependencyType, dependant) : null;
+    }
 
-        for (int i = mDependants.size() - 1; i >= 0; i--) {
-            final Object dependant = mDependants.get(i);
+    /**
+     * {@link MergedBinding} is a merged multibinding of the chain stamp it was merged at.
+     */
+    private static final class MergedBinding {
 
-            if (dependencyType.isAssignableFrom(dependant.getClass())) {
-                mDependants.remove(dependant);
-                return cache(dependencyType, dependant);
-            }
+        final Object mCollection;
+        final int mStamp;
+
+        MergedBinding(final Object collection, final int stamp) {
+            mCollection = collection;
+            mStamp = stamp;
+        }
+    }
+
+    /**
+     * {@link Resolution} records the {@link DependencyScope} that resolved a type, or that
+     * the type is not resolvable if the scope is {@code null}.
+     */
+    private static final class Resolution {
+
+        final DependencyScope mResolvingScope;
+        final int mStamp;
+
+        Resolution(final DependencyScope resolvingScope, final int stamp) {
+            mResolvingScope = resolvingScope;
+            mStamp = stamp;
         }
-        return null;
     }
 
     /**
@@ -344,10 +801,14 @@ public abstract class DependencyScope {
      */
     protected void dispose() {
         mDependencies.clear();
+
         mDependants.clear();
+
         mParentScope = null;
         mOwner = null;
-        mDependencyType = null;
+        mResolutions.clear();
+        mMergedBindings.clear();
+        invalidateResolutions();
 
         if (mMockScope != null) {
             mMockScope.dispose();
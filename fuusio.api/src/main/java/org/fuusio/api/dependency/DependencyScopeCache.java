@@ -1,22 +1,40 @@
 package org.fuusio.api.dependency;
 
+import android.content.ComponentCallbacks2;
+
 import org.fuusio.api.app.FuusioApplication;
 
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * {@link DependencyScopeCache} is used to saving and restoring {@link DependencyScope}s for
- * their {@link DependencyScopeOwner}s.
+ * their {@link DependencyScopeOwner}s. In addition, {@link DependencyScopeCache} retains
+ * a limited number of recently deactivated {@link DependencyScope}s in LRU order, so that
+ * switching back to a recently active {@link DependencyScopeOwner} reuses its object graph instead
+ * of rebuilding it. A retained {@link DependencyScope} is disposed when it is evicted.
  */
 public class DependencyScopeCache {
 
+    public static final int DEFAULT_MAX_RETAINED_SCOPES = 4;
+
     private final HashMap<String, DependencyScope> mSavedScopes;
+    private final LinkedHashMap<String, DependencyScope> mRetainedScopes;
 
     private FuusioApplication mApplication;
+    private int mMaxRetainedScopes;
 
     public DependencyScopeCache(final FuusioApplication application) {
+        this(application, DEFAULT_MAX_RETAINED_SCOPES);
+    }
+
+    public DependencyScopeCache(final FuusioApplication application, final int maxRetainedScopes) {
         mApplication = application;
         mSavedScopes = new HashMap<>();
+        mRetainedScopes = new LinkedHashMap<>(16, 0.75f, true);
+        mMaxRetainedScopes = maxRetainedScopes;
     }
 
     public void saveDependencyScope(final DependencyScopeOwner owner, final DependencyScope scope) {
@@ -34,4 +52,115 @@ public class DependencyScopeCache {
     public boolean containsDependencyScope(final DependencyScopeOwner owner) {
         return mSavedScopes.containsKey(owner.getScopeId());
     }
+
+    /**
+     * Gets the maximum number of retained {@link DependencyScope}s.
+     *
+     * @return The maximum number as an {@code int} value.
+     */
+    public synchronized int getMaxRetainedScopes() {
+        return mMaxRetainedScopes;
+    }
+
+    /**
+     * Sets the maximum number of retained {@link DependencyScope}s. The least recently used
+     * {@link DependencyScope}s exceeding the given maximum number are evicted.
+     *
+     * @param maxRetainedScopes The maximum number as an {@code int} value.
+     */
+    public synchronized void setMaxRetainedScopes(final int maxRetainedScopes) {
+        mMaxRetainedScopes = maxRetainedScopes;
+        trimToSize(maxRetainedScopes);
+    }
+
+    /**
+     * Gets the number of currently retained {@link DependencyScope}s.
+     *
+     * @return The number as an {@code int} value.
+     */
+    public synchronized int getRetainedScopeCount() {
+        return mRetainedScopes.size();
+    }
+
+    /**
+     * Retains the given deactivated {@link DependencyScope} of the given
+     * {@link DependencyScopeOwner}. If the maximum number of retained {@link DependencyScope}s is
+     * exceeded, the least recently used {@link DependencyScope} is evicted.
+     *
+     * @param owner A {@link DependencyScopeOwner}.
+     * @param scope A {@link DependencyScope}.
+     */
+    public synchronized void retainDependencyScope(final DependencyScopeOwner owner, final DependencyScope scope) {
+        final DependencyScope replacedScope = mRetainedScopes.put(owner.getScopeId(), scope);
+
+        if (replacedScope != null && replacedScope != scope) {
+            replacedScope.dispose();
+        }
+        trimToSize(mMaxRetainedScopes);
+    }
+
+    /**
+     * Removes and returns the retained {@link DependencyScope} of the given
+     * {@link DependencyScopeOwner}. A retained {@link DependencyScope} is returned only for
+     * the same {@link DependencyScopeOwner} instance that it was retained for. A retained
+     * {@link DependencyScope} of another {@link DependencyScopeOwner} instance with the same scope
+     * identifier refers to a stale object graph, and it is disposed.
+     *
+     * @param owner A {@link DependencyScopeOwner}.
+     * @return A {@link DependencyScope}. May return {@code null}.
+     */
+    public synchronized DependencyScope restoreDependencyScope(final DependencyScopeOwner owner) {
+        final DependencyScope scope = mRetainedScopes.remove(owner.getScopeId());
+
+        if (scope != null && scope.getOwner() != owner) {
+            scope.dispose();
+            return null;
+        }
+        return scope;
+    }
+
+    /**
+     * Evicts and disposes the retained {@link DependencyScope} of the given
+     * {@link DependencyScopeOwner}.
+     *
+     * @param owner A {@link DependencyScopeOwner}.
+     */
+    public synchronized void evictDependencyScope(final DependencyScopeOwner owner) {
+        final DependencyScope scope = mRetainedScopes.remove(owner.getScopeId());
+
+        if (scope != null) {
+            scope.dispose();
+        }
+    }
+
+    /**
+     * Evicts and disposes all the retained {@link DependencyScope}s.
+     */
+    public synchronized void evictAll() {
+        trimToSize(0);
+    }
+
+    /**
+     * Evicts retained {@link DependencyScope}s according to the given memory trim level. This
+     * method is invoked from {@link FuusioApplication#onTrimMemory(int)}.
+     *
+     * @param level The memory trim level defined in {@link ComponentCallbacks2}.
+     */
+    public synchronized void onTrimMemory(final int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(0);
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxRetainedScopes / 2);
+        }
+    }
+
+    private void trimToSize(final int maxSize) {
+        final Iterator<Map.Entry<String, DependencyScope>> iterator = mRetainedScopes.entrySet().iterator();
+
+        while (mRetainedScopes.size() > maxSize && iterator.hasNext()) {
+            final DependencyScope scope = iterator.next().getValue();
+            iterator.remove();
+            scope.dispose();
+        }
+    }
 }
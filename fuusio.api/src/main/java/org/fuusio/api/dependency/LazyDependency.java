@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.dependency;
+
+/**
+ * {@link LazyDependency} implements {@link Lazy} by resolving the dependency from
+ * the {@link DependencyScope} that was active when the {@link LazyDependency} was created.
+ * The resolved dependency is also cached to the {@link DependencyScope} by
+ * {@link DependencyScope#dependency(Object)}.
+ *
+ * @param <T> The type of the dependency.
+ */
+class LazyDependency<T> implements Lazy<T> {
+
+    private final Class<T> mDependencyType;
+
+    private Object mDependant;
+    private DependencyScope mScope;
+    private volatile T mDependency;
+
+    LazyDependency(final DependencyScope scope, final Class<T> dependencyType, final Object dependant) {
+        mScope = scope;
+        mDependencyType = dependencyType;
+        mDependant = dependant;
+    }
+
+    @Override
+    public T get() {
+        T dependency = mDependency;
+
+        if (dependency == null) {
+            synchronized (this) {
+                dependency = mDependency;
+
+                if (dependency == null) {
+                    dependency = Dependency.get(mScope, mDependencyType, mDependant);
+
+                    if (dependency != null) {
+                        mDependency = dependency;
+                        mScope = null;
+                        mDependant = null;
+                    }
+                }
+            }
+        }
+        return dependency;
+    }
+}
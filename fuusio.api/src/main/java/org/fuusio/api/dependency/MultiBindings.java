@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.dependency;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link MultiBindings} collects the set and map multibindings contributed by a
+ * {@link DependencyScope} in {@link DependencyScope#contributeBindings(MultiBindings)}. A set
+ * multibinding collects elements of the same type, for instance, all the interceptors of a request
+ * pipeline. A map multibinding collects values of the same type by keys, for instance, the handler
+ * of each message type. The contributions of a {@link DependencyScope} and its ancestor
+ * {@link DependencyScope}s are merged into immutable collections that are requested using
+ * {@link Dependency#getSet(Class)} and {@link Dependency#getMap(Class, Class)}.
+ */
+public final class MultiBindings {
+
+    private final HashMap<Class<?>, LinkedHashSet<Object>> mSets;
+    private final HashMap<MapKey, LinkedHashMap<Object, Object>> mMaps;
+
+    MultiBindings() {
+        mSets = new HashMap<>();
+        mMaps = new HashMap<>();
+    }
+
+    /**
+     * Adds the given element to the set multibinding of the specified element type.
+     *
+     * @param elementType A {@link Class} specifying the element type.
+     * @param element     The element. May not be {@code null}.
+     * @param <T>         The element type.
+     * @return This {@link MultiBindings} for chaining the contributions.
+     */
+    public <T> MultiBindings addToSet(final Class<T> elementType, final T element) {
+        if (element == null) {
+            throw new IllegalArgumentException("Parameter 'element' may not be null");
+        }
+
+        LinkedHashSet<Object> elements = mSets.get(elementType);
+
+        if (elements == null) {
+            elements = new LinkedHashSet<>();
+            mSets.put(elementType, elements);
+        }
+        elements.add(element);
+        return this;
+    }
+
+    /**
+     * Puts the given value by the given key to the map multibinding of the specified key and
+     * value types.
+     *
+     * @param keyType   A {@link Class} specifying the key type.
+     * @param valueType A {@link Class} specifying the value type.
+     * @param key       The key. May not be {@code null}.
+     * @param value     The value. May not be {@code null}.
+     * @param <K>       The key type.
+     * @param <V>       The value type.
+     * @return This {@link MultiBindings} for chaining the contributions.
+     */
+    public <K, V> MultiBindings putInMap(final Class<K> keyType, final Class<V> valueType, final K key, final V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Parameters 'key' and 'value' may not be null");
+        }
+
+        final MapKey mapKey = new MapKey(keyType, valueType);
+        LinkedHashMap<Object, Object> entries = mMaps.get(mapKey);
+
+        if (entries == null) {
+            entries = new LinkedHashMap<>();
+            mMaps.put(mapKey, entries);
+        }
+
+        if (entries.containsKey(key)) {
+            throw new IllegalStateException("Duplicate key " + key + " in map of " + valueType.getName());
+        }
+        entries.put(key, value);
+        return this;
+    }
+
+    Set<Object> getSet(final Class<?> elementType) {
+        final Set<Object> elements = mSets.get(elementType);
+        return (elements != null) ? elements : Collections.emptySet();
+    }
+
+    Map<Object, Object> getMap(final MapKey mapKey) {
+        final Map<Object, Object> entries = mMaps.get(mapKey);
+        return (entries != null) ? entries : Collections.emptyMap();
+    }
+
+    /**
+     * {@link MapKey} identifies a map multibinding by its key and value types.
+     */
+    static final class MapKey {
+
+        private final Class<?> mKeyType;
+        private final Class<?> mValueType;
+
+        MapKey(final Class<?> keyType, final Class<?> valueType) {
+            mKeyType = keyType;
+            mValueType = valueType;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (!(object instanceof MapKey)) {
+                return false;
+            }
+            final MapKey mapKey = (MapKey) object;
+            return mKeyType == mapKey.mKeyType && mValueType == mapKey.mValueType;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mKeyType.hashCode() + mValueType.hashCode();
+        }
+    }
+}
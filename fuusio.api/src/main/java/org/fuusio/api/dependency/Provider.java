@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.dependency;
+
+/**
+ * {@link Provider} is a handle to a dependency that is resolved each time {@link Provider#get()}
+ * is invoked. In contrast to {@link Lazy}, a {@link Provider} does not retain the resolved
+ * dependency, but it always returns the dependency currently provided by its
+ * {@link DependencyScope}. A {@link Provider} is obtained using method
+ * {@link Dependency#provider(Class)}.
+ *
+ * @param <T> The type of the dependency.
+ */
+public interface Provider<T> {
+
+    /**
+     * Gets the dependency.
+     *
+     * @return The dependency. May return {@code null} if the dependency can not be resolved.
+     */
+    T get();
+}
@@ -280,6 +280,8 @@ public abstract class AbstractFlow implements Flow, Presenter.Listener, Dependen
     @Override
     public final void destroy() {
         mLifecycleState = LifecycleState.DESTROYED;
+
+        mFlowManager.saveScopeSnapshot(this);
         Dependency.deactivateScope(this);
         mFlowManager.onFlowDestroyed(this);
         onDestroy();
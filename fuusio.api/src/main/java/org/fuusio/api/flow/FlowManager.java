@@ -15,6 +15,7 @@
  */
 package org.fuusio.api.flow;
 
+import android.content.ComponentCallbacks2;
 import android.os.Bundle;
 
 import org.fuusio.api.dependency.D;
@@ -23,6 +24,7 @@ import org.fuusio.api.dependency.DependencyScope;
 import org.fuusio.api.dependency.DependencyScopeOwner;
 
 import java.lang.reflect.Constructor;
+import java.util.HashMap;
 
 public class FlowManager {
 
@@ -31,9 +33,12 @@ public class FlowManager {
     private static FlowManager sInstance = null;
     private static DependencyScopeOwner sTestScopeManager = null;
 
+    private final HashMap<Class<? extends Flow>, FlowScope.Snapshot> mScopeSnapshots;
+
     private Flow mActiveFlow;
 
     private FlowManager() {
+        mScopeSnapshots = new HashMap<>();
     }
 
     /**
@@ -133,6 +138,7 @@ public class FlowManager {
                 final Constructor<T> constructor = implClass.getConstructor(paramTypes);
                 flow = constructor.newInstance(paramValues);
                 Dependency.addScope(flow);
+                getInstance().restoreScopeSnapshot(flow);
             } catch (final Exception e) {
                 throw new RuntimeException(e);
             }
@@ -217,6 +223,85 @@ public class FlowManager {
         }
     }
 
+    /**
+     * Captures a {@link FlowScope.Snapshot} of the reusable dependencies of the {@link FlowScope}
+     * of the given {@link Flow}. The {@link FlowScope.Snapshot} is restored to the {@link FlowScope}
+     * of the next instance of the same {@link Flow} class created by
+     * {@link FlowManager#createFlow(Class, FlowFragmentContainer, Bundle)}. This method is invoked
+     * by {@link Flow#destroy()} before the {@link FlowScope} is disposed.
+     *
+     * @param flow A {@link Flow}. May not be {@code null}.
+     */
+    public void saveScopeSnapshot(final Flow flow) {
+        if (flow instanceof DependencyScopeOwner) {
+            final DependencyScope scope = ((DependencyScopeOwner) flow).getDependencyScope();
+
+            if (scope instanceof FlowScope) {
+                final FlowScope.Snapshot snapshot = ((FlowScope) scope).createSnapshot();
+
+                synchronized (mScopeSnapshots) {
+                    if (snapshot != null) {
+                        mScopeSnapshots.put(flow.getClass(), snapshot);
+                    } else {
+                        mScopeSnapshots.remove(flow.getClass());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores the saved {@link FlowScope.Snapshot}, if any, for the class of the given
+     * {@link Flow} to its {@link FlowScope}.
+     *
+     * @param flow A {@link Flow}. May not be {@code null}.
+     * @return A {@code boolean} value {@code true} if a {@link FlowScope.Snapshot} was restored.
+     */
+    public boolean restoreScopeSnapshot(final Flow flow) {
+        if (flow instanceof DependencyScopeOwner) {
+            final FlowScope.Snapshot snapshot;
+
+            synchronized (mScopeSnapshots) {
+                snapshot = mScopeSnapshots.get(flow.getClass());
+            }
+
+            if (snapshot != null) {
+                final DependencyScope scope = ((DependencyScopeOwner) flow).getDependencyScope();
+                return (scope instanceof FlowScope) && ((FlowScope) scope).restoreSnapshot(snapshot);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Clears all the saved {@link FlowScope.Snapshot}s, for instance, when the system is running
+     * low on memory.
+     */
+    public void clearScopeSnapshots() {
+        synchronized (mScopeSnapshots) {
+            mScopeSnapshots.clear();
+        }
+    }
+
+    /**
+     * Invoked by the application scope when the system asks the application to trim memory.
+     * The saved {@link FlowScope.Snapshot}s are cleared when the application is in the background.
+     *
+     * @param level The memory trim level defined in {@link ComponentCallbacks2}.
+     */
+    public void onTrimMemory(final int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clearScopeSnapshots();
+        }
+    }
+
+    /**
+     * Invoked by the application scope when the system is running low on memory.
+     */
+    public void onLowMemory() {
+        clearScopeSnapshots();
+    }
+
     /**
      * Invoked by a {@link Flow#destroy()} when the {@link Flow}} has been destroyed.
      *
@@ -17,6 +17,18 @@ package org.fuusio.api.flow;
 
 import org.fuusio.api.dependency.DependencyScope;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link FlowScope} provides an abstract base class for implementing the {@link DependencyScope}
+ * of a {@link Flow}. A {@link FlowScope} can declare dependencies that are reusable by
+ * the subsequent instances of the same {@link Flow} using method
+ * {@link FlowScope#getReusableDependencies()}. The resolved reusable dependencies are captured to
+ * a {@link Snapshot} when the {@link Flow} is destroyed, and the {@link Snapshot} is restored to
+ * the {@link FlowScope} of the next instance of the {@link Flow} by {@link FlowManager}.
+ */
 public abstract class FlowScope<T_Flow extends Flow> extends DependencyScope {
 
     protected final T_Flow mFlow;
@@ -35,4 +47,85 @@ public abstract class FlowScope<T_Flow extends Flow> extends DependencyScope {
     public T_Flow getFlow() {
         return mFlow;
     }
+
+    /**
+     * Gets the types of the dependencies that can be reused by the subsequent instances of
+     * the {@link Flow}. A reusable dependency may not refer to the {@link Flow}, its
+     * {@link FlowFragmentContainer}, or to any of its {@link org.fuusio.api.mvp.View}s, because
+     * it outlives them.
+     *
+     * @return An array of {@link Class}es. By default an empty array is returned.
+     */
+    protected Class<?>[] getReusableDependencies() {
+        return new Class<?>[0];
+    }
+
+    /**
+     * Captures the currently cached reusable dependencies to a {@link Snapshot}.
+     *
+     * @return A {@link Snapshot} or {@code null} if no reusable dependencies are cached.
+     */
+    public Snapshot createSnapshot() {
+        final Class<?>[] reusableTypes = getReusableDependencies();
+
+        if (reusableTypes.length == 0) {
+            return null;
+        }
+
+        final HashMap<Class<?>, Object> dependencies = new HashMap<>();
+
+        for (final Class<?> reusableType : reusableTypes) {
+            final Object dependency = mDependencies.get(reusableType);
+
+            if (dependency != null) {
+                dependencies.put(reusableType, dependency);
+            }
+        }
+        return dependencies.isEmpty() ? null : new Snapshot(getClass(), dependencies);
+    }
+
+    /**
+     * Restores the reusable dependencies captured to the given {@link Snapshot}. A dependency that
+     * has already been cached by this {@link FlowScope} is not replaced. A {@link Snapshot} of
+     * another type of {@link FlowScope} is ignored.
+     *
+     * @param snapshot A {@link Snapshot}.
+     * @return A {@code boolean} value {@code true} if the {@link Snapshot} was restored.
+     */
+    public boolean restoreSnapshot(final Snapshot snapshot) {
+
+        if (snapshot.mScopeClass != getClass()) {
+            return false;
+        }
+
+        for (final Map.Entry<Class<?>, Object> entry : snapshot.mDependencies.entrySet()) {
+            mDependencies.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+
+        invalidateResolutions();
+        return true;
+    }
+
+    /**
+     * {@link Snapshot} is an immutable capture of the reusable dependencies of a {@link FlowScope}.
+     */
+    public static final class Snapshot {
+
+        private final Class<?> mScopeClass;
+        private final Map<Class<?>, Object> mDependencies;
+
+        Snapshot(final Class<?> scopeClass, final Map<Class<?>, Object> dependencies) {
+            mScopeClass = scopeClass;
+            mDependencies = Collections.unmodifiableMap(dependencies);
+        }
+
+        /**
+         * Gets the captured dependencies.
+         *
+         * @return A {@link Map} containing the captured dependencies keyed by their types.
+         */
+        public Map<Class<?>, Object> getDependencies() {
+            return mDependencies;
+        }
+    }
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.fsm;
+
+import android.os.Handler;
+
+import org.fuusio.api.util.L;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link EventQueue} is a bounded run-to-completion event queue attached to a {@link StateMachine}.
+ * Any number of producer threads may post {@link Event}s to the queue without blocking, and
+ * the posted {@link Event}s are dispatched one at a time, in the order they were posted, on
+ * a single consumer that is run by the given {@link Executor} or {@link Handler}. The consumer
+ * dispatches the {@link Event}s while holding the lock of the {@link StateMachine}, so each
+ * {@link Event} runs to completion, serialised also with {@link StateMachine#start()},
+ * {@link StateMachine#reset()}, and {@link StateMachine#stop()}.
+ * <p>
+ * The queue is a ring buffer of a fixed capacity in which each slot has a sequence number that
+ * tells if the slot is free for a producer or published for the consumer. Posting and dispatching
+ * an {@link Event} do not allocate, and the queue itself is the {@link Runnable} submitted to
+ * the {@link Executor}.
+ * </p>
+ *
+ * @param <T_State> The type of the {@link StateMachine}.
+ */
+public final class EventQueue<T_State extends StateMachine> implements Runnable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * {@link Event} is an event dispatched to a {@link StateMachine} via an {@link EventQueue}.
+     * An {@link Event} without parameters can be a shared constant, so that posting it does not
+     * allocate.
+     *
+     * @param <T_State> The type of the {@link StateMachine}.
+     */
+    public interface Event<T_State> {
+
+        /**
+         * Dispatches this {@link Event} to the given {@link StateMachine}, typically by invoking
+         * the corresponding event method of the state machine.
+         *
+         * @param stateMachine A {@link StateMachine}.
+         */
+        void dispatch(T_State stateMachine);
+    }
+
+    private final T_State mStateMachine;
+    private final Executor mExecutor;
+    private final int mMask;
+    private final AtomicReferenceArray<Event<? super T_State>> mEvents;
+    private final AtomicLongArray mSequences;
+    private final AtomicLong mTail;
+    private final AtomicBoolean mScheduled;
+    private final AtomicLong mRejectedCount;
+
+    /**
+     * The position of the next {@link Event} to be dispatched. Accessed only by the consumer.
+     */
+    private long mHead;
+
+    /**
+     * Constructs a new instance of {@link EventQueue} that dispatches the {@link Event}s on
+     * the {@link android.os.Looper} of the given {@link Handler}.
+     *
+     * @param stateMachine A {@link StateMachine}.
+     * @param handler      A {@link Handler}.
+     */
+    public EventQueue(final T_State stateMachine, final Handler handler) {
+        this(stateMachine, new HandlerExecutor(handler), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new instance of {@link EventQueue} that dispatches the {@link Event}s using
+     * the given {@link Executor}.
+     *
+     * @param stateMachine A {@link StateMachine}.
+     * @param executor     An {@link Executor}.
+     * @param capacity     The maximum number of pending {@link Event}s. Rounded up to a power of two.
+     */
+    public EventQueue(final T_State stateMachine, final Executor executor, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity has to be positive: " + capacity);
+        }
+
+        final int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+
+        mStateMachine = stateMachine;
+        mExecutor = executor;
+        mMask = size - 1;
+        mEvents = new AtomicReferenceArray<>(size);
+        mSequences = new AtomicLongArray(size);
+        mTail = new AtomicLong();
+        mScheduled = new AtomicBoolean();
+        mRejectedCount = new AtomicLong();
+
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+    }
+
+    /**
+     * Gets the {@link StateMachine} that this {@link EventQueue} is attached to.
+     *
+     * @return A {@link StateMachine}.
+     */
+    public T_State getStateMachine() {
+        return mStateMachine;
+    }
+
+    /**
+     * Gets the capacity of this {@link EventQueue}.
+     *
+     * @return The capacity as an {@code int} value.
+     */
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * Gets the number of {@link Event}s that were rejected because this {@link EventQueue} was full.
+     *
+     * @return The number as a {@code long} value.
+     */
+    public long getRejectedCount() {
+        return mRejectedCount.get();
+    }
+
+    /**
+     * Posts the given {@link Event} to be dispatched to the {@link StateMachine}. This method never
+     * blocks. If this {@link EventQueue} is full, the {@link Event} is rejected.
+     *
+     * @param event An {@link Event}. May not be {@code null}.
+     * @return A {@code boolean} value indicating if the {@link Event} was accepted.
+     */
+    public boolean offer(final Event<? super T_State> event) {
+        if (event == null) {
+            throw new IllegalArgumentException("Parameter 'event' may not be null");
+        }
+
+        long position;
+        int index;
+
+        while (true) {
+            position = mTail.get();
+            index = (int) position & mMask;
+
+            final long difference = mSequences.get(index) - position;
+
+            if (difference == 0) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                mRejectedCount.incrementAndGet();
+                return false;
+            }
+        }
+
+        // The sequence is published with a volatile write so that it cannot be reordered with
+        // the read of the scheduled flag below
+
+        mEvents.lazySet(index, event);
+        mSequences.set(index, position + 1);
+
+        if (!mScheduled.get() && mScheduled.compareAndSet(false, true)) {
+            mExecutor.execute(this);
+        }
+        return true;
+    }
+
+    /**
+     * Removes all the pending {@link Event}s without dispatching them. May be invoked only on
+     * the consumer, for instance, from an {@link Event} before the {@link StateMachine} is stopped.
+     */
+    public void clear() {
+        while (poll() != null) {
+            // Discard the event
+        }
+    }
+
+    private boolean isEmpty() {
+        final long position = mHead;
+        return mSequences.get((int) position & mMask) != position + 1;
+    }
+
+    private Event<? super T_State> poll() {
+        final long position = mHead;
+        final int index = (int) position & mMask;
+
+        if (mSequences.get(index) != position + 1) {
+            return null;
+        }
+
+        final Event<? super T_State> event = mEvents.get(index);
+        mEvents.lazySet(index, null);
+        mSequences.lazySet(index, position + mMask + 1);
+        mHead = position + 1;
+        return event;
+    }
+
+    /**
+     * Dispatches the pending {@link Event}s. At most the capacity of this {@link EventQueue} is
+     * dispatched in one run, so that a busy queue does not starve the other tasks of
+     * the {@link Executor}.
+     */
+    @Override
+    public void run() {
+        final int maxCount = mMask + 1;
+        int count = 0;
+        Event<? super T_State> event;
+
+        synchronized (mStateMachine) {
+            while (count < maxCount && (event = poll()) != null) {
+                count++;
+
+                try {
+                    mStateMachine.setCurrentEvent(event);
+                    event.dispatch(mStateMachine);
+                } catch (final RuntimeException exception) {
+                    L.e(this, "run", exception);
+                } finally {
+                    mStateMachine.setCurrentEvent(null);
+                }
+            }
+        }
+
+        mScheduled.set(false);
+
+        if (!isEmpty() && mScheduled.compareAndSet(false, true)) {
+            mExecutor.execute(this);
+        }
+    }
+
+    /**
+     * {@link HandlerExecutor} is an {@link Executor} that posts the executed {@link Runnable}s
+     * to a {@link Handler}.
+     */
+    private static final class HandlerExecutor implements Executor {
+
+        private final Handler mHandler;
+
+        HandlerExecutor(final Handler handler) {
+            mHandler = handler;
+        }
+
+        @Override
+        public void execute(final Runnable runnable) {
+            mHandler.post(runnable);
+        }
+    }
+}
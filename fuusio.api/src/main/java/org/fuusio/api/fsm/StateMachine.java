@@ -15,17 +15,31 @@
  */
 package org.fuusio.api.fsm;
 
+import android.os.Bundle;
+
 import org.fuusio.api.util.L;
 
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 
 public abstract class StateMachine<T_State extends StateMachine, T_Controllable> {
 
+    /**
+     * The state id of a state that is not included in a compiled state machine.
+     */
+    public static final int NO_STATE_ID = -1;
+
+    private static final StateMachine[] NO_STATES = new StateMachine[0];
+
+    private static final byte SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_SIZE = 7;
+
     /**
      * {@link Error} defines error types and messages for {@link StateMachine}.
      */
@@ -99,11 +113,67 @@ public abstract class StateMachine<T_State extends StateMachine, T_Controllable>
      */
     private T_Controllable mControllable;
 
+    /**
+     * The id of the state represented by this instance of {@link StateMachine} in a prepared state
+     * machine. A state machine itself has always id zero when prepared.
+     */
+    private int mStateId;
+
+    /**
+     * The states to be exited in a compiled transition indexed by the ids of the source and
+     * the target state. If this field has {@code null} value, the state machine is not compiled.
+     */
+    private StateMachine[][][] mExitPaths;
+
+    /**
+     * The states to be entered in a compiled transition indexed by the id of the target state.
+     * The target state is followed by its initial substates in the order they are entered.
+     */
+    private StateMachine[][] mEntryPaths;
+
+    /**
+     * The number of transitions executed using the precomputed paths of a compiled state machine.
+     */
+    private int mCompiledTransitionCount;
+
+    /**
+     * The prepared states indexed by their state ids. If this field has {@code null} value, the state
+     * machine is not prepared.
+     */
+    private StateMachine[] mPreparedStates;
+
+    /**
+     * A fingerprint of the prepared states used for detecting a snapshot of another state machine
+     * or of another version of the state machine.
+     */
+    private int mSnapshotFingerprint;
+
+    /**
+     * The {@link TransitionListener} notified about the transitions of a state machine.
+     */
+    private volatile TransitionListener mTransitionListener;
+
+    /**
+     * The event currently dispatched to a state machine.
+     */
+    private Object mCurrentEvent;
+
+    /**
+     * The nesting depth of the transitions being executed while a {@link TransitionListener} is set.
+     */
+    private int mTransitionDepth;
+
+    /**
+     * The time when the source state of the outermost traced transition was exited.
+     */
+    private long mExitedTime;
+
     /**
      * Private default constructor.
      */
     private StateMachine() {
         mSubStates = new HashSet<>();
+        mStateId = NO_STATE_ID;
     }
 
     /**
@@ -164,6 +234,51 @@ public abstract class StateMachine<T_State extends StateMachine, T_Controllable>
         mControllable = controllable;
     }
 
+    /**
+     * Gets the {@link TransitionListener} of this {@link StateMachine}.
+     *
+     * @return A {@link TransitionListener}. May return {@code null}.
+     */
+    public final TransitionListener getTransitionListener() {
+        final StateMachine stateMachine = getStateMachine();
+        return stateMachine.mTransitionListener;
+    }
+
+    /**
+     * Sets a {@link TransitionListener} to be notified about the state transitions of this
+     * {@link StateMachine}, for instance, a {@link TransitionTracer}. When no listener is set,
+     * tracing adds no overhead to a transition beyond reading the listener field.
+     *
+     * @param listener A {@link TransitionListener}. May be {@code null}.
+     */
+    public final void setTransitionListener(final TransitionListener listener) {
+        final StateMachine stateMachine = getStateMachine();
+        stateMachine.mTransitionListener = listener;
+    }
+
+    /**
+     * Gets the event currently dispatched to this {@link StateMachine}.
+     *
+     * @return The event. May return {@code null}.
+     */
+    public final Object getCurrentEvent() {
+        final StateMachine stateMachine = getStateMachine();
+        return stateMachine.mCurrentEvent;
+    }
+
+    /**
+     * Sets the event currently dispatched to this {@link StateMachine}. The event is reported to
+     * the {@link TransitionListener} for the transitions caused by it. An {@link EventQueue} sets
+     * the event for each dispatched {@link EventQueue.Event}, and an event method may set, for
+     * instance, its name.
+     *
+     * @param event The event. May be {@code null}.
+     */
+    protected final void setCurrentEvent(final Object event) {
+        final StateMachine stateMachine = getStateMachine();
+        stateMachine.mCurrentEvent = event;
+    }
+
     /**
      * Gets the super state of this state.
      *
@@ -213,10 +328,12 @@ public abstract class StateMachine<T_State extends StateMachine, T_Controllable>
     }
 
     /**
-     * Gets an instance of the specified state.
+     * Gets an instance of the specified state. The state and its super states are instantiated and
+     * linked on first use unless they have been instantiated by {@link StateMachine#prepare(Class[])}.
      *
      * @param stateClass A state object {@link Class}.
      * @return A state object. May not return {@code null}.
+     * @throws IllegalStateException If the state cannot be instantiated.
      */
     @SuppressWarnings("unchecked")
     protected final T_State getState(final Class<? extends T_State> stateClass) {
@@ -227,15 +344,19 @@ public abstract class StateMachine<T_State extends StateMachine, T_Controllable>
             if (state == null) {
                 try {
                     state = stateClass.newInstance();
+                } catch (final Exception exception) {
+                    throw new IllegalStateException("Failed to instantiate state: " + stateClass.getName(), exception);
+                }
 
-                    state.mStateMachine = this.mStateMachine;
-                    state.mSuperState = getState(state.mSuperStateClass);
-                    state.mSuperState.mSubStates.add(state);
+                if (state.mSuperStateClass == null) {
+                    throw new IllegalStateException("State: " + stateClass.getName() + " has no super state");
+                }
 
-                    mStateCache.put(stateClass, state);
+                state.mStateMachine = this.mStateMachine;
+                state.mSuperState = getState(state.mSuperStateClass);
+                state.mSuperState.mSubStates.add(state);
 
-                } catch (final Exception pException) {
-                }
+                mStateCache.put(stateClass, state);
             }
             return state;
         } else {
@@ -274,17 +395,518 @@ public abstract class StateMachine<T_State extends StateMachine, T_Controllable>
                 }
             }
 
-            T_State newState = getState(stateClass);
-            setCurrentState(newState);
+            return transition(currentState, stateClass, entryPoint, 0);
+        } else {
+            return (T_State) getStateMachine().toState(stateClass, entryPoint);
+        }
+    }
+
+    /**
+     * Executes a transition from the given current state to the specified state, and notifies
+     * the {@link TransitionListener} if one is set and the transition is not a part of another
+     * transition.
+     *
+     * @param currentState The current state. May be {@code null}.
+     * @param stateClass   A {@link Class} specifying the target state for the state transition.
+     * @param entryPoint   The entry point, or zero for none.
+     * @param historyPoint {@link TransitionListener#DEEP_HISTORY} or
+     *                     {@link TransitionListener#SHALLOW_HISTORY} for a transition to a history
+     *                     state, otherwise zero.
+     * @return The current state.
+     */
+    private T_State transition(final T_State currentState, final Class<? extends T_State> stateClass,
+                               final int entryPoint, final int historyPoint) {
+        final TransitionListener listener = mTransitionListener;
+
+        if (listener == null && mTransitionDepth == 0) {
+            return executeTransition(currentState, stateClass, entryPoint, historyPoint);
+        }
+
+        mTransitionDepth++;
+
+        try {
+            if (listener == null || mTransitionDepth > 1) {
+                return executeTransition(currentState, stateClass, entryPoint, historyPoint);
+            }
+
+            final long startTime = System.nanoTime();
+            mExitedTime = startTime;
+
+            final T_State state = executeTransition(currentState, stateClass, entryPoint, historyPoint);
+            final long endTime = System.nanoTime();
+            final int point = (historyPoint != 0) ? historyPoint : entryPoint;
+
+            listener.onTransition(this, currentState, state, mCurrentEvent, point, mExitedTime - startTime, endTime - mExitedTime);
+            return state;
+        } finally {
+            mTransitionDepth--;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T_State executeTransition(final T_State currentState, final Class<? extends T_State> stateClass,
+                                      final int entryPoint, final int historyPoint) {
+
+        if (historyPoint != 0) {
+            T_State newCurrentState = getState(stateClass);
+
+            if (currentState != null && !newCurrentState.isSuperState(currentState)) {
+                currentState.exit(newCurrentState);
+            }
+
+            markExited();
+
+            if (historyPoint == TransitionListener.DEEP_HISTORY) {
+                newCurrentState = (T_State) newCurrentState.enterDeepHistory();
+            } else {
+                newCurrentState = (T_State) newCurrentState.enterShallowHistory();
+            }
+
+            mCurrentState = newCurrentState;
+            return mCurrentState;
+        }
+
+        if (mExitPaths != null && entryPoint == 0) {
+            final StateMachine source = (currentState != null) ? currentState : this;
+            final StateMachine target = mStateCache.get(stateClass);
+
+            if (target != null && isCompiledState(source) && isCompiledState(target)) {
+                return toCompiledState(source, target);
+            }
+        }
+
+        T_State newState = getState(stateClass);
+        setCurrentState(newState);
+
+        if (currentState != null && !newState.isSuperState(currentState)) {
+            currentState.exit(newState);
+        }
+
+        markExited();
+        return (T_State) newState.enter(entryPoint);
+    }
+
+    /**
+     * Records the time when the source state of a traced transition has been exited.
+     */
+    private void markExited() {
+        if (mTransitionDepth == 1) {
+            mExitedTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Causes a compiled transition from the given source state to the given target state. The exit
+     * and entry callbacks of the transition are invoked from the precomputed paths.
+     *
+     * @param source The source state, or the state machine itself if it has not been started.
+     * @param target The target state.
+     * @return The current state.
+     */
+    @SuppressWarnings("unchecked")
+    private T_State toCompiledState(final StateMachine source, final StateMachine target) {
+        final StateMachine[] exitPath = mExitPaths[source.mStateId][target.mStateId];
+        final StateMachine[] entryPath = mEntryPaths[target.mStateId];
+
+        mCompiledTransitionCount++;
+        mCurrentState = (T_State) target;
+
+        for (int i = 0; i < exitPath.length; i++) {
+            final StateMachine state = exitPath[i];
+            state.onExit();
+
+            if (state.mSuperState != this) {
+                state.mSuperState.mCurrentState = state;
+            }
+        }
+
+        markExited();
+
+        for (int i = 0; i < entryPath.length; i++) {
+            final StateMachine state = entryPath[i];
+            mCurrentState = (T_State) state;
+            state.onEnter();
+        }
+        return mCurrentState;
+    }
+
+    /**
+     * Tests if the given state has been prepared when this state machine was compiled.
+     */
+    private boolean isCompiledState(final StateMachine state) {
+        return state.mStateId != NO_STATE_ID && state.mStateId < mEntryPaths.length;
+    }
+
+    /**
+     * Prepares this {@link StateMachine} by instantiating and linking the given states, their super
+     * states, and their initial substates up front. A failure to instantiate a state is detected
+     * when preparing instead of on the first transition to the state, and the prepared states are
+     * retained by {@link StateMachine#reset()}.
+     *
+     * @param stateClasses The {@link Class}es of the states to be prepared.
+     * @throws IllegalStateException If a state cannot be instantiated.
+     */
+    @SafeVarargs
+    public synchronized final void prepare(final Class<? extends T_State>... stateClasses) {
+        prepareStates(stateClasses);
+    }
+
+    /**
+     * Compiles this {@link StateMachine}. The given states are prepared as by
+     * {@link StateMachine#prepare(Class[])}, and the state hierarchy is flattened into integer
+     * state ids and precomputed exit and entry paths for each pair of states. A transition between
+     * two compiled states is then executed without resolving the states or walking the state hierarchy.
+     * Transitions via entry points and history points, and transitions to states that are not
+     * compiled, are executed as for a state machine that is not compiled.
+     *
+     * @param stateClasses The {@link Class}es of the states to be compiled.
+     */
+    @SafeVarargs
+    public synchronized final void compile(final Class<? extends T_State>... stateClasses) {
+
+        final ArrayList<StateMachine> states = prepareStates(stateClasses);
+        final int stateCount = states.size();
+        final StateMachine[][][] exitPaths = new StateMachine[stateCount][stateCount][];
+        final StateMachine[][] entryPaths = new StateMachine[stateCount][];
+
+        for (int target = 0; target < stateCount; target++) {
+            entryPaths[target] = createEntryPath(states.get(target));
+
+            for (int source = 0; source < stateCount; source++) {
+                exitPaths[source][target] = createExitPath(states.get(source), states.get(target));
+            }
+        }
+
+        mExitPaths = exitPaths;
+        mEntryPaths = entryPaths;
+    }
+
+    /**
+     * Tests if this {@link StateMachine} is compiled.
+     *
+     * @return A {@code boolean} value.
+     */
+    public final boolean isCompiled() {
+        final StateMachine stateMachine = getStateMachine();
+        return stateMachine.mExitPaths != null;
+    }
+
+    /**
+     * Gets the number of transitions that have been executed using the precomputed paths of
+     * a compiled state machine. Used for testing that compiled transitions are taken.
+     *
+     * @return An {@code int} value.
+     */
+    final int getCompiledTransitionCount() {
+        final StateMachine stateMachine = getStateMachine();
+        return stateMachine.mCompiledTransitionCount;
+    }
+
+    /**
+     * Gets the id of the state represented by this instance of {@link StateMachine} in a prepared
+     * or compiled state machine.
+     *
+     * @return The id as an {@code int} value, or {@link #NO_STATE_ID} if the state is not prepared.
+     */
+    public final int getStateId() {
+        final StateMachine stateMachine = getStateMachine();
+        return (stateMachine.mPreparedStates != null) ? mStateId : NO_STATE_ID;
+    }
+
+    /**
+     * Gets the size of a snapshot of this {@link StateMachine} in bytes.
+     *
+     * @return The size as an {@code int} value.
+     * @throws IllegalStateException If the state machine is not prepared.
+     */
+    public final int getSnapshotSize() {
+        final StateMachine stateMachine = getStateMachine();
+        return SNAPSHOT_HEADER_SIZE + 2 * stateMachine.getPreparedStates().length;
+    }
+
+    /**
+     * Saves a snapshot of the active configuration of this {@link StateMachine} to a new byte array.
+     *
+     * @return The snapshot as a {@code byte} array.
+     * @throws IllegalStateException If the state machine is not prepared.
+     * @see StateMachine#saveSnapshot(byte[])
+     */
+    public final byte[] saveSnapshot() {
+        final byte[] snapshot = new byte[getSnapshotSize()];
+        saveSnapshot(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Saves a snapshot of the active configuration of this {@link StateMachine} to the given
+     * {@link Bundle}.
+     *
+     * @param bundle A {@link Bundle}.
+     * @param key    The key of the snapshot in the {@link Bundle}.
+     * @throws IllegalStateException If the state machine is not prepared.
+     */
+    public final void saveSnapshot(final Bundle bundle, final String key) {
+        bundle.putByteArray(key, saveSnapshot());
+    }
+
+    /**
+     * Saves a snapshot of the active configuration of this {@link StateMachine} to the given byte
+     * array. The snapshot consists of the current state of the state machine and the history state
+     * of each composite state as the ids of the prepared states, so it takes
+     * {@link StateMachine#getSnapshotSize()} bytes. Saving to a reused byte array does not allocate,
+     * so a snapshot can be saved, for instance, by a {@link TransitionListener} after each
+     * transition.
+     *
+     * @param snapshot A {@code byte} array for the snapshot.
+     * @throws IllegalStateException If the state machine is not prepared, or if a current or
+     *                               a history state is not prepared.
+     */
+    public synchronized final void saveSnapshot(final byte[] snapshot) {
+        final StateMachine stateMachine = getStateMachine();
+
+        if (stateMachine != this) {
+            stateMachine.saveSnapshot(snapshot);
+            return;
+        }
+
+        final StateMachine[] states = getPreparedStates();
+
+        if (snapshot.length < getSnapshotSize()) {
+            throw new IllegalArgumentException("Snapshot requires " + getSnapshotSize() + " bytes");
+        }
+
+        snapshot[0] = SNAPSHOT_VERSION;
+        writeInt(snapshot, 1, mSnapshotFingerprint);
+        writeShort(snapshot, 5, states.length);
+
+        for (int i = 0; i < states.length; i++) {
+            final StateMachine currentState = states[i].mCurrentState;
+            int stateId = NO_STATE_ID;
+
+            if (currentState != null) {
+                stateId = currentState.mStateId;
+
+                if (stateId == NO_STATE_ID) {
+                    throw new IllegalStateException("State: " + currentState + " is not prepared");
+                }
+            }
+            writeShort(snapshot, SNAPSHOT_HEADER_SIZE + 2 * i, stateId);
+        }
+    }
+
+    /**
+     * Restores the active configuration of this {@link StateMachine} from a snapshot saved to
+     * the given {@link Bundle}.
+     *
+     * @param bundle A {@link Bundle}. May be {@code null}.
+     * @param key    The key of the snapshot in the {@link Bundle}.
+     * @return A {@code boolean} value indicating if the snapshot was restored.
+     * @see StateMachine#restoreSnapshot(byte[])
+     */
+    public final boolean restoreSnapshot(final Bundle bundle, final String key) {
+        return bundle != null && restoreSnapshot(bundle.getByteArray(key));
+    }
+
+    /**
+     * Restores the active configuration of this {@link StateMachine} from the given snapshot.
+     * Restoring is used instead of {@link StateMachine#start()} to resume a state machine, for
+     * instance, after the process has been restarted. {@link StateMachine#onStart()} is invoked,
+     * but the restored states are not entered, i.e. {@link StateMachine#onEnter()} is not invoked.
+     * The state machine has to be prepared with the same states, in the same order, as
+     * the state machine that saved the snapshot. A snapshot that does not match the prepared states
+     * is not restored, and the state machine can then be started normally.
+     *
+     * @param snapshot A snapshot as a {@code byte} array. May be {@code null}.
+     * @return A {@code boolean} value indicating if the snapshot was restored.
+     * @throws IllegalStateException If the state machine is not prepared.
+     */
+    public synchronized final boolean restoreSnapshot(final byte[] snapshot) {
+        final StateMachine stateMachine = getStateMachine();
+
+        if (stateMachine != this) {
+            return stateMachine.restoreSnapshot(snapshot);
+        }
+
+        final StateMachine[] states = getPreparedStates();
+
+        if (snapshot == null || snapshot.length < SNAPSHOT_HEADER_SIZE + 2 * states.length
+                || snapshot[0] != SNAPSHOT_VERSION
+                || readInt(snapshot, 1) != mSnapshotFingerprint
+                || readShort(snapshot, 5) != states.length) {
+            return false;
+        }
+
+        // Validate the snapshot before modifying any state
 
-            if (currentState != null && !newState.isSuperState(currentState)) {
-                currentState.exit(newState);
+        for (int i = 0; i < states.length; i++) {
+            final int stateId = readShort(snapshot, SNAPSHOT_HEADER_SIZE + 2 * i);
+
+            if (stateId == NO_STATE_ID) {
+                if (i == 0) {
+                    return false;
+                }
+            } else if (stateId < 1 || stateId >= states.length) {
+                return false;
+            } else if (i > 0 && states[stateId].mSuperState != states[i]) {
+                return false;
             }
+        }
+
+        onStart();
+
+        for (int i = 0; i < states.length; i++) {
+            final int stateId = readShort(snapshot, SNAPSHOT_HEADER_SIZE + 2 * i);
+            states[i].mCurrentState = (stateId != NO_STATE_ID) ? states[stateId] : null;
+        }
+        return true;
+    }
+
+    private StateMachine[] getPreparedStates() {
+        if (mPreparedStates == null) {
+            throw new IllegalStateException("State machine has to be prepared");
+        }
+        return mPreparedStates;
+    }
+
+    private static void writeInt(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static void writeShort(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) (value >>> 8);
+        bytes[offset + 1] = (byte) value;
+    }
 
-            return (T_State) newState.enter(entryPoint);
+    private static int readShort(final byte[] bytes, final int offset) {
+        return (short) ((bytes[offset] << 8) | (bytes[offset + 1] & 0xFF));
+    }
+
+    /**
+     * Instantiates the given states, their super states, and their initial substates.
+     *
+     * @param stateClasses The {@link Class}es of the states.
+     * @return An {@link ArrayList} containing this state machine followed by the prepared states.
+     */
+    @SafeVarargs
+    private final ArrayList<StateMachine> prepareStates(final Class<? extends T_State>... stateClasses) {
+
+        if (!isStateMachine()) {
+            throw new IllegalStateException("Only a state machine can be prepared");
+        }
+
+        final ArrayList<StateMachine> states = new ArrayList<>();
+
+        // The previously prepared states keep their state ids
+
+        if (mPreparedStates != null) {
+            Collections.addAll(states, mPreparedStates);
         } else {
-            return (T_State) getStateMachine().toState(stateClass, entryPoint);
+            states.add(this);
+        }
+
+        for (final Class<? extends T_State> stateClass : stateClasses) {
+            addPreparedState(states, stateClass);
+        }
+
+        for (int i = 0; i < states.size(); i++) {
+            final StateMachine state = states.get(i);
+
+            if (state.mInitialStateClass != null) {
+                final StateMachine initialState = addPreparedState(states, state.mInitialStateClass);
+
+                if (initialState.mSuperState != state) {
+                    throw new IllegalStateException("Initial state: " + initialState + " is not a substate of: " + state);
+                }
+            }
+        }
+
+        int fingerprint = 0;
+
+        for (int i = 0; i < states.size(); i++) {
+            final StateMachine state = states.get(i);
+            state.mStateId = i;
+            fingerprint = 31 * fingerprint + state.getClass().getName().hashCode();
+        }
+
+        mPreparedStates = states.toArray(new StateMachine[states.size()]);
+        mSnapshotFingerprint = fingerprint;
+        return states;
+    }
+
+    private StateMachine addPreparedState(final ArrayList<StateMachine> states, final Class<? extends T_State> stateClass) {
+        final StateMachine state = getState(stateClass);
+
+        for (StateMachine superState = state; superState != this; superState = superState.mSuperState) {
+            if (!states.contains(superState)) {
+                states.add(superState);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Creates the exit path of a transition from the given source state to the given target state.
+     * The exit path matches the states exited by {@link StateMachine#exit(StateMachine)}.
+     */
+    private StateMachine[] createExitPath(final StateMachine source, final StateMachine target) {
+
+        if (source == target || source == this || isAncestor(source, target)) {
+            return NO_STATES;
+        }
+
+        final ArrayList<StateMachine> exitPath = new ArrayList<>();
+        StateMachine state = source;
+        exitPath.add(state);
+
+        while (state.mSuperState != target && state.mSuperState != this && !isAncestor(state.mSuperState, target)) {
+            state = state.mSuperState;
+            exitPath.add(state);
         }
+        return exitPath.toArray(new StateMachine[exitPath.size()]);
+    }
+
+    /**
+     * Creates the entry path of a transition to the given target state. The entry path consists of
+     * the target state followed by its initial substates as entered by {@link StateMachine#enter(int)}.
+     */
+    private StateMachine[] createEntryPath(final StateMachine target) {
+        final ArrayList<StateMachine> entryPath = new ArrayList<>();
+
+        if (target != this) {
+            StateMachine state = target;
+            entryPath.add(state);
+
+            while (state.mInitialStateClass != null) {
+                state = mStateCache.get(state.mInitialStateClass);
+                entryPath.add(state);
+            }
+        }
+        return entryPath.toArray(new StateMachine[entryPath.size()]);
+    }
+
+    private static boolean isAncestor(final StateMachine ancestor, final StateMachine state) {
+        for (StateMachine superState = state.mSuperState; superState != null; superState = superState.mSuperState) {
+            if (superState == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Clears the compiled transitions of this {@link StateMachine}.
+     */
+    private void clearCompiledTransitions() {
+        mExitPaths = null;
+        mEntryPaths = null;
     }
 
     /**
@@ -309,20 +931,8 @@ public abstract class StateMachine<T_State extends StateMachine, T_Controllable>
                 }
             }
 
-            T_State newCurrentState = getState(stateClass);
-
-            if (oldCurrentState != null && !newCurrentState.isSuperState(oldCurrentState)) {
-                oldCurrentState.exit(newCurrentState);
-            }
-
-            if (deepHistory) {
-                newCurrentState = (T_State) newCurrentState.enterDeepHistory();
-            } else {
-                newCurrentState = (T_State) newCurrentState.enterShallowHistory();
-            }
-
-            mCurrentState = newCurrentState;
-            return mCurrentState;
+            final int historyPoint = deepHistory ? TransitionListener.DEEP_HISTORY : TransitionListener.SHALLOW_HISTORY;
+            return transition(oldCurrentState, stateClass, 0, historyPoint);
         } else {
             return (T_State) getStateMachine().toHistoryState(stateClass, deepHistory);
         }
@@ -498,6 +1108,8 @@ public abstract class StateMachine<T_State extends StateMachine, T_Controllable>
 
         if (mStateCache != null) {
             mStateCache.clear();
+            mPreparedStates = null;
+            clearCompiledTransitions();
         }
     }
 
@@ -510,15 +1122,22 @@ public abstract class StateMachine<T_State extends StateMachine, T_Controllable>
     }
 
     /**
-     * Resets this {@link StateMachine}. Resetting clear the cache of state machines. A state machine
-     * has to be started again after resetting.
+     * Resets this {@link StateMachine}. Resetting clears the current state and the history of
+     * the state machine and each of its states, and invokes {@link StateMachine#onResetState()} for
+     * each state. The state instances and the compiled transitions are retained. A state machine has
+     * to be started again after resetting.
      */
     public synchronized final void reset() {
         final T_State stateMachine = getStateMachine();
 
         if (isStateMachine()) {
-            mStateCache.clear();
-            mStateCache.put(stateMachine.getClass(), stateMachine);
+            for (final T_State state : mStateCache.values()) {
+                state.mCurrentState = null;
+
+                if (state != this) {
+                    state.onResetState();
+                }
+            }
 
             onReset();
         } else {
@@ -556,6 +1175,15 @@ public abstract class StateMachine<T_State extends StateMachine, T_Controllable>
         // Do nothing by default
     }
 
+    /**
+     * Invoked by {@link StateMachine#reset()} for each instance of {@link StateMachine} that
+     * represents a state of a state machine. A state that has fields of its own should reinitialise
+     * them in this method, because the state instance is reused after resetting.
+     */
+    protected void onResetState() {
+        // Do nothing by default
+    }
+
     /**
      * Tests if the given state object is a direct or an indirect super state of the state
      * represented by this instance of {@link StateMachine}.
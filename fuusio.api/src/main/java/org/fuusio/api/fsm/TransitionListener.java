@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.fsm;
+
+/**
+ * {@link TransitionListener} is notified about the state transitions of a {@link StateMachine} when
+ * it is set using {@link StateMachine#setTransitionListener(TransitionListener)}. The listener is
+ * invoked on the thread executing the transition after the transition has been completed. A
+ * transition caused while executing another transition, e.g. the entering of an initial substate
+ * or a transition caused by {@link StateMachine#onEnter()}, is a part of the outermost transition.
+ */
+public interface TransitionListener {
+
+    /**
+     * The entry point of a transition to a history state via a deep history point.
+     */
+    int DEEP_HISTORY = -1;
+
+    /**
+     * The entry point of a transition to a history state via a shallow history point.
+     */
+    int SHALLOW_HISTORY = -2;
+
+    /**
+     * Invoked when the given {@link StateMachine} has completed a state transition.
+     *
+     * @param stateMachine The {@link StateMachine}.
+     * @param source       The source state. Is {@code null} when the state machine is started.
+     * @param target       The state that is the current state after the transition.
+     * @param event        The event that caused the transition. May be {@code null}.
+     * @param entryPoint   The entry point, zero for none, or {@link #DEEP_HISTORY} or
+     *                     {@link #SHALLOW_HISTORY} for a transition to a history state.
+     * @param exitNanos    The duration of exiting the source state in nanoseconds.
+     * @param enterNanos   The duration of entering the target state in nanoseconds.
+     */
+    void onTransition(StateMachine stateMachine, StateMachine source, StateMachine target, Object event,
+                      int entryPoint, long exitNanos, long enterNanos);
+}
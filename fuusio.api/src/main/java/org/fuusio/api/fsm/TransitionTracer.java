@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.fsm;
+
+import org.fuusio.api.util.L;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * {@link TransitionTracer} is a {@link TransitionListener} that records the most recent state
+ * transitions of one or more {@link StateMachine}s into a fixed-size ring buffer. Recording
+ * a transition takes a sequence number with an atomic increment and claims its slot with
+ * a compare-and-set. It does not allocate or lock, so a {@link TransitionTracer} can be left
+ * attached to a state machine in production to reconstruct its recent history and to find
+ * slow {@link StateMachine#onExit()} and {@link StateMachine#onEnter()} handlers. The recorded transitions are copied on demand using
+ * {@link TransitionTracer#getRecords()}, or logged using {@link TransitionTracer#dump()}.
+ * <p>
+ * The events of the recorded transitions are retained until their slots are overwritten.
+ * </p>
+ * <p>
+ * Transitions may be recorded from multiple threads. If the ring buffer wraps around while
+ * a slot is still being written, the other writer does not wait for the slot, but its
+ * transition is dropped. A dropped transition is counted in
+ * {@link TransitionTracer#getTransitionCount()}, but is missing from the retained transitions.
+ * </p>
+ */
+public class TransitionTracer implements TransitionListener {
+
+    /**
+     * The default number of the most recent transitions retained.
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The sequence number of a {@link Slot} that has not been written.
+     */
+    private static final long EMPTY = -1;
+
+    /**
+     * The sequence number of a {@link Slot} that is being written.
+     */
+    private static final long WRITING = -2;
+
+    private static final AtomicLongFieldUpdater<Slot> SLOT_SEQUENCE = AtomicLongFieldUpdater.newUpdater(Slot.class, "mSequence");
+
+    private final Slot[] mSlots;
+    private final int mMask;
+    private final AtomicLong mSequence;
+
+    /**
+     * The sequence number of the first transition recorded after {@link TransitionTracer#reset()}.
+     */
+    private volatile long mFirstSequence;
+
+    public TransitionTracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new instance of {@link TransitionTracer}.
+     *
+     * @param capacity The number of the most recent transitions retained. Rounded up to a power
+     *                 of two.
+     */
+    public TransitionTracer(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity has to be positive: " + capacity);
+        }
+
+        final int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+
+        mSlots = new Slot[size];
+        mMask = size - 1;
+        mSequence = new AtomicLong();
+
+        for (int i = 0; i < size; i++) {
+            mSlots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Gets the number of transitions recorded since this {@link TransitionTracer} was created or
+     * reset, including the transitions that have been overwritten.
+     *
+     * @return The number as a {@code long} value.
+     */
+    public long getTransitionCount() {
+        return mSequence.get() - mFirstSequence;
+    }
+
+    @Override
+    public void onTransition(final StateMachine stateMachine, final StateMachine source, final StateMachine target,
+                             final Object event, final int entryPoint, final long exitNanos, final long enterNanos) {
+        final long sequence = mSequence.getAndIncrement();
+        final Slot slot = mSlots[(int) sequence & mMask];
+        final long slotSequence = slot.mSequence;
+
+        // A slot being written, or already written with a later sequence number, by another
+        // writer is not waited for, but the transition is dropped
+
+        if (slotSequence == WRITING || slotSequence > sequence
+                || !SLOT_SEQUENCE.compareAndSet(slot, slotSequence, WRITING)) {
+            return;
+        }
+
+        slot.mStateMachineClass = stateMachine.getClass();
+        slot.mSourceClass = (source != null) ? source.getClass() : null;
+        slot.mTargetClass = target.getClass();
+        slot.mEvent = event;
+        slot.mEntryPoint = entryPoint;
+        slot.mExitNanos = exitNanos;
+        slot.mEnterNanos = enterNanos;
+        slot.mSequence = sequence;
+    }
+
+    /**
+     * Gets copies of the retained transitions from the oldest to the most recent one. A slot that
+     * is being overwritten while copying is skipped.
+     *
+     * @return A {@link List} of {@link Record}s.
+     */
+    public List<Record> getRecords() {
+        final long endSequence = mSequence.get();
+        final long startSequence = Math.max(mFirstSequence, endSequence - mSlots.length);
+        final List<Record> records = new ArrayList<>((int) (endSequence - startSequence));
+
+        for (long sequence = startSequence; sequence < endSequence; sequence++) {
+            final Slot slot = mSlots[(int) sequence & mMask];
+
+            if (slot.mSequence != sequence) {
+                continue;
+            }
+
+            final Record record = new Record(sequence, slot.mStateMachineClass, slot.mSourceClass,
+                    slot.mTargetClass, slot.mEvent, slot.mEntryPoint, slot.mExitNanos, slot.mEnterNanos);
+
+            if (slot.mSequence == sequence) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Logs the retained transitions from the oldest to the most recent one.
+     */
+    public void dump() {
+        for (final Record record : getRecords()) {
+            L.d(this, "dump", record.toString());
+        }
+    }
+
+    /**
+     * Discards the retained transitions.
+     */
+    public void reset() {
+        mFirstSequence = mSequence.get();
+    }
+
+    /**
+     * {@link Slot} is a preallocated slot of the ring buffer. The fields are volatile, so that
+     * a reader detects a slot that is being overwritten from a changed sequence number. A writer
+     * claims the slot by setting its sequence number from a written one to {@link TransitionTracer#WRITING}.
+     */
+    private static final class Slot {
+
+        volatile long mSequence = EMPTY;
+        volatile Class<?> mStateMachineClass;
+        volatile Class<?> mSourceClass;
+        volatile Class<?> mTargetClass;
+        volatile Object mEvent;
+        volatile int mEntryPoint;
+        volatile long mExitNanos;
+        volatile long mEnterNanos;
+    }
+
+    /**
+     * {@link Record} is a copy of a recorded state transition.
+     */
+    public static final class Record {
+
+        private final long mSequence;
+        private final Class<?> mStateMachineClass;
+        private final Class<?> mSourceClass;
+        private final Class<?> mTargetClass;
+        private final Object mEvent;
+        private final int mEntryPoint;
+        private final long mExitNanos;
+        private final long mEnterNanos;
+
+        Record(final long sequence, final Class<?> stateMachineClass, final Class<?> sourceClass,
+               final Class<?> targetClass, final Object event, final int entryPoint,
+               final long exitNanos, final long enterNanos) {
+            mSequence = sequence;
+            mStateMachineClass = stateMachineClass;
+            mSourceClass = sourceClass;
+            mTargetClass = targetClass;
+            mEvent = event;
+            mEntryPoint = entryPoint;
+            mExitNanos = exitNanos;
+            mEnterNanos = enterNanos;
+        }
+
+        public long getSequence() {
+            return mSequence;
+        }
+
+        public String getStateMachineName() {
+            return mStateMachineClass.getSimpleName();
+        }
+
+        /**
+         * Gets the name of the source state.
+         *
+         * @return A {@link String}. Is {@code null} for the transition made when the state machine
+         * was started.
+         */
+        public String getSourceName() {
+            return (mSourceClass != null) ? mSourceClass.getSimpleName() : null;
+        }
+
+        public String getTargetName() {
+            return mTargetClass.getSimpleName();
+        }
+
+        public Object getEvent() {
+            return mEvent;
+        }
+
+        public int getEntryPoint() {
+            return mEntryPoint;
+        }
+
+        public long getExitNanos() {
+            return mExitNanos;
+        }
+
+        public long getEnterNanos() {
+            return mEnterNanos;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder();
+            builder.append('#').append(mSequence).append(' ').append(getStateMachineName()).append(": ");
+            builder.append(getSourceName()).append(" -> ").append(getTargetName());
+
+            if (mEvent != null) {
+                builder.append(" on ").append(mEvent);
+            }
+
+            if (mEntryPoint != 0) {
+                builder.append(" via ").append(mEntryPoint);
+            }
+
+            builder.append(", exit ").append(mExitNanos).append(" ns, enter ").append(mEnterNanos).append(" ns");
+            return builder.toString();
+        }
+    }
+}
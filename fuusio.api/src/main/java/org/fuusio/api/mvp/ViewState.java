@@ -33,6 +33,10 @@ public class ViewState {
         mRestarted = false;
     }
 
+    public LifecycleState getLifecycleState() {
+        return mLifecycleState;
+    }
+
     public boolean isCreated() {
         return mLifecycleState.isCreated();
     }
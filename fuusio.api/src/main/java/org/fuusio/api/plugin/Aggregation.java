@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+/**
+ * {@link Aggregation} defines how the return values of the plugged {@link Plugin}s are combined
+ * into the return value of an invocation on a plug. The aggregation of a {@link PluginInterface}
+ * method is declared using annotation {@link Plugin.Aggregate}. Plugins are invoked in the reverse
+ * plugging order, and strategies that can determine the result early skip the remaining plugins.
+ */
+public enum Aggregation {
+
+    /**
+     * The value returned by the last invoked {@link Plugin} is returned. This is the default.
+     */
+    LAST,
+
+    /**
+     * The first non-{@code null} value is returned and the remaining plugins are not invoked.
+     */
+    FIRST_NON_NULL,
+
+    /**
+     * The {@link java.util.Collection}s returned by the plugins are concatenated into a single
+     * {@link java.util.List}. Applicable to methods returning a {@link java.util.List} or
+     * a {@link java.util.Collection}.
+     */
+    LIST,
+
+    /**
+     * Returns {@code true} as soon as a plugin returns {@code true}. Applicable to methods
+     * returning {@code boolean}.
+     */
+    ANY_TRUE,
+
+    /**
+     * Returns {@code false} as soon as a plugin returns {@code false}. Applicable to methods
+     * returning {@code boolean}.
+     */
+    ALL_TRUE,
+
+    /**
+     * The values are combined using the {@link PluginResultReducer} specified by
+     * {@link Plugin.Aggregate#reducer()}.
+     */
+    REDUCE
+}
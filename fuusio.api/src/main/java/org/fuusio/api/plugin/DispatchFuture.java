@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link DispatchFuture} is the {@link Future} returned by a plug for an asynchronously dispatched
+ * invocation of a method that returns a {@link Future}. It completes with the {@link Future}
+ * returned by the invoked {@link Plugin}s, so the dispatch thread never blocks on the result of
+ * a {@link Plugin}; the result is only waited for by the thread calling {@link #get()}.
+ */
+final class DispatchFuture implements Future<Object> {
+
+    private final FutureTask<Object> mTask;
+
+    DispatchFuture(final FutureTask<Object> task) {
+        mTask = task;
+    }
+
+    private Future<?> getPluginFuture() {
+        if (mTask.isDone() && !mTask.isCancelled()) {
+            try {
+                return (Future<?>) mTask.get();
+            } catch (final InterruptedException | ExecutionException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        if (mTask.cancel(mayInterruptIfRunning)) {
+            return true;
+        }
+
+        final Future<?> future = getPluginFuture();
+        return (future != null) && future.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        if (mTask.isCancelled()) {
+            return true;
+        }
+
+        final Future<?> future = getPluginFuture();
+        return (future != null) && future.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+        if (!mTask.isDone()) {
+            return false;
+        }
+
+        final Future<?> future = getPluginFuture();
+        return (future == null) || future.isDone();
+    }
+
+    @Override
+    public Object get() throws InterruptedException, ExecutionException {
+        final Future<?> future = (Future<?>) mTask.get();
+        return (future != null) ? future.get() : null;
+    }
+
+    @Override
+    public Object get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final Future<?> future = (Future<?>) mTask.get(timeout, unit);
+        return (future != null) ? future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) : null;
+    }
+}
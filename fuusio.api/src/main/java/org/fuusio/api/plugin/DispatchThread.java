@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+/**
+ * {@link DispatchThread} is a {@link Thread} created by {@link PluginBus} for dispatching
+ * plug invocations. The owner of a {@link DispatchThread} is used to detect if an invocation
+ * is already made on a thread with the required {@link ThreadAffinity}.
+ */
+final class DispatchThread extends Thread {
+
+    private final Object mOwner;
+
+    DispatchThread(final Object owner, final Runnable runnable, final String name) {
+        super(runnable, name);
+        mOwner = owner;
+        setDaemon(true);
+    }
+
+    /**
+     * Tests if the current thread is a {@link DispatchThread} owned by the given owner.
+     *
+     * @param owner The owner {@link Object}.
+     * @return A {@code boolean} value.
+     */
+    static boolean isOwnedBy(final Object owner) {
+        final Thread thread = Thread.currentThread();
+        return (thread instanceof DispatchThread) && ((DispatchThread) thread).mOwner == owner;
+    }
+}
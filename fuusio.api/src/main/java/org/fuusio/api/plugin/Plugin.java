@@ -27,6 +27,8 @@ public interface Plugin {
 
     String DEFAULT_PLUG_NAME = "*";
     boolean DEFAULT_VALUE_CREATE = false;
+    boolean DEFAULT_VALUE_COALESCE = false;
+    int DEFAULT_BATCH_CAPACITY = 64;
 
     String getPlugName();
 
@@ -41,4 +43,57 @@ public interface Plugin {
 
         boolean create() default DEFAULT_VALUE_CREATE;
     }
+
+    /**
+     * {@link Dispatched} can be used to annotate a {@link PluginInterface} for which
+     * a {@link PluginDispatcher} is generated at compile time. The plugs of a
+     * {@link PluginInterface} without this annotation are dynamic proxies.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    public @interface Dispatched {
+    }
+
+    /**
+     * {@link Batched} can be used to annotate a {@link PluginInterface} whose invocations made off
+     * the main thread should be delivered in batches. Instead of posting each invocation separately
+     * to the main thread, the invocations are queued and all the queued invocations are dispatched
+     * to the plugged {@link Plugin}s in a single main thread message. If {@link Batched#coalesce()}
+     * is {@code true}, a queued invocation of a method is replaced by a later invocation of the same
+     * method so that only the last arguments are delivered.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    public @interface Batched {
+        boolean coalesce() default DEFAULT_VALUE_COALESCE;
+
+        int capacity() default DEFAULT_BATCH_CAPACITY;
+    }
+
+    /**
+     * {@link Affinity} can be used to annotate a {@link PluginInterface} to declare the
+     * {@link ThreadAffinity} on which invocations on its plugs are dispatched. A
+     * {@link PluginInterface} without this annotation has affinity {@link ThreadAffinity#MAIN}.
+     * The methods of a {@link PluginInterface} with affinity {@link ThreadAffinity#BACKGROUND} or
+     * {@link ThreadAffinity#SERIAL} have to return {@code void} or {@link java.util.concurrent.Future}.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    public @interface Affinity {
+        ThreadAffinity value() default ThreadAffinity.MAIN;
+    }
+
+    /**
+     * {@link Aggregate} can be used to annotate a {@link PluginInterface} method to declare
+     * the {@link Aggregation} used for combining the return values of the plugged {@link Plugin}s.
+     * A {@link PluginResultReducer} has to be specified for {@link Aggregation#REDUCE}.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.METHOD)
+    public @interface Aggregate {
+        Aggregation value() default Aggregation.LAST;
+
+        @SuppressWarnings("rawtypes")
+        Class<? extends PluginResultReducer> reducer() default PluginResultReducer.class;
+    }
 }
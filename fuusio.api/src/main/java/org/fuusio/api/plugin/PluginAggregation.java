@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link PluginAggregation} is a utility class used internally by {@link PluginInvocationHandler}
+ * to hold the validated {@link Aggregation} of a {@link PluginInterface} method. Instances are
+ * cached per {@link Method}.
+ */
+final class PluginAggregation {
+
+    private static final PluginAggregation LAST = new PluginAggregation(Aggregation.LAST, null);
+
+    private static final ConcurrentMap<Method, PluginAggregation> sAggregations = new ConcurrentHashMap<>();
+
+    private final Aggregation mAggregation;
+    private final PluginResultReducer<Object> mReducer;
+
+    private PluginAggregation(final Aggregation aggregation, final PluginResultReducer<Object> reducer) {
+        mAggregation = aggregation;
+        mReducer = reducer;
+    }
+
+    public Aggregation getAggregation() {
+        return mAggregation;
+    }
+
+    public PluginResultReducer<Object> getReducer() {
+        return mReducer;
+    }
+
+    /**
+     * Gets the {@link PluginAggregation} declared for the given {@link Method}.
+     *
+     * @param method A {@link Method} of a {@link PluginInterface}.
+     * @return A {@link PluginAggregation}.
+     */
+    public static PluginAggregation forMethod(final Method method) {
+        PluginAggregation aggregation = sAggregations.get(method);
+
+        if (aggregation == null) {
+            aggregation = create(method);
+
+            final PluginAggregation existingAggregation = sAggregations.putIfAbsent(method, aggregation);
+
+            if (existingAggregation != null) {
+                aggregation = existingAggregation;
+            }
+        }
+        return aggregation;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PluginAggregation create(final Method method) {
+
+        final Plugin.Aggregate aggregate = method.getAnnotation(Plugin.Aggregate.class);
+        final Class<?> returnType = method.getReturnType();
+
+        if (aggregate == null || aggregate.value() == Aggregation.LAST || returnType == void.class) {
+            return LAST;
+        }
+
+        final Aggregation aggregation = aggregate.value();
+        PluginResultReducer<Object> reducer = null;
+
+        switch (aggregation) {
+            case FIRST_NON_NULL:
+                if (returnType.isPrimitive()) {
+                    throw new IllegalStateException(getMessage(method, aggregation, "a non-primitive return type"));
+                }
+                break;
+            case LIST:
+                if (!Collection.class.isAssignableFrom(returnType) || !returnType.isAssignableFrom(ArrayList.class)) {
+                    throw new IllegalStateException(getMessage(method, aggregation, "return type List or Collection"));
+                }
+                break;
+            case ANY_TRUE:
+            case ALL_TRUE:
+                if (returnType != boolean.class) {
+                    throw new IllegalStateException(getMessage(method, aggregation, "return type boolean"));
+                }
+                break;
+            case REDUCE:
+                try {
+                    reducer = aggregate.reducer().newInstance();
+                } catch (final Exception e) {
+                    throw new IllegalStateException(getMessage(method, aggregation, "an instantiable PluginResultReducer"));
+                }
+                break;
+        }
+        return new PluginAggregation(aggregation, reducer);
+    }
+
+    private static String getMessage(final Method method, final Aggregation aggregation, final String requirement) {
+        return "Aggregation " + aggregation + " of method: " + method.getName() + " requires " + requirement;
+    }
+}
@@ -15,26 +15,56 @@
  */
 package org.fuusio.api.plugin;
 
+import org.fuusio.api.mvp.View;
+import org.fuusio.api.util.L;
+import org.fuusio.api.util.LifecycleState;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PluginBus {
 
-    private static PluginBus sInstance = null;
+    private static final long BACKGROUND_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private static volatile PluginBus sInstance = null;
+    private static volatile Executor sBackgroundExecutor = null;
+    private static volatile boolean sWeakRegistration = false;
+
+    /**
+     * The optional {@link PluginMetrics} recording dispatch metrics. Read on each dispatch.
+     */
+    static volatile PluginMetrics sMetrics = null;
     private static PluginInjector sGlobalInjector = null;
 
-    private final HashMap<Class<? extends PluginInterface>, HashMap<String, PluginInvocationHandler>> mInvocationHandlers;
+    private final HashMap<Class<? extends PluginInterface>, Constructor<? extends PluginDispatcher>> mDispatcherConstructors;
+    private final ConcurrentMap<Class<? extends PluginInterface>, ConcurrentMap<String, PluginInvocationHandler>> mInvocationHandlers;
     // OPTION private final HashMap<Class<? extends PluginInterface>, HashMap<String, PlugInvocationHandler>> mSyncedInvocationHandlers;
-    private final List<Plugin> mPlugins;
+    private final ConcurrentMap<Class<?>, PluginMetadata> mMetadata;
+    private final HashMap<PluginReference, PluginRegistration> mPlugins;
+    private final ReferenceQueue<Plugin> mCollectedPlugins;
 
     private PluginBus() {
-        mInvocationHandlers = new HashMap<>();
+        mDispatcherConstructors = new HashMap<>();
+        mInvocationHandlers = new ConcurrentHashMap<>();
         // OPTION mSyncedInvocationHandlers = new HashMap<>();
-        mPlugins = new ArrayList<>();
+        mMetadata = new ConcurrentHashMap<>();
+        mPlugins = new HashMap<>();
+        mCollectedPlugins = new ReferenceQueue<>();
     }
 
     @SuppressWarnings("unused")
@@ -46,7 +76,7 @@ public class PluginBus {
     public <T extends Plugin> List<T> getPlugins(final Class<? extends PluginInterface> pluginInterface, final String plugName) {
         PluginInvocationHandler handler = null;
 
-        final HashMap<String, PluginInvocationHandler> handlers = mInvocationHandlers.get(pluginInterface);
+        final ConcurrentMap<String, PluginInvocationHandler> handlers = mInvocationHandlers.get(pluginInterface);
 
         if (handlers != null) {
             handler = handlers.get(plugName);
@@ -62,138 +92,288 @@ public class PluginBus {
     public static PluginBus getInstance() {
 
         if (sInstance == null) {
-            sInstance = new PluginBus();
+            synchronized (PluginBus.class) {
+                if (sInstance == null) {
+                    sInstance = new PluginBus();
+                }
+            }
         }
         return sInstance;
     }
 
+    /**
+     * Gets the shared {@link Executor} used for dispatching invocations on plugs that have
+     * {@link ThreadAffinity#BACKGROUND}. A default thread pool is created if an {@link Executor}
+     * has not been set.
+     *
+     * @return An {@link Executor}.
+     */
+    public static Executor getBackgroundExecutor() {
+
+        if (sBackgroundExecutor == null) {
+            synchronized (PluginBus.class) {
+                if (sBackgroundExecutor == null) {
+                    sBackgroundExecutor = createBackgroundExecutor(getInstance());
+                }
+            }
+        }
+        return sBackgroundExecutor;
+    }
+
+    /**
+     * Sets the shared {@link Executor} used for dispatching invocations on plugs that have
+     * {@link ThreadAffinity#BACKGROUND}.
+     *
+     * @param executor An {@link Executor}. If {@code null}, the default thread pool is used.
+     */
+    @SuppressWarnings("unused")
+    public static void setBackgroundExecutor(final Executor executor) {
+        synchronized (PluginBus.class) {
+            sBackgroundExecutor = executor;
+        }
+    }
+
+    private static Executor createBackgroundExecutor(final PluginBus bus) {
+        final int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+        final AtomicInteger threadIndex = new AtomicInteger();
+        final ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new DispatchThread(bus, runnable, "PluginBus-" + threadIndex.incrementAndGet());
+            }
+        };
+
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                BACKGROUND_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Gets the {@link PluginMetrics} recording dispatch metrics.
+     *
+     * @return A {@link PluginMetrics} or {@code null} if metrics are not recorded.
+     */
+    public static PluginMetrics getMetrics() {
+        return sMetrics;
+    }
+
+    /**
+     * Sets the {@link PluginMetrics} for recording dispatch metrics. Recording is disabled by
+     * setting {@code null}.
+     *
+     * @param metrics A {@link PluginMetrics}. May be {@code null}.
+     */
+    public static void setMetrics(final PluginMetrics metrics) {
+        sMetrics = metrics;
+    }
+
+    /**
+     * Sets the {@link ThreadAffinity} of the specified plug. This overrides the affinity declared
+     * for the {@link PluginInterface} using annotation {@link Plugin.Affinity}.
+     *
+     * @param pluginInterface A {@link Class} specifying the {@link PluginInterface}.
+     * @param plugName        The name of the plug.
+     * @param affinity        A {@link ThreadAffinity}.
+     */
+    public static void setThreadAffinity(final Class<? extends PluginInterface> pluginInterface, final String plugName, final ThreadAffinity affinity) {
+        getInstance().getInvocationHandler(pluginInterface, plugName).setThreadAffinity(affinity);
+    }
+
     public static <T extends PluginInterface> T getPlug(final Class<T> pluginInterface) {
-        return sInstance.doGetPlug(pluginInterface, Plugin.DEFAULT_PLUG_NAME);
+        return getInstance().doGetPlug(pluginInterface, Plugin.DEFAULT_PLUG_NAME);
     }
 
     public static <T extends PluginInterface> T getPlug(final Class<T> pluginInterface, final String plugName) {
-        return sInstance.doGetPlug(pluginInterface, plugName);
+        return getInstance().doGetPlug(pluginInterface, plugName);
     }
 
     @SuppressWarnings("unchecked")
     public <T extends PluginInterface> T doGetPlug(final Class<T> pluginInterface, final String plugName) {
+        return (T) getInvocationHandler(pluginInterface, plugName).getPlug();
+    }
 
-        final ClassLoader classLoader = pluginInterface.getClassLoader();
-        HashMap<String, PluginInvocationHandler> handlers = mInvocationHandlers.get(pluginInterface);
+    /**
+     * Gets the {@link PluginInvocationHandler} for the specified plug. A new
+     * {@link PluginInvocationHandler} and its plug are created if needed. This method can be
+     * invoked from any thread.
+     *
+     * @param pluginInterface A {@link Class} specifying the {@link PluginInterface}.
+     * @param plugName        The name of the plug.
+     * @return A {@link PluginInvocationHandler}.
+     */
+    PluginInvocationHandler getInvocationHandler(final Class<? extends PluginInterface> pluginInterface, final String plugName) {
+
+        ConcurrentMap<String, PluginInvocationHandler> handlers = mInvocationHandlers.get(pluginInterface);
 
         if (handlers == null) {
-            handlers = new HashMap<>();
-            mInvocationHandlers.put(pluginInterface, handlers);
+            final ConcurrentMap<String, PluginInvocationHandler> newHandlers = new ConcurrentHashMap<>();
+            handlers = mInvocationHandlers.putIfAbsent(pluginInterface, newHandlers);
+
+            if (handlers == null) {
+                handlers = newHandlers;
+            }
         }
 
         PluginInvocationHandler handler = handlers.get(plugName);
-        Proxy proxy;
 
         if (handler == null) {
-            handler = new PluginInvocationHandler(pluginInterface, this);
-            handlers.put(plugName, handler);
+            final PluginInvocationHandler newHandler = new PluginInvocationHandler(pluginInterface, this);
+            newHandler.setPlug(createPlug(pluginInterface, newHandler));
+            handler = handlers.putIfAbsent(plugName, newHandler);
 
-            final Class<?>[] interfaceClasses = {pluginInterface};
-            proxy = (Proxy) Proxy.newProxyInstance(classLoader, interfaceClasses, handler);
-            handler.setProxy(proxy);
-        } else {
-            proxy = handler.getProxy();
+            if (handler == null) {
+                handler = newHandler;
+            }
+        }
+        return handler;
+    }
+
+    /**
+     * Creates a plug for the given {@link PluginInvocationHandler}. A generated
+     * {@link PluginDispatcher} is used if one exists for the specified {@link PluginInterface}
+     * annotated with {@link Plugin.Dispatched}. Otherwise a dynamic {@link Proxy} is created.
+     *
+     * @param pluginInterface A {@link Class} specifying the {@link PluginInterface}.
+     * @param handler         A {@link PluginInvocationHandler}.
+     * @return The created plug as a {@link PluginInterface}.
+     */
+    private PluginInterface createPlug(final Class<? extends PluginInterface> pluginInterface, final PluginInvocationHandler handler) {
+
+        final Constructor<? extends PluginDispatcher> constructor = getDispatcherConstructor(pluginInterface);
+
+        if (constructor != null) {
+            try {
+                return (PluginInterface) constructor.newInstance(handler);
+            } catch (final Exception e) {
+                throw new RuntimeException("Failed to create plugin dispatcher for: " + pluginInterface.getName(), e);
+            }
+        }
+
+        final ClassLoader classLoader = pluginInterface.getClassLoader();
+        final Class<?>[] interfaceClasses = {pluginInterface};
+        return (PluginInterface) Proxy.newProxyInstance(classLoader, interfaceClasses, handler);
+    }
+
+    /**
+     * Gets the constructor of the generated {@link PluginDispatcher} for the specified
+     * {@link PluginInterface}. The lookup result is cached.
+     *
+     * @param pluginInterface A {@link Class} specifying the {@link PluginInterface}.
+     * @return A {@link Constructor} or {@code null} if no dispatcher has been generated.
+     */
+    @SuppressWarnings("unchecked")
+    private Constructor<? extends PluginDispatcher> getDispatcherConstructor(final Class<? extends PluginInterface> pluginInterface) {
+
+        synchronized (mDispatcherConstructors) {
+            if (mDispatcherConstructors.containsKey(pluginInterface)) {
+                return mDispatcherConstructors.get(pluginInterface);
+            }
+
+            Constructor<? extends PluginDispatcher> constructor = null;
+
+            if (!pluginInterface.isAnnotationPresent(Plugin.Dispatched.class)) {
+                mDispatcherConstructors.put(pluginInterface, null);
+                return null;
+            }
+
+            try {
+                final String className = pluginInterface.getName() + PluginDispatcher.POSTFIX_DISPATCHER;
+                final Class<?> dispatcherClass = Class.forName(className, true, pluginInterface.getClassLoader());
+
+                if (PluginDispatcher.class.isAssignableFrom(dispatcherClass) && pluginInterface.isAssignableFrom(dispatcherClass)) {
+                    constructor = ((Class<? extends PluginDispatcher>) dispatcherClass).getConstructor(PluginInvocationHandler.class);
+                }
+            } catch (final ClassNotFoundException e) {
+                // No generated dispatcher. A dynamic proxy is used instead.
+            } catch (final NoSuchMethodException e) {
+                throw new IllegalStateException("Invalid plugin dispatcher for: " + pluginInterface.getName());
+            }
+
+            mDispatcherConstructors.put(pluginInterface, constructor);
+            return constructor;
         }
+    }
+
+    /**
+     * Tests if {@link Plugin}s are plugged weakly by default.
+     *
+     * @return A {@code boolean} value.
+     */
+    public static boolean isWeakRegistration() {
+        return sWeakRegistration;
+    }
 
-        return (T) proxy;
+    /**
+     * Sets {@link Plugin}s to be plugged weakly by default. A weakly plugged {@link Plugin} is not
+     * kept reachable by {@link PluginBus}, and it is unplugged automatically once it has been
+     * garbage collected. This prevents leaking {@link Plugin}s that are not unplugged, but
+     * a weakly plugged {@link Plugin} has to be kept reachable by its owner.
+     *
+     * @param weak A {@code boolean} value.
+     */
+    public static void setWeakRegistration(final boolean weak) {
+        sWeakRegistration = weak;
     }
 
     public static void plug(final Plugin plugin) {
-        sInstance.doPlug(plugin, true);
+        getInstance().doPlug(plugin, true, sWeakRegistration);
     }
 
     public static void plug(final Plugin plugin, final boolean useAnnotations) {
-        sInstance.doPlug(plugin, useAnnotations);
+        getInstance().doPlug(plugin, useAnnotations, sWeakRegistration);
+    }
+
+    /**
+     * Plugs the given {@link Plugin} weakly regardless of {@link PluginBus#isWeakRegistration()}.
+     *
+     * @param plugin A {@link Plugin}.
+     */
+    public static void plugWeakly(final Plugin plugin) {
+        getInstance().doPlug(plugin, true, true);
     }
 
-    private void doPlug(final Plugin plugin, final boolean useAnnotations) {
+    private synchronized void doPlug(final Plugin plugin, final boolean useAnnotations, final boolean weak) {
+
+        purgeCollectedPlugins();
 
-        if (mPlugins.contains(plugin)) {
+        final PluginReference reference = new PluginReference(plugin, mCollectedPlugins);
+
+        if (mPlugins.containsKey(reference)) {
             return;
         }
 
-        final Class<? extends Plugin> pluginClass = plugin.getClass();
-        final ClassLoader classLoader = pluginClass.getClassLoader();
+        final PluginMetadata metadata = getMetadata(plugin);
+        mPlugins.put(reference, new PluginRegistration(reference, weak, metadata));
+
         final PluginInjector injector = (sGlobalInjector != null) ? sGlobalInjector : getInjector(plugin);
 
         if (injector != null) {
             injector.onPlug(plugin);
         }
 
-        final List<Class<? extends PluginInterface>> pluginInterfaces = getPluginInterfaces(plugin);
-
         if (useAnnotations) {
-            final List<PlugDescriptor> descriptors = getPlugDescriptors(plugin);
-
-            for (final PlugDescriptor descriptor : descriptors) {
+            for (final PlugDescriptor descriptor : metadata.getPlugDescriptors()) {
                 final String plugName = descriptor.getName();
                 final Class<? extends PluginInterface> pluginInterface = descriptor.getPluginInterface();
-
-                HashMap<String, PluginInvocationHandler> handlers = mInvocationHandlers.get(pluginInterface);
-
-                if (handlers == null) {
-                    handlers = new HashMap<>();
-                    mInvocationHandlers.put(pluginInterface, handlers);
-                }
-
-                PluginInvocationHandler handler = handlers.get(plugName);
-                Proxy proxy;
-
-                if (handler == null) {
-                    handler = new PluginInvocationHandler(pluginInterface, this);
-                    handlers.put(plugName, handler);
-
-                    final Class<?>[] interfaceClasses = {pluginInterface};
-                    proxy = (Proxy) Proxy.newProxyInstance(classLoader, interfaceClasses, handler);
-                    handler.setProxy(proxy);
-                } else {
-                    proxy = handler.getProxy();
-                }
-
+                final PluginInvocationHandler handler = getInvocationHandler(pluginInterface, plugName);
                 final Field field = descriptor.getField();
 
                 try {
-                    field.setAccessible(true);
-                    field.set(plugin, proxy);
+                    field.set(plugin, handler.getPlug());
                 } catch (final Exception e) {
                     throw new RuntimeException("Failed to assign to plugin field: " + field.getName());
                 }
             }
         }
 
-        for (final Class<? extends PluginInterface> pluginInterface : pluginInterfaces) {
-            final String plugName = plugin.getPlugName();
-            final PlugDescriptor descriptor = new PlugDescriptor(null, plugName, pluginInterface);
-            descriptor.setCreated(false);
-
-            HashMap<String, PluginInvocationHandler> handlers = mInvocationHandlers.get(pluginInterface);
-
-            if (handlers == null) {
-                handlers = new HashMap<>();
-                mInvocationHandlers.put(pluginInterface, handlers);
-            }
-
-            PluginInvocationHandler handler = handlers.get(plugName);
-            Proxy proxy;
-
-            if (handler == null) {
-                handler = new PluginInvocationHandler(pluginInterface, this);
-                handlers.put(plugName, handler);
+        final String plugName = plugin.getPlugName();
 
-                final Class<?>[] interfaceClasses = {pluginInterface};
-                proxy = (Proxy) Proxy.newProxyInstance(classLoader, interfaceClasses, handler);
-                handler.setProxy(proxy);
-            }
-
-            handler.plug(plugin);
+        for (final Class<? extends PluginInterface> pluginInterface : metadata.getPluginInterfaces()) {
+            final PluginInvocationHandler handler = getInvocationHandler(pluginInterface, plugName);
+            handler.plug(reference, weak);
         }
 
-        mPlugins.add(plugin);
         plugin.onPlugged(this);
     }
 
@@ -206,46 +386,38 @@ public class PluginBus {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private List<PlugDescriptor> getPlugDescriptors(final Plugin plugin) {
+    /**
+     * Gets the cached {@link PluginMetadata} of the given {@link Plugin}. The metadata is created
+     * when a {@link Plugin} of the same class is plugged for the first time.
+     *
+     * @param plugin A {@link Plugin}.
+     * @return A {@link PluginMetadata}.
+     */
+    private PluginMetadata getMetadata(final Plugin plugin) {
         final Class<?> pluginClass = plugin.getClass();
-        final List<PlugDescriptor> fields = new ArrayList<>();
+        PluginMetadata metadata = mMetadata.get(pluginClass);
 
-        collectPlugFields(pluginClass, fields);
+        if (metadata == null) {
+            metadata = new PluginMetadata(pluginClass);
+            final PluginMetadata existingMetadata = mMetadata.putIfAbsent(pluginClass, metadata);
 
-        return fields;
-    }
-
-    @SuppressWarnings("unchecked")
-    private void collectPlugFields(final Class<?> plugClass, final List<PlugDescriptor> descriptors) {
-
-        if (Plugin.class.isAssignableFrom(plugClass)) {
-            final Field[] fields = plugClass.getDeclaredFields();
-
-            for (final Field field : fields) {
-                final Plugin.Plug plug = field.getAnnotation(Plugin.Plug.class);
-
-                if (plug != null) {
-                    final String plugName = plug.name();
-                    final Class<? extends PluginInterface> fieldType = (Class<? extends PluginInterface>) field.getType();
-                    final PlugDescriptor descriptor = new PlugDescriptor(field, plugName, fieldType);
-                    descriptor.setCreated(plug.create());
-                    descriptors.add(descriptor);
-                }
+            if (existingMetadata != null) {
+                metadata = existingMetadata;
             }
-
-            collectPlugFields(plugClass.getSuperclass(), descriptors);
         }
+        return metadata;
     }
 
     public static void unplug(final Plugin plugin) {
-        sInstance.doUnplug(plugin);
+        getInstance().doUnplug(plugin);
     }
 
     @SuppressWarnings("static-access")
-    private void doUnplug(final Plugin plugin) {
+    private synchronized void doUnplug(final Plugin plugin) {
 
-        if (!mPlugins.contains(plugin)) {
+        purgeCollectedPlugins();
+
+        if (mPlugins.remove(new PluginReference(plugin)) == null) {
             return;
         }
 
@@ -255,79 +427,103 @@ public class PluginBus {
             injector.onUnplug(plugin);
         }
 
-        final List<Class<? extends PluginInterface>> pluginInterfaces = getPluginInterfaces(plugin);
-        final List<PlugDescriptor> descriptors = getPlugDescriptors(plugin);
-        final List<PluginInvocationHandler> removedHandlers = new ArrayList<>();
+        final PluginMetadata metadata = getMetadata(plugin);
+
+        // Handlers left without plugins are intentionally kept, because their plugs may still be
+        // referenced by other plugins. Replacing a handler would make such plugs miss deliveries.
 
-        for (final Class<? extends PluginInterface> pluginInterface : pluginInterfaces) {
+        for (final Class<? extends PluginInterface> pluginInterface : metadata.getPluginInterfaces()) {
 
             final Collection<PluginInvocationHandler> handlers = mInvocationHandlers.get(pluginInterface).values();
 
             for (final PluginInvocationHandler handler : handlers) {
                 handler.unplug(plugin);
-
-                if (handler.getPluginCount() == 0) {
-                    removedHandlers.add(handler);
-                }
             }
         }
 
-        for (final PlugDescriptor descriptor : descriptors) {
-            Field field;
-
+        for (final PlugDescriptor descriptor : metadata.getPlugDescriptors()) {
             try {
-                field = descriptor.getField();
-                field.setAccessible(true);
-                field.set(plugin, null);
+                descriptor.getField().set(plugin, null);
             } catch (final Exception pException) {
                 throw new RuntimeException("Failed to assign to plugin field.");
             }
         }
 
-        for (final PluginInvocationHandler handler : removedHandlers) {
-            removeInvocationHandler(handler);
-        }
-
-        mPlugins.remove(plugin);
         plugin.onUnplugged(this);
     }
 
-    private List<Class<? extends PluginInterface>> getPluginInterfaces(final Plugin plugin) {
-        final Class<?> pluginClass = plugin.getClass();
-        final List<Class<? extends PluginInterface>> pluginInterfaces = new ArrayList<>();
-        collectPluginInterfaces(pluginClass, pluginInterfaces);
-        return pluginInterfaces;
+    /**
+     * Removes the registrations of weakly plugged {@link Plugin}s that have been garbage
+     * collected. The {@link PluginInvocationHandler}s purge the collected {@link Plugin}s
+     * themselves on the next dispatch.
+     */
+    private void purgeCollectedPlugins() {
+        Reference<? extends Plugin> reference;
+
+        while ((reference = mCollectedPlugins.poll()) != null) {
+            mPlugins.remove(reference);
+        }
     }
 
-    @SuppressWarnings("unchecked")
-    private void collectPluginInterfaces(final Class<?> pluginClass, List<Class<? extends PluginInterface>> pluginInterfaces) {
+    /**
+     * Gets a report of {@link Plugin}s that are still plugged although their
+     * {@link LifecycleState} indicates that they should have been unplugged, i.e. they are
+     * {@link View}s or {@link org.fuusio.api.mvp.Presenter}s whose {@link View} is stopped or
+     * destroyed.
+     *
+     * @param minPluggedMillis The minimum time in milliseconds a {@link Plugin} has to be plugged
+     *                         to be reported. Used for ignoring {@link Plugin}s that are about to
+     *                         be unplugged.
+     * @return A {@link List} of {@link PluginLeak}s.
+     */
+    public static List<PluginLeak> getLeakReport(final long minPluggedMillis) {
+        return getInstance().doGetLeakReport(minPluggedMillis);
+    }
+
+    private synchronized List<PluginLeak> doGetLeakReport(final long minPluggedMillis) {
+
+        purgeCollectedPlugins();
 
-        final Class<?>[] implementedInterfaces = pluginClass.getInterfaces();
+        final List<PluginLeak> leaks = new ArrayList<>();
+        final long currentTime = System.currentTimeMillis();
 
-        for (final Class<?> implementedInterface : implementedInterfaces) {
-            if (PluginInterface.class.isAssignableFrom(implementedInterface)) {
-                if (!pluginInterfaces.contains(implementedInterface)) {
-                    pluginInterfaces.add((Class<? extends PluginInterface>) implementedInterface);
+        for (final PluginRegistration registration : mPlugins.values()) {
+            final Plugin plugin = registration.getReference().get();
+            final long pluggedMillis = currentTime - registration.getPlugTime();
+
+            if (plugin != null && pluggedMillis >= minPluggedMillis) {
+                final LifecycleState state = PluginRegistration.getLifecycleState(plugin);
+
+                if (state != null && (state.isStopped() || state.isDestroyed())) {
+                    leaks.add(new PluginLeak(registration.getPluginClassName(), state, pluggedMillis, registration.isWeak()));
                 }
             }
         }
+        return leaks;
+    }
 
-        final Class<?> superClass = pluginClass.getSuperclass();
-
-        if (!Object.class.equals(superClass)) {
-            collectPluginInterfaces(superClass, pluginInterfaces);
+    /**
+     * Writes the report given by {@link PluginBus#getLeakReport(long)} to the log using {@link L}.
+     *
+     * @param minPluggedMillis The minimum time in milliseconds a {@link Plugin} has to be plugged
+     *                         to be reported.
+     */
+    public static void dumpLeakReport(final long minPluggedMillis) {
+        final PluginBus bus = getInstance();
+
+        for (final PluginLeak leak : getLeakReport(minPluggedMillis)) {
+            L.w(bus, "dumpLeakReport", leak.toString());
         }
     }
 
     public void removeInvocationHandler(final PluginInvocationHandler removedHandler) {
-        final HashMap<String, PluginInvocationHandler> handlers = mInvocationHandlers.get(removedHandler.getPluginInterface());
+        final ConcurrentMap<String, PluginInvocationHandler> handlers = mInvocationHandlers.get(removedHandler.getPluginInterface());
 
-        for (final String key : handlers.keySet()) {
-            final PluginInvocationHandler handler = handlers.get(key);
-
-            if (handler == removedHandler) {
-                handlers.remove(key);
-                break;
+        if (handlers != null) {
+            for (final String key : handlers.keySet()) {
+                if (handlers.remove(key, removedHandler)) {
+                    break;
+                }
             }
         }
     }
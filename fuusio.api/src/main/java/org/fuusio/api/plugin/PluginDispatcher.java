@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import java.lang.reflect.Method;
+
+/**
+ * {@link PluginDispatcher} provides an abstract base class for plugs generated at compile time by
+ * {@code org.fuusio.compiler.PluginDispatcherProcessor}. A generated dispatcher implements its
+ * {@link PluginInterface} and invokes the plugged {@link Plugin}s directly without reflection
+ * or argument boxing. An invocation that can not be dispatched directly on the calling thread
+ * is delegated to the {@link PluginInvocationHandler} of the dispatcher.
+ * <p>
+ * A generated dispatcher class is named after its {@link PluginInterface} using postfix
+ * {@link PluginDispatcher#POSTFIX_DISPATCHER}. {@link PluginBus} uses a generated dispatcher
+ * instead of a dynamic {@link java.lang.reflect.Proxy} if one exists.
+ */
+public abstract class PluginDispatcher {
+
+    public static final String POSTFIX_DISPATCHER = "$$PluginDispatcher";
+
+    protected final PluginInvocationHandler mInvocationHandler;
+
+    protected PluginDispatcher(final PluginInvocationHandler handler) {
+        mInvocationHandler = handler;
+    }
+
+    /**
+     * Gets the {@link PluginInvocationHandler} that this {@link PluginDispatcher} delegates to.
+     *
+     * @return A {@link PluginInvocationHandler}.
+     */
+    public final PluginInvocationHandler getInvocationHandler() {
+        return mInvocationHandler;
+    }
+
+    /**
+     * Gets the currently plugged {@link Plugin}s if an invocation can be dispatched directly on
+     * the calling thread.
+     *
+     * @return An array of {@link Plugin}s or {@code null} if the invocation has to be delegated
+     * to method {@link PluginDispatcher#invoke(Method, Object[])}.
+     */
+    protected final Plugin[] getPlugins() {
+        return mInvocationHandler.getDirectPlugins();
+    }
+
+    /**
+     * Delegates the invocation of the given {@link Method} to the {@link PluginInvocationHandler}.
+     *
+     * @param method A {@link Method} of the {@link PluginInterface}.
+     * @param args   The arguments of the invocation. May be {@code null}.
+     * @return The return value of the invocation.
+     */
+    protected final Object invoke(final Method method, final Object[] args) {
+        try {
+            return mInvocationHandler.invoke(this, method, args);
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Error e) {
+            throw e;
+        } catch (final Throwable throwable) {
+            throw new RuntimeException("Failed to invoke method: " + method.getName() + ". Reason: " + throwable.getMessage(), throwable);
+        }
+    }
+
+    /**
+     * Looks up the specified {@link Method} of a {@link PluginInterface}. This method is meant to
+     * be used only by generated dispatchers.
+     *
+     * @param pluginInterface A {@link Class} specifying the {@link PluginInterface}.
+     * @param name            The name of the method.
+     * @param paramTypes      The parameter types of the method.
+     * @return A {@link Method}.
+     */
+    protected static Method getMethod(final Class<? extends PluginInterface> pluginInterface, final String name, final Class<?>... paramTypes) {
+        try {
+            return pluginInterface.getMethod(name, paramTypes);
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException("Generated dispatcher is out of date. No method: " + name + " in " + pluginInterface.getName());
+        }
+    }
+}
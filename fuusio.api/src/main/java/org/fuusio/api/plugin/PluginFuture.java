@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PluginFuture} is an already completed {@link Future}. It can be returned by
+ * {@link Plugin} implementations of {@link PluginInterface} methods that declare a {@link Future}
+ * return type, when the result is computed synchronously on the dispatch thread.
+ *
+ * @param <T> The type of the result.
+ */
+public final class PluginFuture<T> implements Future<T> {
+
+    private final T mValue;
+
+    private PluginFuture(final T value) {
+        mValue = value;
+    }
+
+    /**
+     * Creates a completed {@link PluginFuture} for the given value.
+     *
+     * @param value The result value. May be {@code null}.
+     * @param <T>   The type of the result.
+     * @return A {@link PluginFuture}.
+     */
+    public static <T> PluginFuture<T> of(final T value) {
+        return new PluginFuture<>(value);
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return true;
+    }
+
+    @Override
+    public T get() {
+        return mValue;
+    }
+
+    @Override
+    public T get(final long timeout, final TimeUnit unit) {
+        return mValue;
+    }
+}
@@ -18,38 +18,108 @@ package org.fuusio.api.plugin;
 import android.os.Handler;
 import android.os.Looper;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link PluginInvocationHandler} implements an {@link InvocationHandler} for delegating invocations
  * on an interface derived from {@link PluginInterface} to number of {@link Plugin}s implementing
- * the interface.
+ * the interface. The plug of a {@link PluginInvocationHandler} is either a generated
+ * {@link PluginDispatcher} or a dynamic {@link java.lang.reflect.Proxy}.
+ * <p>
+ * Invocations are dispatched on a thread determined by the {@link ThreadAffinity} of the plug.
+ * An invocation made on a thread other than the dispatch thread is executed asynchronously, so
+ * the invoked method has to return {@code void} or {@link Future}. The calling thread is never
+ * blocked waiting for the dispatch thread: an invocation of a method returning any other type
+ * made on a thread other than the dispatch thread fails with an {@link IllegalStateException}.
  */
 public class PluginInvocationHandler implements InvocationHandler {
 
+    protected static final Plugin[] NO_PLUGINS = new Plugin[0];
+
+    private static final long SERIAL_THREAD_KEEP_ALIVE_SECONDS = 30;
+
     protected final Looper mMainLooper;
-    protected final ArrayList<Plugin> mPlugins;
     protected final PluginBus mPluginBus;
     protected final Class<? extends PluginInterface> mPluginInterface;
 
-    protected Handler mHandler;
-    protected int mPluginCount;
-    protected Proxy mProxy;
+    /**
+     * An identity index from each plugged {@link Plugin} to its slot in {@link #mReferences}.
+     * Guarded by this {@link PluginInvocationHandler}.
+     */
+    private final HashMap<PluginReference, Integer> mPluginIndices;
+
+    /**
+     * The {@link PluginReference}s of the plugged {@link Plugin}s in plugging order, and
+     * the strongly referenced {@link Plugin}s in the same slots. A weakly plugged {@link Plugin}
+     * has a {@code null} strong slot. An unplugged {@link Plugin} leaves a {@code null} tombstone
+     * in its slots until the slots are compacted. Guarded by this {@link PluginInvocationHandler}.
+     */
+    private PluginReference[] mReferences;
+    private Plugin[] mSlots;
+    private int mSlotCount;
+    private int mWeakCount;
+
+    /**
+     * The plugged {@link Plugin}s as an immutable array, or {@code null} if the array has to be
+     * rebuilt after a plug or unplug. An invocation iterates a consistent snapshot without locking.
+     * If weakly plugged {@link Plugin}s exist, the snapshot is only weakly reachable via
+     * {@link #mWeakSnapshot} so that it does not prevent the {@link Plugin}s from being collected.
+     */
+    private volatile Plugin[] mSnapshot;
+    private volatile WeakReference<Plugin[]> mWeakSnapshot;
+
+    /**
+     * The number of invocations posted to an {@link Executor} and not yet dispatched.
+     */
+    private final AtomicInteger mQueuedCount;
+
+    /**
+     * The {@link PluginInvocationQueue} used for batching off the main thread invocations if
+     * the {@link PluginInterface} is annotated with {@link Plugin.Batched}. Otherwise {@code null}.
+     */
+    protected final PluginInvocationQueue mInvocationQueue;
+
+    protected volatile Handler mHandler;
+    protected volatile Executor mMainExecutor;
+    protected volatile Executor mSerialExecutor;
+    protected volatile ThreadAffinity mThreadAffinity;
+    protected PluginInterface mPlug;
 
     public PluginInvocationHandler(final Class<? extends PluginInterface> pluginInterface, final PluginBus pluginBus) {
         mMainLooper = Looper.getMainLooper();
         mPluginInterface = pluginInterface;
         mPluginBus = pluginBus;
-        mPlugins = new ArrayList<>();
-        mPluginCount = 0;
+        mPluginIndices = new HashMap<>();
+        mReferences = new PluginReference[0];
+        mSlots = NO_PLUGINS;
+        mSnapshot = NO_PLUGINS;
+        mQueuedCount = new AtomicInteger();
+
+        final Plugin.Batched batched = pluginInterface.getAnnotation(Plugin.Batched.class);
+        mInvocationQueue = (batched != null) ? new PluginInvocationQueue(this, batched) : null;
+
+        final Plugin.Affinity affinity = pluginInterface.getAnnotation(Plugin.Affinity.class);
+        mThreadAffinity = (affinity != null) ? affinity.value() : ThreadAffinity.MAIN;
     }
 
-    public final int getPluginCount() {
-        return mPluginCount;
+    public final synchronized int getPluginCount() {
+        return mPluginIndices.size();
     }
 
     public final Class<? extends PluginInterface> getPluginInterface() {
@@ -60,65 +130,533 @@ public class PluginInvocationHandler implements InvocationHandler {
     public final <T extends Plugin> List<T> getPlugins() {
         final List<T> plugins = new ArrayList<>();
 
-        for (final Plugin plugin : plugins) {
+        for (final Plugin plugin : getPluginSnapshot()) {
             plugins.add((T) plugin);
         }
         return plugins;
     }
 
-    public final Proxy getProxy() {
-        return mProxy;
+    /**
+     * Gets the current snapshot of the plugged {@link Plugin}s.
+     *
+     * @return An array of {@link Plugin}s. The returned array may not be modified.
+     */
+    protected final Plugin[] getPluginSnapshot() {
+        Plugin[] snapshot = mSnapshot;
+
+        if (snapshot == null) {
+            final WeakReference<Plugin[]> weakSnapshot = mWeakSnapshot;
+            snapshot = (weakSnapshot != null) ? weakSnapshot.get() : null;
+
+            if (snapshot == null) {
+                snapshot = buildSnapshot();
+            }
+        }
+        return snapshot;
     }
 
-    public void setProxy(final Proxy proxy) {
-        mProxy = proxy;
+    private synchronized Plugin[] buildSnapshot() {
+        Plugin[] snapshot = mSnapshot;
+
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        if (mWeakSnapshot != null) {
+            snapshot = mWeakSnapshot.get();
+
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+
+        do {
+            purge();
+            compact();
+            snapshot = (mSlotCount == 0) ? NO_PLUGINS : new Plugin[mSlotCount];
+
+            for (int i = 0; i < mSlotCount; i++) {
+                final Plugin plugin = mSlots[i];
+                snapshot[i] = (plugin != null) ? plugin : mReferences[i].get();
+            }
+            // A weakly plugged Plugin may have been collected after purge()
+        } while (mWeakCount > 0 && contains(snapshot, null));
+
+        if (mWeakCount == 0) {
+            mSnapshot = snapshot;
+        } else {
+            mWeakSnapshot = new WeakReference<>(snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Tests if off the main thread invocations are delivered in batches.
+     *
+     * @return A {@code boolean} value.
+     */
+    public final boolean isBatched() {
+        return mInvocationQueue != null;
+    }
+
+    /**
+     * Gets the {@link ThreadAffinity} used for dispatching invocations.
+     *
+     * @return A {@link ThreadAffinity}.
+     */
+    public final ThreadAffinity getThreadAffinity() {
+        return mThreadAffinity;
+    }
+
+    /**
+     * Sets the {@link ThreadAffinity} used for dispatching invocations. This overrides the
+     * affinity declared for the {@link PluginInterface} using annotation {@link Plugin.Affinity}.
+     *
+     * @param affinity A {@link ThreadAffinity}. May not be {@code null}.
+     */
+    public void setThreadAffinity(final ThreadAffinity affinity) {
+        if (affinity == null) {
+            throw new IllegalArgumentException("Parameter 'affinity' may not be null");
+        }
+        mThreadAffinity = affinity;
+    }
+
+    /**
+     * Gets the plug that delegates invocations to this {@link PluginInvocationHandler}.
+     *
+     * @return The plug as a {@link PluginInterface}.
+     */
+    public final PluginInterface getPlug() {
+        return mPlug;
+    }
+
+    public void setPlug(final PluginInterface plug) {
+        mPlug = plug;
+    }
+
+    /**
+     * Gets the plugged {@link Plugin}s for a {@link PluginDispatcher} if an invocation can be
+     * dispatched directly on the calling thread.
+     *
+     * @return An array of {@link Plugin}s or {@code null} if the invocation has to be delegated
+     * to method {@link PluginInvocationHandler#invoke(Object, Method, Object[])}. The returned
+     * array may not be modified. Invocations are always delegated while {@link PluginMetrics}
+     * are recorded.
+     */
+    public final Plugin[] getDirectPlugins() {
+        if (PluginBus.sMetrics == null && isDispatchThread(mThreadAffinity)) {
+            return getPluginSnapshot();
+        }
+        return null;
+    }
+
+    /**
+     * Tests if the current thread is a valid dispatch thread for the given {@link ThreadAffinity}.
+     *
+     * @param affinity A {@link ThreadAffinity}.
+     * @return A {@code boolean} value.
+     */
+    protected final boolean isDispatchThread(final ThreadAffinity affinity) {
+        switch (affinity) {
+            case CALLER:
+                return true;
+            case BACKGROUND:
+                return DispatchThread.isOwnedBy(mPluginBus);
+            case SERIAL:
+                return DispatchThread.isOwnedBy(this);
+            default:
+                return Looper.myLooper() == mMainLooper;
+        }
+    }
+
+    /**
+     * Gets the {@link Handler} used for posting invocations to the main thread.
+     *
+     * @return A {@link Handler}.
+     */
+    protected final Handler getHandler() {
+        Handler handler = mHandler;
+
+        if (handler == null) {
+            handler = new Handler(mMainLooper);
+            mHandler = handler;
+        }
+        return handler;
+    }
+
+    /**
+     * Gets the {@link Executor} used for dispatching invocations with the given
+     * {@link ThreadAffinity}.
+     *
+     * @param affinity A {@link ThreadAffinity}.
+     * @return An {@link Executor}.
+     */
+    protected final Executor getExecutor(final ThreadAffinity affinity) {
+        switch (affinity) {
+            case BACKGROUND:
+                return PluginBus.getBackgroundExecutor();
+            case SERIAL:
+                return getSerialExecutor();
+            default:
+                return getMainExecutor();
+        }
+    }
+
+    private Executor getMainExecutor() {
+        Executor executor = mMainExecutor;
+
+        if (executor == null) {
+            executor = new Executor() {
+                @Override
+                public void execute(final Runnable runnable) {
+                    getHandler().post(runnable);
+                }
+            };
+            mMainExecutor = executor;
+        }
+        return executor;
+    }
+
+    private Executor getSerialExecutor() {
+        Executor executor = mSerialExecutor;
+
+        if (executor == null) {
+            synchronized (this) {
+                executor = mSerialExecutor;
+
+                if (executor == null) {
+                    final String threadName = "PluginBus-" + mPluginInterface.getSimpleName();
+                    final ThreadFactory threadFactory = new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            return new DispatchThread(PluginInvocationHandler.this, runnable, threadName);
+                        }
+                    };
+
+                    final ThreadPoolExecutor serialExecutor = new ThreadPoolExecutor(1, 1,
+                            SERIAL_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+                    serialExecutor.allowCoreThreadTimeOut(true);
+                    executor = serialExecutor;
+                    mSerialExecutor = executor;
+                }
+            }
+        }
+        return executor;
     }
 
     @Override
-    public Object invoke(final Object proxy, final Method pMethod, final Object[] args)
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
             throws Throwable {
 
-        Object returnValue = null;
+        final ThreadAffinity affinity = mThreadAffinity;
+
+        if (isDispatchThread(affinity)) {
+            return dispatch(getPluginSnapshot(), method, args);
+        }
+
+        final Class<?> returnType = method.getReturnType();
+
+        if (returnType == void.class) {
+            if (affinity.isMain() && mInvocationQueue != null) {
+                mInvocationQueue.enqueue(getHandler(), method, args);
+                recordQueueDepth();
+            } else {
+                onQueued();
+                getExecutor(affinity).execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onDequeued();
+                        dispatch(getPluginSnapshot(), method, args);
+                    }
+                });
+            }
+            return null;
+        }
+
+        if (!Future.class.isAssignableFrom(returnType) || !returnType.isAssignableFrom(DispatchFuture.class)) {
+            throw new IllegalStateException("Method " + mPluginInterface.getName() + "#" + method.getName()
+                    + " is invoked off its dispatch thread and has to be declared to return " + Future.class.getName());
+        }
+
+        final FutureTask<Object> task = new FutureTask<>(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                onDequeued();
+                return dispatch(getPluginSnapshot(), method, args);
+            }
+        });
+
+        onQueued();
+        getExecutor(affinity).execute(task);
+        return new DispatchFuture(task);
+    }
+
+    private void onQueued() {
+        mQueuedCount.incrementAndGet();
+        recordQueueDepth();
+    }
+
+    private void onDequeued() {
+        mQueuedCount.decrementAndGet();
+        recordQueueDepth();
+    }
+
+    /**
+     * Gets the number of invocations waiting to be dispatched, including the invocations pending
+     * in the batched {@link PluginInvocationQueue}.
+     *
+     * @return An {@code int} value.
+     */
+    public final int getQueueDepth() {
+        final int depth = mQueuedCount.get();
+        return (mInvocationQueue != null) ? depth + mInvocationQueue.getPendingCount() : depth;
+    }
+
+    /**
+     * Records the current queue depth to the {@link PluginMetrics} of {@link PluginBus}. Invoked
+     * whenever an invocation is queued or taken from a queue, so that the recorded depth does not
+     * go stale once the queue drains.
+     */
+    final void recordQueueDepth() {
+        final PluginMetrics metrics = PluginBus.sMetrics;
+
+        if (metrics != null) {
+            metrics.onQueueDepth(mPluginInterface, getQueueDepth());
+        }
+    }
+
+    /**
+     * Invokes the given {@link Method} on the given {@link Plugin}s. The return values are combined
+     * according to the {@link Aggregation} declared for the method using {@link Plugin.Aggregate}.
+     * By default the value returned by the last invoked {@link Plugin} is returned.
+     *
+     * @param plugins A snapshot of the plugged {@link Plugin}s.
+     * @param method  The invoked {@link Method}.
+     * @param args    The arguments of the invocation.
+     * @return The aggregated return value.
+     */
+    @SuppressWarnings("unchecked")
+    protected Object dispatch(final Plugin[] plugins, final Method method, final Object[] args) {
+
+        final PluginMetrics metrics = PluginBus.sMetrics;
+
+        if (metrics != null) {
+            metrics.onInvocation(method);
+        }
 
-        if (Looper.myLooper() == mMainLooper) {
-            for (int i = mPluginCount - 1; i >= 0; i--) {
-                try {
-                    returnValue = pMethod.invoke(mPlugins.get(i), args);
-                } catch (final Exception e) {
-                    throw new RuntimeException("Failed to invoke method: " + pMethod.getName() + ". Reason: " + e.getMessage());
+        final PluginAggregation aggregation = PluginAggregation.forMethod(method);
+
+        switch (aggregation.getAggregation()) {
+            case FIRST_NON_NULL: {
+                for (int i = plugins.length - 1; i >= 0; i--) {
+                    final Object value = invoke(plugins[i], method, args, metrics);
+
+                    if (value != null) {
+                        return value;
+                    }
                 }
+                return null;
             }
-        } else {
-            if (mHandler == null) {
-                mHandler = new Handler(mMainLooper);
+            case LIST: {
+                final ArrayList<Object> values = new ArrayList<>();
+
+                for (int i = plugins.length - 1; i >= 0; i--) {
+                    final Collection<Object> value = (Collection<Object>) invoke(plugins[i], method, args, metrics);
+
+                    if (value != null) {
+                        values.addAll(value);
+                    }
+                }
+                return values;
             }
-            mHandler.post(new Runnable() {
-                @Override
-                public void run() {
-                    for (int i = mPluginCount - 1; i >= 0; i--) {
-                        try {
-                            pMethod.invoke(mPlugins.get(i), args);
-                        } catch (final Exception e) {
-                            throw new RuntimeException("Failed to invoke method: " + pMethod.getName() + ". Reason: " + e.getMessage());
-                        }
+            case ANY_TRUE: {
+                for (int i = plugins.length - 1; i >= 0; i--) {
+                    if (Boolean.TRUE.equals(invoke(plugins[i], method, args, metrics))) {
+                        return Boolean.TRUE;
                     }
                 }
-            });
+                return Boolean.FALSE;
+            }
+            case ALL_TRUE: {
+                for (int i = plugins.length - 1; i >= 0; i--) {
+                    if (!Boolean.TRUE.equals(invoke(plugins[i], method, args, metrics))) {
+                        return Boolean.FALSE;
+                    }
+                }
+                return Boolean.TRUE;
+            }
+            case REDUCE: {
+                final PluginResultReducer<Object> reducer = aggregation.getReducer();
+                Object accumulated = null;
+
+                for (int i = plugins.length - 1; i >= 0; i--) {
+                    final Object value = invoke(plugins[i], method, args, metrics);
+                    accumulated = (i == plugins.length - 1) ? value : reducer.reduce(accumulated, value);
+                }
+                return accumulated;
+            }
+            default: {
+                Object returnValue = null;
+
+                for (int i = plugins.length - 1; i >= 0; i--) {
+                    returnValue = invoke(plugins[i], method, args, metrics);
+                }
+                return returnValue;
+            }
+        }
+    }
+
+    private static Object invoke(final Plugin plugin, final Method method, final Object[] args, final PluginMetrics metrics) {
+
+        final long startTime = (metrics != null) ? System.nanoTime() : 0;
+
+        try {
+            return method.invoke(plugin, args);
+        } catch (final Exception e) {
+            throw new RuntimeException("Failed to invoke method: " + method.getName() + ". Reason: " + e.getMessage());
+        } finally {
+            if (metrics != null) {
+                metrics.onPluginInvoked(plugin, System.nanoTime() - startTime);
+            }
+        }
+    }
+
+    private static boolean contains(final Plugin[] plugins, final Plugin plugin) {
+        for (final Plugin candidate : plugins) {
+            if (candidate == plugin) {
+                return true;
+            }
         }
-        return returnValue;
+        return false;
     }
 
+    /**
+     * Plugs the given {@link Plugin}. The {@link Plugin} is identified by identity, not by
+     * {@link Object#equals(Object)}.
+     *
+     * @param plugin A {@link Plugin}.
+     */
     public void plug(final Plugin plugin) {
-        if (!mPlugins.contains(plugin)) {
-            mPlugins.add(plugin);
-            mPluginCount = mPlugins.size();
+        plug(new PluginReference(plugin), false);
+    }
+
+    /**
+     * Plugs the {@link Plugin} referred by the given {@link PluginReference}.
+     *
+     * @param reference A {@link PluginReference}.
+     * @param weak      A {@code boolean} value specifying if the {@link Plugin} is referenced
+     *                  only weakly. A weakly plugged {@link Plugin} is unplugged automatically
+     *                  when it is garbage collected.
+     */
+    synchronized void plug(final PluginReference reference, final boolean weak) {
+
+        final Plugin plugin = reference.get();
+
+        if (plugin == null || mPluginIndices.containsKey(reference)) {
+            return;
+        }
+
+        if (mSlotCount == mSlots.length) {
+            purge();
+
+            if (mPluginIndices.size() < mSlotCount / 2) {
+                compact();
+            } else {
+                final int capacity = Math.max(4, mSlotCount * 2);
+                mReferences = Arrays.copyOf(mReferences, capacity);
+                mSlots = Arrays.copyOf(mSlots, capacity);
+            }
+        }
+
+        mPluginIndices.put(reference, mSlotCount);
+        mReferences[mSlotCount] = reference;
+
+        if (weak) {
+            mWeakCount++;
+        } else {
+            mSlots[mSlotCount] = plugin;
+        }
+
+        mSlotCount++;
+        invalidateSnapshot();
+    }
+
+    /**
+     * Unplugs the given {@link Plugin}. The {@link Plugin} is identified by identity, not by
+     * {@link Object#equals(Object)}.
+     *
+     * @param plugin A {@link Plugin}.
+     */
+    public synchronized void unplug(final Plugin plugin) {
+
+        final Integer index = mPluginIndices.remove(new PluginReference(plugin));
+
+        if (index != null) {
+            remove(index);
+        }
+    }
+
+    private void remove(final int index) {
+        if (mSlots[index] == null) {
+            mWeakCount--;
+        }
+
+        mReferences[index] = null;
+        mSlots[index] = null;
+        invalidateSnapshot();
+    }
+
+    private void invalidateSnapshot() {
+        mSnapshot = null;
+        mWeakSnapshot = null;
+    }
+
+    /**
+     * Removes the weakly plugged {@link Plugin}s that have been garbage collected.
+     */
+    private void purge() {
+
+        if (mWeakCount == 0) {
+            return;
+        }
+
+        for (int i = 0; i < mSlotCount; i++) {
+            final PluginReference reference = mReferences[i];
+
+            if (reference != null && mSlots[i] == null && reference.get() == null) {
+                mPluginIndices.remove(reference);
+                remove(i);
+            }
         }
     }
 
-    public void unplug(final Plugin plugin) {
-        if (mPlugins.contains(plugin)) {
-            mPlugins.remove(plugin);
-            mPluginCount = mPlugins.size();
+    /**
+     * Removes the tombstones left by unplugged {@link Plugin}s from the slots while preserving
+     * the plugging order.
+     */
+    private void compact() {
+
+        if (mPluginIndices.size() == mSlotCount) {
+            return;
+        }
+
+        int count = 0;
+
+        for (int i = 0; i < mSlotCount; i++) {
+            final PluginReference reference = mReferences[i];
+
+            if (reference != null) {
+                if (count != i) {
+                    mReferences[count] = reference;
+                    mSlots[count] = mSlots[i];
+                    mPluginIndices.put(reference, count);
+                }
+                count++;
+            }
         }
+
+        Arrays.fill(mReferences, count, mSlotCount, null);
+        Arrays.fill(mSlots, count, mSlotCount, null);
+        mSlotCount = count;
     }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import android.os.Handler;
+
+import java.lang.reflect.Method;
+
+/**
+ * {@link PluginInvocationQueue} collects invocations made off the main thread on the plug of
+ * a {@link Plugin.Batched} {@link PluginInterface} and dispatches them to the plugged {@link Plugin}s
+ * in a single main thread message. The queue is double buffered: invocations are enqueued into
+ * the pending buffer while the previously swapped buffer is dispatched, so the buffers and
+ * the queue itself as the posted {@link Runnable} are reused without allocations.
+ */
+final class PluginInvocationQueue implements Runnable {
+
+    private final PluginInvocationHandler mInvocationHandler;
+    private final boolean mCoalesce;
+
+    private Method[] mPendingMethods;
+    private Object[][] mPendingArgs;
+    private int mPendingCount;
+
+    private Method[] mDispatchedMethods;
+    private Object[][] mDispatchedArgs;
+
+    private boolean mScheduled;
+
+    PluginInvocationQueue(final PluginInvocationHandler handler, final Plugin.Batched batched) {
+        final int capacity = Math.max(1, batched.capacity());
+
+        mInvocationHandler = handler;
+        mCoalesce = batched.coalesce();
+        mPendingMethods = new Method[capacity];
+        mPendingArgs = new Object[capacity][];
+        mDispatchedMethods = new Method[capacity];
+        mDispatchedArgs = new Object[capacity][];
+    }
+
+    /**
+     * Gets the number of invocations waiting to be dispatched.
+     *
+     * @return An {@code int} value.
+     */
+    public synchronized int getPendingCount() {
+        return mPendingCount;
+    }
+
+    /**
+     * Enqueues an invocation of the given {@link Method} and schedules the queue to be dispatched
+     * on the main thread if it is not already scheduled.
+     *
+     * @param handler The main thread {@link Handler}.
+     * @param method  The invoked {@link Method}.
+     * @param args    The arguments of the invocation. May be {@code null}.
+     */
+    public void enqueue(final Handler handler, final Method method, final Object[] args) {
+
+        final boolean schedule;
+
+        synchronized (this) {
+            if (!mCoalesce || !replace(method, args)) {
+                if (mPendingCount == mPendingMethods.length) {
+                    grow();
+                }
+
+                mPendingMethods[mPendingCount] = method;
+                mPendingArgs[mPendingCount] = args;
+                mPendingCount++;
+            }
+
+            schedule = !mScheduled;
+            mScheduled = true;
+        }
+
+        if (schedule) {
+            handler.post(this);
+        }
+    }
+
+    /**
+     * Replaces the arguments of a pending invocation of the given {@link Method}. The replaced
+     * invocation keeps its position in the queue.
+     *
+     * @param method The invoked {@link Method}.
+     * @param args   The arguments of the invocation.
+     * @return A {@code boolean} value indicating if a pending invocation was replaced.
+     */
+    private boolean replace(final Method method, final Object[] args) {
+        for (int i = mPendingCount - 1; i >= 0; i--) {
+            if (mPendingMethods[i] == method) {
+                mPendingArgs[i] = args;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void grow() {
+        final int capacity = mPendingMethods.length * 2;
+        final Method[] methods = new Method[capacity];
+        final Object[][] args = new Object[capacity][];
+
+        System.arraycopy(mPendingMethods, 0, methods, 0, mPendingCount);
+        System.arraycopy(mPendingArgs, 0, args, 0, mPendingCount);
+        mPendingMethods = methods;
+        mPendingArgs = args;
+    }
+
+    @Override
+    public void run() {
+
+        final Method[] methods;
+        final Object[][] args;
+        final int count;
+
+        synchronized (this) {
+            methods = mPendingMethods;
+            args = mPendingArgs;
+            count = mPendingCount;
+
+            if (mDispatchedMethods.length < methods.length) {
+                mDispatchedMethods = new Method[methods.length];
+                mDispatchedArgs = new Object[methods.length][];
+            }
+
+            mPendingMethods = mDispatchedMethods;
+            mPendingArgs = mDispatchedArgs;
+            mPendingCount = 0;
+            mDispatchedMethods = methods;
+            mDispatchedArgs = args;
+            mScheduled = false;
+        }
+
+        mInvocationHandler.recordQueueDepth();
+
+        try {
+            for (int i = 0; i < count; i++) {
+                mInvocationHandler.dispatch(mInvocationHandler.getPluginSnapshot(), methods[i], args[i]);
+            }
+        } finally {
+            for (int i = 0; i < count; i++) {
+                methods[i] = null;
+                args[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import org.fuusio.api.util.LifecycleState;
+
+/**
+ * {@link PluginLeak} describes a {@link Plugin} that is still plugged to {@link PluginBus}
+ * although its {@link LifecycleState} indicates that it should have been unplugged. Instances
+ * are created by {@link PluginBus#getLeakReport(long)}.
+ */
+public final class PluginLeak {
+
+    private final String mPluginClassName;
+    private final LifecycleState mLifecycleState;
+    private final long mPluggedMillis;
+    private final boolean mWeak;
+
+    PluginLeak(final String pluginClassName, final LifecycleState lifecycleState, final long pluggedMillis, final boolean weak) {
+        mPluginClassName = pluginClassName;
+        mLifecycleState = lifecycleState;
+        mPluggedMillis = pluggedMillis;
+        mWeak = weak;
+    }
+
+    public String getPluginClassName() {
+        return mPluginClassName;
+    }
+
+    public LifecycleState getLifecycleState() {
+        return mLifecycleState;
+    }
+
+    /**
+     * Gets the time the {@link Plugin} has been plugged.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getPluggedMillis() {
+        return mPluggedMillis;
+    }
+
+    public boolean isWeak() {
+        return mWeak;
+    }
+
+    @Override
+    public String toString() {
+        return mPluginClassName + " plugged for " + mPluggedMillis + " ms in state " + mLifecycleState + (mWeak ? " (weak)" : "");
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link PluginMetadata} is a utility class used internally by {@link PluginBus} to cache
+ * the reflective metadata of a {@link Plugin} class: the {@link PlugDescriptor}s of fields
+ * annotated with {@link Plugin.Plug}, and the implemented {@link PluginInterface}s. The metadata
+ * is collected once per class so that plugging and unplugging do not walk the class hierarchy.
+ */
+final class PluginMetadata {
+
+    private static final PlugDescriptor[] NO_DESCRIPTORS = new PlugDescriptor[0];
+
+    private final PlugDescriptor[] mPlugDescriptors;
+    private final Class<? extends PluginInterface>[] mPluginInterfaces;
+
+    @SuppressWarnings("unchecked")
+    PluginMetadata(final Class<?> pluginClass) {
+        final List<PlugDescriptor> descriptors = new ArrayList<>();
+        final List<Class<? extends PluginInterface>> pluginInterfaces = new ArrayList<>();
+
+        collectPlugFields(pluginClass, descriptors);
+        collectPluginInterfaces(pluginClass, pluginInterfaces);
+
+        mPlugDescriptors = descriptors.isEmpty() ? NO_DESCRIPTORS : descriptors.toArray(new PlugDescriptor[descriptors.size()]);
+        mPluginInterfaces = pluginInterfaces.toArray(new Class[pluginInterfaces.size()]);
+    }
+
+    /**
+     * Gets the {@link PlugDescriptor}s of the fields annotated with {@link Plugin.Plug}. The fields
+     * of the returned descriptors are already made accessible.
+     *
+     * @return An array of {@link PlugDescriptor}s. The returned array may not be modified.
+     */
+    public PlugDescriptor[] getPlugDescriptors() {
+        return mPlugDescriptors;
+    }
+
+    /**
+     * Gets the implemented {@link PluginInterface}s.
+     *
+     * @return An array of {@link Class}es. The returned array may not be modified.
+     */
+    public Class<? extends PluginInterface>[] getPluginInterfaces() {
+        return mPluginInterfaces;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectPlugFields(final Class<?> plugClass, final List<PlugDescriptor> descriptors) {
+
+        if (plugClass != null && Plugin.class.isAssignableFrom(plugClass)) {
+            final Field[] fields = plugClass.getDeclaredFields();
+
+            for (final Field field : fields) {
+                final Plugin.Plug plug = field.getAnnotation(Plugin.Plug.class);
+
+                if (plug != null) {
+                    final String plugName = plug.name();
+                    final Class<? extends PluginInterface> fieldType = (Class<? extends PluginInterface>) field.getType();
+                    final PlugDescriptor descriptor = new PlugDescriptor(field, plugName, fieldType);
+                    descriptor.setCreated(plug.create());
+                    field.setAccessible(true);
+                    descriptors.add(descriptor);
+                }
+            }
+
+            collectPlugFields(plugClass.getSuperclass(), descriptors);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectPluginInterfaces(final Class<?> pluginClass, final List<Class<? extends PluginInterface>> pluginInterfaces) {
+
+        final Class<?>[] implementedInterfaces = pluginClass.getInterfaces();
+
+        for (final Class<?> implementedInterface : implementedInterfaces) {
+            if (PluginInterface.class.isAssignableFrom(implementedInterface)) {
+                if (!pluginInterfaces.contains(implementedInterface)) {
+                    pluginInterfaces.add((Class<? extends PluginInterface>) implementedInterface);
+                }
+            }
+        }
+
+        final Class<?> superClass = pluginClass.getSuperclass();
+
+        if (superClass != null && !Object.class.equals(superClass)) {
+            collectPluginInterfaces(superClass, pluginInterfaces);
+        }
+    }
+}
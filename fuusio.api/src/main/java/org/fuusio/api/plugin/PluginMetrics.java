@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import org.fuusio.api.util.L;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link PluginMetrics} records dispatch metrics of {@link PluginBus} when it is set using
+ * {@link PluginBus#setMetrics(PluginMetrics)}: invocation counts per {@link PluginInterface}
+ * method, latency histograms per {@link Plugin} class, and the depth of queued deliveries per
+ * {@link PluginInterface}. When no {@link PluginMetrics} is set, the only overhead in dispatching
+ * is a single volatile read.
+ * <p>
+ * Recording metrics disables the direct path of generated {@link PluginDispatcher}s, so
+ * the metrics should be enabled only for diagnostics.
+ */
+public class PluginMetrics {
+
+    /**
+     * The number of buckets in a latency histogram. Bucket {@code i} counts dispatches that took
+     * less than {@code 2^i} nanoseconds, and the last bucket counts all longer dispatches.
+     */
+    public static final int HISTOGRAM_BUCKET_COUNT = 40;
+
+    private static final int DEFAULT_SLOWEST_PLUGIN_COUNT = 10;
+
+    private final ConcurrentMap<Method, AtomicLong> mInvocationCounts;
+    private final ConcurrentMap<Class<?>, PluginLatency> mPluginLatencies;
+    private final ConcurrentMap<Class<?>, QueueDepth> mQueueDepths;
+
+    public PluginMetrics() {
+        mInvocationCounts = new ConcurrentHashMap<>();
+        mPluginLatencies = new ConcurrentHashMap<>();
+        mQueueDepths = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Records an invocation of the given {@link Method} of a {@link PluginInterface}.
+     *
+     * @param method The invoked {@link Method}.
+     */
+    public void onInvocation(final Method method) {
+        AtomicLong count = mInvocationCounts.get(method);
+
+        if (count == null) {
+            final AtomicLong newCount = new AtomicLong();
+            count = mInvocationCounts.putIfAbsent(method, newCount);
+
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Records the time taken by the given {@link Plugin} to handle a dispatched invocation.
+     *
+     * @param plugin The invoked {@link Plugin}.
+     * @param nanos  The elapsed time in nanoseconds.
+     */
+    public void onPluginInvoked(final Plugin plugin, final long nanos) {
+        final Class<?> pluginClass = plugin.getClass();
+        PluginLatency latency = mPluginLatencies.get(pluginClass);
+
+        if (latency == null) {
+            final PluginLatency newLatency = new PluginLatency(pluginClass.getName());
+            latency = mPluginLatencies.putIfAbsent(pluginClass, newLatency);
+
+            if (latency == null) {
+                latency = newLatency;
+            }
+        }
+        latency.record(nanos);
+    }
+
+    /**
+     * Records the current number of invocations queued for delivery to the given
+     * {@link PluginInterface}.
+     *
+     * @param pluginInterface A {@link Class} specifying the {@link PluginInterface}.
+     * @param depth           The number of queued invocations.
+     */
+    public void onQueueDepth(final Class<? extends PluginInterface> pluginInterface, final int depth) {
+        QueueDepth queueDepth = mQueueDepths.get(pluginInterface);
+
+        if (queueDepth == null) {
+            final QueueDepth newQueueDepth = new QueueDepth();
+            queueDepth = mQueueDepths.putIfAbsent(pluginInterface, newQueueDepth);
+
+            if (queueDepth == null) {
+                queueDepth = newQueueDepth;
+            }
+        }
+        queueDepth.record(depth);
+    }
+
+    /**
+     * Clears all the recorded metrics.
+     */
+    public void reset() {
+        mInvocationCounts.clear();
+        mPluginLatencies.clear();
+        mQueueDepths.clear();
+    }
+
+    /**
+     * Takes an immutable {@link Snapshot} of the recorded metrics.
+     *
+     * @return A {@link Snapshot}.
+     */
+    public Snapshot getSnapshot() {
+        final List<InvocationCount> invocationCounts = new ArrayList<>();
+        final List<LatencyStats> latencies = new ArrayList<>();
+        final List<QueueDepthStats> queueDepths = new ArrayList<>();
+
+        for (final Map.Entry<Method, AtomicLong> entry : mInvocationCounts.entrySet()) {
+            final Method method = entry.getKey();
+            final String name = method.getDeclaringClass().getName() + "#" + method.getName();
+            invocationCounts.add(new InvocationCount(name, entry.getValue().get()));
+        }
+
+        for (final PluginLatency latency : mPluginLatencies.values()) {
+            latencies.add(latency.getStats());
+        }
+
+        for (final Map.Entry<Class<?>, QueueDepth> entry : mQueueDepths.entrySet()) {
+            final QueueDepth depth = entry.getValue();
+            queueDepths.add(new QueueDepthStats(entry.getKey().getName(), depth.mCurrent.get(), depth.mMax.get()));
+        }
+
+        return new Snapshot(invocationCounts, latencies, queueDepths);
+    }
+
+    /**
+     * Writes a {@link Snapshot} of the recorded metrics to the log using {@link L}. The output is
+     * also written to a {@link org.fuusio.api.util.LogFile} if one is set to {@link L}.
+     */
+    public void dump() {
+        final Snapshot snapshot = getSnapshot();
+
+        for (final InvocationCount count : snapshot.getInvocationCounts()) {
+            L.d(this, "dump", "Invocations: " + count.getMethodName() + " = " + count.getCount());
+        }
+
+        for (final QueueDepthStats depth : snapshot.getQueueDepths()) {
+            L.d(this, "dump", "Queue depth: " + depth.getPluginInterfaceName() + " current = " + depth.getCurrent() + ", max = " + depth.getMax());
+        }
+
+        for (final LatencyStats latency : snapshot.getSlowestPlugins(DEFAULT_SLOWEST_PLUGIN_COUNT)) {
+            L.d(this, "dump", "Latency: " + latency.getPluginClassName() + " count = " + latency.getCount()
+                    + ", mean = " + latency.getMeanNanos() + " ns, max = " + latency.getMaxNanos() + " ns");
+        }
+    }
+
+    private static int getBucket(final long nanos) {
+        final int bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, nanos));
+        return Math.min(bucket, HISTOGRAM_BUCKET_COUNT - 1);
+    }
+
+    private static final class PluginLatency {
+
+        private final String mPluginClassName;
+        private final AtomicLong mCount;
+        private final AtomicLong mTotalNanos;
+        private final AtomicLong mMaxNanos;
+        private final AtomicLongArray mHistogram;
+
+        PluginLatency(final String pluginClassName) {
+            mPluginClassName = pluginClassName;
+            mCount = new AtomicLong();
+            mTotalNanos = new AtomicLong();
+            mMaxNanos = new AtomicLong();
+            mHistogram = new AtomicLongArray(HISTOGRAM_BUCKET_COUNT);
+        }
+
+        void record(final long nanos) {
+            mCount.incrementAndGet();
+            mTotalNanos.addAndGet(nanos);
+            mHistogram.incrementAndGet(getBucket(nanos));
+
+            long max = mMaxNanos.get();
+
+            while (nanos > max && !mMaxNanos.compareAndSet(max, nanos)) {
+                max = mMaxNanos.get();
+            }
+        }
+
+        LatencyStats getStats() {
+            final long[] histogram = new long[HISTOGRAM_BUCKET_COUNT];
+
+            for (int i = 0; i < HISTOGRAM_BUCKET_COUNT; i++) {
+                histogram[i] = mHistogram.get(i);
+            }
+            return new LatencyStats(mPluginClassName, mCount.get(), mTotalNanos.get(), mMaxNanos.get(), histogram);
+        }
+    }
+
+    private static final class QueueDepth {
+
+        private final AtomicLong mCurrent = new AtomicLong();
+        private final AtomicLong mMax = new AtomicLong();
+
+        void record(final int depth) {
+            mCurrent.set(depth);
+
+            long max = mMax.get();
+
+            while (depth > max && !mMax.compareAndSet(max, depth)) {
+                max = mMax.get();
+            }
+        }
+    }
+
+    /**
+     * {@link Snapshot} is an immutable view to the metrics recorded by {@link PluginMetrics}.
+     */
+    public static final class Snapshot {
+
+        private final List<InvocationCount> mInvocationCounts;
+        private final List<LatencyStats> mLatencies;
+        private final List<QueueDepthStats> mQueueDepths;
+
+        Snapshot(final List<InvocationCount> invocationCounts, final List<LatencyStats> latencies, final List<QueueDepthStats> queueDepths) {
+            mInvocationCounts = Collections.unmodifiableList(invocationCounts);
+            mLatencies = Collections.unmodifiableList(latencies);
+            mQueueDepths = Collections.unmodifiableList(queueDepths);
+        }
+
+        public List<InvocationCount> getInvocationCounts() {
+            return mInvocationCounts;
+        }
+
+        public List<LatencyStats> getLatencies() {
+            return mLatencies;
+        }
+
+        public List<QueueDepthStats> getQueueDepths() {
+            return mQueueDepths;
+        }
+
+        /**
+         * Gets the invocation count of the specified method.
+         *
+         * @param pluginInterface A {@link Class} specifying the {@link PluginInterface}.
+         * @param methodName      The name of the method.
+         * @return The invocation count as a {@code long} value.
+         */
+        public long getInvocationCount(final Class<? extends PluginInterface> pluginInterface, final String methodName) {
+            final String name = pluginInterface.getName() + "#" + methodName;
+            long count = 0;
+
+            for (final InvocationCount invocationCount : mInvocationCounts) {
+                if (invocationCount.getMethodName().equals(name)) {
+                    count += invocationCount.getCount();
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Gets the {@link LatencyStats} of the {@link Plugin} classes with the highest maximum latency.
+         *
+         * @param count The maximum number of returned {@link LatencyStats}.
+         * @return A {@link List} of {@link LatencyStats} in descending order of maximum latency.
+         */
+        public List<LatencyStats> getSlowestPlugins(final int count) {
+            final List<LatencyStats> latencies = new ArrayList<>(mLatencies);
+
+            Collections.sort(latencies, new Comparator<LatencyStats>() {
+                @Override
+                public int compare(final LatencyStats stats1, final LatencyStats stats2) {
+                    return (stats1.getMaxNanos() < stats2.getMaxNanos()) ? 1 : ((stats1.getMaxNanos() == stats2.getMaxNanos()) ? 0 : -1);
+                }
+            });
+
+            return latencies.subList(0, Math.min(count, latencies.size()));
+        }
+    }
+
+    public static final class InvocationCount {
+
+        private final String mMethodName;
+        private final long mCount;
+
+        InvocationCount(final String methodName, final long count) {
+            mMethodName = methodName;
+            mCount = count;
+        }
+
+        public String getMethodName() {
+            return mMethodName;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+    }
+
+    public static final class LatencyStats {
+
+        private final String mPluginClassName;
+        private final long mCount;
+        private final long mTotalNanos;
+        private final long mMaxNanos;
+        private final long[] mHistogram;
+
+        LatencyStats(final String pluginClassName, final long count, final long totalNanos, final long maxNanos, final long[] histogram) {
+            mPluginClassName = pluginClassName;
+            mCount = count;
+            mTotalNanos = totalNanos;
+            mMaxNanos = maxNanos;
+            mHistogram = histogram;
+        }
+
+        public String getPluginClassName() {
+            return mPluginClassName;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getTotalNanos() {
+            return mTotalNanos;
+        }
+
+        public long getMeanNanos() {
+            return (mCount > 0) ? mTotalNanos / mCount : 0;
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        /**
+         * Gets the latency histogram. See {@link PluginMetrics#HISTOGRAM_BUCKET_COUNT}.
+         *
+         * @return A copy of the histogram as an array of {@code long} values.
+         */
+        public long[] getHistogram() {
+            return mHistogram.clone();
+        }
+    }
+
+    public static final class QueueDepthStats {
+
+        private final String mPluginInterfaceName;
+        private final long mCurrent;
+        private final long mMax;
+
+        QueueDepthStats(final String pluginInterfaceName, final long current, final long max) {
+            mPluginInterfaceName = pluginInterfaceName;
+            mCurrent = current;
+            mMax = max;
+        }
+
+        public String getPluginInterfaceName() {
+            return mPluginInterfaceName;
+        }
+
+        public long getCurrent() {
+            return mCurrent;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * {@link PluginReference} is a {@link WeakReference} to a {@link Plugin} used internally by
+ * {@link PluginBus} and {@link PluginInvocationHandler} as an identity key for plugged
+ * {@link Plugin}s. Two {@link PluginReference}s are equal if they refer to the same
+ * {@link Plugin} instance. A cleared {@link PluginReference} is equal only to itself.
+ */
+final class PluginReference extends WeakReference<Plugin> {
+
+    private final int mHashCode;
+
+    PluginReference(final Plugin plugin) {
+        super(plugin);
+        mHashCode = System.identityHashCode(plugin);
+    }
+
+    PluginReference(final Plugin plugin, final ReferenceQueue<Plugin> queue) {
+        super(plugin, queue);
+        mHashCode = System.identityHashCode(plugin);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (object == this) {
+            return true;
+        } else if (object instanceof PluginReference) {
+            final Plugin plugin = get();
+            return plugin != null && plugin == ((PluginReference) object).get();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+import org.fuusio.api.mvp.Presenter;
+import org.fuusio.api.mvp.View;
+import org.fuusio.api.mvp.ViewState;
+import org.fuusio.api.util.LifecycleState;
+
+/**
+ * {@link PluginRegistration} is a utility class used internally by {@link PluginBus} to record
+ * a plugged {@link Plugin}. A weakly plugged {@link Plugin} is referred only via its
+ * {@link PluginReference}.
+ */
+final class PluginRegistration {
+
+    private final PluginReference mReference;
+    private final Plugin mPlugin;
+    private final PluginMetadata mMetadata;
+    private final String mPluginClassName;
+    private final long mPlugTime;
+
+    PluginRegistration(final PluginReference reference, final boolean weak, final PluginMetadata metadata) {
+        final Plugin plugin = reference.get();
+
+        mReference = reference;
+        mPlugin = weak ? null : plugin;
+        mMetadata = metadata;
+        mPluginClassName = plugin.getClass().getName();
+        mPlugTime = System.currentTimeMillis();
+    }
+
+    public PluginReference getReference() {
+        return mReference;
+    }
+
+    public PluginMetadata getMetadata() {
+        return mMetadata;
+    }
+
+    public String getPluginClassName() {
+        return mPluginClassName;
+    }
+
+    public long getPlugTime() {
+        return mPlugTime;
+    }
+
+    public boolean isWeak() {
+        return mPlugin == null;
+    }
+
+    /**
+     * Gets the {@link LifecycleState} of the given {@link Plugin} if it is a {@link View} or
+     * a {@link Presenter}.
+     *
+     * @param plugin A {@link Plugin}.
+     * @return A {@link LifecycleState} or {@code null} if the state is not known.
+     */
+    static LifecycleState getLifecycleState(final Plugin plugin) {
+        View view = null;
+
+        if (plugin instanceof View) {
+            view = (View) plugin;
+        } else if (plugin instanceof Presenter) {
+            view = ((Presenter) plugin).getView();
+        }
+
+        if (view != null) {
+            final ViewState state = view.getState();
+            return (state != null) ? state.getLifecycleState() : null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+/**
+ * {@link PluginResultReducer} defines an interface for combining the return values of
+ * the plugged {@link Plugin}s when a {@link PluginInterface} method is annotated with
+ * {@link Plugin.Aggregate} using {@link Aggregation#REDUCE}. An implementation must have
+ * a public no-argument constructor and it must be stateless.
+ *
+ * @param <T> The return type of the aggregated method.
+ */
+public interface PluginResultReducer<T> {
+
+    /**
+     * Combines the given values.
+     *
+     * @param accumulated The value accumulated from the previously invoked plugins.
+     * @param value       The value returned by the currently invoked plugin.
+     * @return The combined value.
+     */
+    T reduce(T accumulated, T value);
+}
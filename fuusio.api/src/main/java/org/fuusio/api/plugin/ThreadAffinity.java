@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.api.plugin;
+
+/**
+ * {@link ThreadAffinity} defines on which thread invocations on a plug are dispatched to
+ * the plugged {@link Plugin}s. The affinity of a {@link PluginInterface} is declared using
+ * annotation {@link Plugin.Affinity} and it can be overridden per plug using
+ * {@link PluginBus#setThreadAffinity(Class, String, ThreadAffinity)}.
+ */
+public enum ThreadAffinity {
+
+    /**
+     * Invocations are dispatched on the main thread. This is the default affinity.
+     */
+    MAIN,
+
+    /**
+     * Invocations are dispatched directly on the calling thread.
+     */
+    CALLER,
+
+    /**
+     * Invocations are dispatched on the shared background {@link java.util.concurrent.Executor}
+     * of {@link PluginBus}.
+     */
+    BACKGROUND,
+
+    /**
+     * Invocations are dispatched in order on a dedicated background thread of the plug.
+     */
+    SERIAL;
+
+    public final boolean isMain() {
+        return (this == MAIN);
+    }
+
+    public final boolean isCaller() {
+        return (this == CALLER);
+    }
+
+    public final boolean isBackground() {
+        return (this == BACKGROUND);
+    }
+
+    public final boolean isSerial() {
+        return (this == SERIAL);
+    }
+}
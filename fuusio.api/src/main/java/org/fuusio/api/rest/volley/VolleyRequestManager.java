@@ -11,6 +11,7 @@ import com.android.volley.toolbox.ImageLoader;
 import com.android.volley.toolbox.Volley;
 
 import org.fuusio.api.dependency.D;
+import org.fuusio.api.dependency.Lazy;
 import org.fuusio.api.graphics.BitmapManager;
 import org.fuusio.api.rest.RequestManager;
 import org.fuusio.api.rest.RestRequest;
@@ -21,7 +22,7 @@ import org.fuusio.api.rest.RestRequest;
  */
 public class VolleyRequestManager implements RequestManager<VolleyRestRequest<AbstractRequest>> {
 
-    private BitmapManager mBitmapManager;
+    private Lazy<BitmapManager> mBitmapManager;
     private ImageLoader.ImageCache mImageCache;
     private ImageLoader mImageLoader;
     private RequestQueue mRequestQueue;
@@ -40,17 +41,17 @@ public class VolleyRequestManager implements RequestManager<VolleyRestRequest<Ab
 
     protected ImageLoader.ImageCache createImageCache() {
 
-        mBitmapManager = D.get(BitmapManager.class);
+        mBitmapManager = D.lazy(BitmapManager.class);
 
         return new ImageLoader.ImageCache() {
             @Override
             public Bitmap getBitmap(final String pKey) {
-                return mBitmapManager.getBitmap(pKey);
+                return mBitmapManager.get().getBitmap(pKey);
             }
 
             @Override
             public void putBitmap(final String pKey, final Bitmap pBitmap) {
-                mBitmapManager.addBitmap(pKey, pBitmap);
+                mBitmapManager.get().addBitmap(pKey, pBitmap);
             }
         };
     }
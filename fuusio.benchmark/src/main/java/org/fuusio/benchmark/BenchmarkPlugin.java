@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.benchmark;
+
+import org.fuusio.api.plugin.PluginComponent;
+
+/**
+ * {@link BenchmarkPlugin} is a {@link PluginComponent} that consumes the values dispatched
+ * via {@link BenchmarkPluginInterface}.
+ */
+public class BenchmarkPlugin extends PluginComponent implements BenchmarkPluginInterface {
+
+    private int mValue;
+
+    public final int getValue() {
+        return mValue;
+    }
+
+    @Override
+    public void onValue(final int value) {
+        mValue += value;
+    }
+}
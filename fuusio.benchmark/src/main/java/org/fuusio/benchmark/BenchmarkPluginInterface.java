@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.benchmark;
+
+import org.fuusio.api.plugin.Plugin;
+import org.fuusio.api.plugin.PluginInterface;
+
+/**
+ * {@link BenchmarkPluginInterface} is the {@link PluginInterface} dispatched by
+ * {@link PluginBusBenchmark}.
+ */
+@Plugin.Dispatched
+public interface BenchmarkPluginInterface extends PluginInterface {
+
+    void onValue(int value);
+}
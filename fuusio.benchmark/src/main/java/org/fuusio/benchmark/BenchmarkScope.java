@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.benchmark;
+
+import org.fuusio.api.dependency.DependencyScope;
+
+/**
+ * {@link BenchmarkScope} is a {@link DependencyScope} that provides a single instance of
+ * the given dependency type. It is used for building the nested scope chains measured by
+ * {@link DependencyBenchmark}.
+ */
+public class BenchmarkScope extends DependencyScope {
+
+    private final Class<?> mProvidedType;
+
+    public BenchmarkScope(final Class<?> providedType, final DependencyScope parent) {
+        mProvidedType = providedType;
+        setParentScope(parent);
+    }
+
+    @Override
+    protected <T> T getDependency() {
+
+        if (mProvidedType != null && type(mProvidedType)) {
+            try {
+                return dependency(mProvidedType.newInstance());
+            } catch (final Exception e) {
+                throw new IllegalStateException("Failed to instantiate: " + mProvidedType.getName(), e);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.benchmark;
+
+import android.app.Application;
+
+import org.fuusio.api.dependency.ApplicationScope;
+import org.fuusio.api.dependency.D;
+import org.fuusio.api.dependency.DependencyScope;
+import org.fuusio.api.dependency.DependencyScopeOwner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DependencyBenchmark} measures {@link D#get(Class)} through a chain of nested
+ * {@link DependencyScope}s. The root of the chain provides {@link RootService}, the active
+ * leaf scope provides {@link LeafService}, and {@link Application} is resolved by
+ * the {@link ApplicationScope}. The leaf scope holds a varying number of dependants, which
+ * should not affect the cost of a lookup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DependencyBenchmark {
+
+    public static class RootService {
+    }
+
+    public static class LeafService {
+    }
+
+    private static class BenchmarkApplicationScope extends ApplicationScope<Application> {
+
+        BenchmarkApplicationScope(final Application application) {
+            super(application);
+        }
+    }
+
+    private static class ScopeOwner implements DependencyScopeOwner {
+
+        private final DependencyScope mScope;
+
+        ScopeOwner(final DependencyScope scope) {
+            mScope = scope;
+        }
+
+        @Override
+        public String getScopeId() {
+            return DependencyBenchmark.class.getName();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T extends DependencyScope> T getDependencyScope() {
+            return (T) mScope;
+        }
+    }
+
+    /**
+     * The number of {@link DependencyScope}s in the chain including the root and the leaf scope.
+     */
+    @Param({"2", "4", "8"})
+    public int mScopeDepth;
+
+    /**
+     * The number of dependants added to the leaf scope.
+     */
+    @Param({"0", "100000"})
+    public int mDependantCount;
+
+    private ScopeOwner mOwner;
+
+    @Setup
+    public void setUp() {
+        new BenchmarkApplicationScope(new Application());
+
+        DependencyScope scope = new BenchmarkScope(RootService.class, null);
+
+        for (int i = 2; i < mScopeDepth; i++) {
+            scope = new BenchmarkScope(null, scope);
+        }
+
+        scope = new BenchmarkScope(LeafService.class, scope);
+
+        for (int i = 0; i < mDependantCount; i++) {
+            scope.addDependant(new Object());
+        }
+
+        mOwner = new ScopeOwner(scope);
+        D.activateScope(mOwner, scope);
+    }
+
+    @TearDown
+    public void tearDown() {
+        D.deactivateScope(mOwner);
+    }
+
+    @Benchmark
+    public LeafService getFromActiveScope() {
+        return D.get(LeafService.class);
+    }
+
+    @Benchmark
+    public RootService getFromRootScope() {
+        return D.get(RootService.class);
+    }
+
+    @Benchmark
+    public Application getFromApplicationScope() {
+        return D.get(Application.class);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.benchmark;
+
+import org.fuusio.api.fsm.EventQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EventQueueBenchmark} measures the throughput of posting events from concurrent producer
+ * threads to a {@link ToggleStateMachine} via an {@link EventQueue} that is drained by a single
+ * consumer thread. A producer yields while the queue is full, so the measured throughput is
+ * bounded by the rate at which the consumer dispatches the events.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(2)
+@State(Scope.Benchmark)
+public class EventQueueBenchmark {
+
+    private static final EventQueue.Event<ToggleStateMachine> TOGGLE = new EventQueue.Event<ToggleStateMachine>() {
+        @Override
+        public void dispatch(final ToggleStateMachine stateMachine) {
+            stateMachine.toggle();
+        }
+    };
+
+    private ToggleStateMachine mStateMachine;
+    private ExecutorService mExecutor;
+    private EventQueue<ToggleStateMachine> mEventQueue;
+
+    @Setup
+    public void setUp() {
+        mStateMachine = new ToggleStateMachine();
+        mStateMachine.compile(ToggleStateMachine.OffState.class, ToggleStateMachine.OnState.class);
+        mStateMachine.start();
+
+        mExecutor = Executors.newSingleThreadExecutor();
+        mEventQueue = new EventQueue<>(mStateMachine, mExecutor, EventQueue.DEFAULT_CAPACITY);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        mStateMachine.stop();
+    }
+
+    @Benchmark
+    public void post() {
+        while (!mEventQueue.offer(TOGGLE)) {
+            Thread.yield();
+        }
+    }
+}
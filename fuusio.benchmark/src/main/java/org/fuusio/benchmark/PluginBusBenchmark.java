@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.benchmark;
+
+import org.fuusio.api.plugin.PluginBus;
+import org.fuusio.api.plugin.PluginMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PluginBusBenchmark} measures the cost of dispatching a single call via a plug to
+ * a varying number of plugged {@link BenchmarkPlugin}s. With {@code metrics} enabled the
+ * generated dispatcher falls back to the reflective invocation path of the plug.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PluginBusBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int mPluginCount;
+
+    @Param({"false", "true"})
+    public boolean mMetrics;
+
+    private BenchmarkPlugin[] mPlugins;
+    private BenchmarkPluginInterface mPlug;
+    private int mValue;
+
+    @Setup
+    public void setUp() {
+        PluginBus.setMetrics(mMetrics ? new PluginMetrics() : null);
+
+        mPlugins = new BenchmarkPlugin[mPluginCount];
+
+        for (int i = 0; i < mPluginCount; i++) {
+            mPlugins[i] = new BenchmarkPlugin();
+            PluginBus.plug(mPlugins[i]);
+        }
+
+        mPlug = PluginBus.getPlug(BenchmarkPluginInterface.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (final BenchmarkPlugin plugin : mPlugins) {
+            PluginBus.unplug(plugin);
+        }
+
+        PluginBus.setMetrics(null);
+    }
+
+    @Benchmark
+    public void dispatch() {
+        mPlug.onValue(mValue++);
+    }
+
+    @Benchmark
+    public void directCall() {
+        final int value = mValue++;
+
+        for (final BenchmarkPlugin plugin : mPlugins) {
+            plugin.onValue(value);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.benchmark;
+
+import org.fuusio.api.plugin.PluginBus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PluginPlugBenchmark} measures the cost of plugging a varying number of
+ * {@link BenchmarkPlugin}s to {@link PluginBus} and unplugging them again in plugging order.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PluginPlugBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int mPluginCount;
+
+    private BenchmarkPlugin[] mPlugins;
+
+    @Setup
+    public void setUp() {
+        mPlugins = new BenchmarkPlugin[mPluginCount];
+
+        for (int i = 0; i < mPluginCount; i++) {
+            mPlugins[i] = new BenchmarkPlugin();
+        }
+    }
+
+    @Benchmark
+    public void plugAndUnplug() {
+        for (final BenchmarkPlugin plugin : mPlugins) {
+            PluginBus.plug(plugin);
+        }
+
+        for (final BenchmarkPlugin plugin : mPlugins) {
+            PluginBus.unplug(plugin);
+        }
+    }
+}
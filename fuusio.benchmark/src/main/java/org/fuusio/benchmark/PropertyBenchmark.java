@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.benchmark;
+
+import org.fuusio.api.model.ModelObject;
+import org.fuusio.api.model.Property;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PropertyBenchmark} measures getting and setting a value of a {@link ModelObject} via
+ * its {@link Property} compared to invoking the accessor methods directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PropertyBenchmark {
+
+    public static class BenchmarkModel extends ModelObject {
+
+        private Integer mCount = 0;
+
+        public Integer getCount() {
+            return mCount;
+        }
+
+        public void setCount(final Integer count) {
+            mCount = count;
+        }
+    }
+
+    private BenchmarkModel mModel;
+    private Property mProperty;
+    private int mValue;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        mModel = new BenchmarkModel();
+        mProperty = new Property("Count");
+        mProperty.setGetter(BenchmarkModel.class.getMethod("getCount"));
+        mProperty.setSetter(BenchmarkModel.class.getMethod("setCount", Integer.class));
+    }
+
+    @Benchmark
+    public Integer getProperty() {
+        return mProperty.get(mModel);
+    }
+
+    @Benchmark
+    public boolean setProperty() {
+        return mProperty.set(mModel, mValue++);
+    }
+
+    @Benchmark
+    public Integer getDirect() {
+        return mModel.getCount();
+    }
+
+    @Benchmark
+    public void setDirect() {
+        mModel.setCount(mValue++);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.benchmark;
+
+import org.fuusio.api.fsm.StateMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StateMachineBenchmark} measures a {@link StateMachine} transition driven by an event.
+ * Each invocation of {@link #toggle()} performs either a transition into a composite state and
+ * its initial substate or a transition out of a substate and its composite super state.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateMachineBenchmark {
+
+    private ToggleStateMachine mStateMachine;
+    private ToggleStateMachine mCompiledStateMachine;
+
+    @Setup
+    public void setUp() {
+        mStateMachine = new ToggleStateMachine();
+        mStateMachine.start();
+
+        mCompiledStateMachine = new ToggleStateMachine();
+        mCompiledStateMachine.compile(ToggleStateMachine.OffState.class, ToggleStateMachine.OnState.class);
+        mCompiledStateMachine.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mStateMachine.stop();
+        mCompiledStateMachine.stop();
+    }
+
+    @Benchmark
+    public Object toggle() {
+        mStateMachine.toggle();
+        return mStateMachine.getCurrentState();
+    }
+
+    @Benchmark
+    public Object toggleCompiled() {
+        mCompiledStateMachine.toggle();
+        return mCompiledStateMachine.getCurrentState();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.benchmark;
+
+import org.fuusio.api.fsm.StateMachine;
+
+/**
+ * {@link ToggleStateMachine} is a minimal hierarchical {@link StateMachine} used by
+ * {@link StateMachineBenchmark}. Event {@link #toggle()} switches between {@link OffState} and
+ * {@link OnState}. Entering {@link OnState} also enters its initial substate {@link ActiveState}.
+ */
+public class ToggleStateMachine extends StateMachine<ToggleStateMachine, Object> {
+
+    public ToggleStateMachine() {
+        super(OffState.class);
+    }
+
+    protected ToggleStateMachine(final Class<? extends ToggleStateMachine> superStateClass, final Class<? extends ToggleStateMachine> initialStateClass) {
+        super(superStateClass, initialStateClass);
+    }
+
+    public void toggle() {
+        if (isStateMachine()) {
+            mCurrentState.toggle();
+        } else if (mSuperState != getStateMachine()) {
+            mSuperState.toggle();
+        } else {
+            onError(this, Error.ERROR_UNHANDLED_EVENT, "toggle");
+        }
+    }
+
+    public static class OffState extends ToggleStateMachine {
+
+        public OffState() {
+            super(ToggleStateMachine.class, null);
+        }
+
+        @Override
+        public void toggle() {
+            toState(OnState.class);
+        }
+    }
+
+    public static class OnState extends ToggleStateMachine {
+
+        public OnState() {
+            super(ToggleStateMachine.class, ActiveState.class);
+        }
+
+        @Override
+        public void toggle() {
+            toState(OffState.class);
+        }
+    }
+
+    public static class ActiveState extends ToggleStateMachine {
+
+        public ActiveState() {
+            super(OnState.class, null);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+/**
+ * A JVM stub of {@code android.os.Handler} for running benchmarks without the Android runtime.
+ * Posted {@link Runnable}s are run immediately on the posting thread.
+ */
+public class Handler {
+
+    public interface Callback {
+        boolean handleMessage(Message message);
+    }
+
+    private final Looper mLooper;
+
+    public Handler() {
+        this(Looper.myLooper());
+    }
+
+    public Handler(final Looper looper) {
+        mLooper = looper;
+    }
+
+    public Handler(final Looper looper, final Callback callback) {
+        mLooper = looper;
+    }
+
+    public final Looper getLooper() {
+        return mLooper;
+    }
+
+    public void handleMessage(final Message message) {
+    }
+
+    public void dispatchMessage(final Message message) {
+        handleMessage(message);
+    }
+
+    public final boolean post(final Runnable runnable) {
+        runnable.run();
+        return true;
+    }
+
+    public final boolean postDelayed(final Runnable runnable, final long delayMillis) {
+        return post(runnable);
+    }
+
+    public final void removeCallbacks(final Runnable runnable) {
+    }
+
+    public final Message obtainMessage(final int what) {
+        final Message message = Message.obtain();
+        message.what = what;
+        message.setTarget(this);
+        return message;
+    }
+
+    public final boolean sendMessage(final Message message) {
+        dispatchMessage(message);
+        return true;
+    }
+
+    public final boolean sendEmptyMessage(final int what) {
+        return sendMessage(obtainMessage(what));
+    }
+
+    public final void removeMessages(final int what) {
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A JVM stub of {@code android.support.v4.util.LruCache} for running benchmarks without
+ * the Android support library.
+ */
+public class LruCache<K, V> {
+
+    private final LinkedHashMap<K, V> mEntries;
+    private final int mMaxSize;
+
+    public LruCache(final int maxSize) {
+        mMaxSize = maxSize;
+        mEntries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+                return size() > mMaxSize;
+            }
+        };
+    }
+
+    public final synchronized V get(final K key) {
+        return mEntries.get(key);
+    }
+
+    public final synchronized V put(final K key, final V value) {
+        return mEntries.put(key, value);
+    }
+
+    public final synchronized V remove(final K key) {
+        return mEntries.remove(key);
+    }
+
+    public final synchronized void evictAll() {
+        mEntries.clear();
+    }
+
+    public final synchronized int size() {
+        return mEntries.size();
+    }
+
+    public final synchronized int maxSize() {
+        return mMaxSize;
+    }
+
+    protected int sizeOf(final K key, final V value) {
+        return 1;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * {@link DependencyResolverProcessor} is an annotation processor that generates a dependency
+ * resolver class for each {@code org.fuusio.api.dependency.DependencyScope} that declares
+ * methods annotated with {@code DependencyScope.Provides}. The return type of each provider
+ * method and its supertypes are assigned type indices in the declaration order of the methods,
+ * so that a requested type is resolved by the first provider method whose return type is
+ * assignable to it. A generated resolver selects the provider method using a switch on the type
+ * index instead of testing the requested type against each provided type.
+ */
+@SupportedAnnotationTypes(DependencyResolverProcessor.CLASS_PROVIDES)
+public class DependencyResolverProcessor extends AbstractProcessor {
+
+    private static final String PACKAGE_DEPENDENCY = "org.fuusio.api.dependency";
+    private static final String CLASS_DEPENDENCY_SCOPE = PACKAGE_DEPENDENCY + ".DependencyScope";
+    static final String CLASS_PROVIDES = CLASS_DEPENDENCY_SCOPE + ".Provides";
+    private static final String POSTFIX_RESOLVER = "$$DependencyResolver";
+
+    private final Set<String> mGeneratedResolvers = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+
+        final TypeElement provides = processingEnv.getElementUtils().getTypeElement(CLASS_PROVIDES);
+
+        if (provides == null) {
+            return false;
+        }
+
+        final Map<TypeElement, List<ExecutableElement>> scopes = new LinkedHashMap<>();
+
+        for (final Element element : roundEnv.getElementsAnnotatedWith(provides)) {
+            if (element.getKind() == ElementKind.METHOD && isValidProvider((ExecutableElement) element)) {
+                final TypeElement scope = (TypeElement) element.getEnclosingElement();
+                List<ExecutableElement> methods = scopes.get(scope);
+
+                if (methods == null) {
+                    methods = new ArrayList<>();
+                    scopes.put(scope, methods);
+                }
+                methods.add((ExecutableElement) element);
+            }
+        }
+
+        for (final Map.Entry<TypeElement, List<ExecutableElement>> entry : scopes.entrySet()) {
+            final TypeElement scope = entry.getKey();
+            final String resolverName = getResolverName(scope);
+
+            if (isValidScope(scope) && mGeneratedResolvers.add(resolverName)) {
+                writeResolver(scope, resolverName, getProviderMethods(scope, entry.getValue()));
+            }
+        }
+        return true;
+    }
+
+    private boolean isValidProvider(final ExecutableElement method) {
+
+        final Set<Modifier> modifiers = method.getModifiers();
+        String error = null;
+
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+            error = "A provider method may not be private or static";
+        } else if (!method.getParameters().isEmpty()) {
+            error = "A provider method may not have parameters";
+        } else if (method.getReturnType().getKind() != TypeKind.DECLARED) {
+            error = "A provider method has to return a class or an interface type";
+        }
+
+        if (error != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, error, method);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isValidScope(final TypeElement scope) {
+
+        final Types types = processingEnv.getTypeUtils();
+        final TypeElement dependencyScope = processingEnv.getElementUtils().getTypeElement(CLASS_DEPENDENCY_SCOPE);
+        String error = null;
+
+        if (scope.getKind() != ElementKind.CLASS || !types.isSubtype(types.erasure(scope.asType()), types.erasure(dependencyScope.asType()))) {
+            error = "Provider methods can be declared only in a DependencyScope";
+        } else {
+            Element enclosingElement = scope;
+
+            while (enclosingElement.getKind() != ElementKind.PACKAGE) {
+                if (enclosingElement.getModifiers().contains(Modifier.PRIVATE)) {
+                    error = "A DependencyScope declaring provider methods may not be private";
+                }
+                enclosingElement = enclosingElement.getEnclosingElement();
+            }
+        }
+
+        if (error != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, error, scope);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the provider methods of the given scope in their declaration order. The methods
+     * returned by {@link RoundEnvironment#getElementsAnnotatedWith(TypeElement)} are not
+     * guaranteed to be in declaration order.
+     */
+    private List<ExecutableElement> getProviderMethods(final TypeElement scope, final List<ExecutableElement> methods) {
+
+        final List<ExecutableElement> orderedMethods = new ArrayList<>();
+
+        for (final Element element : scope.getEnclosedElements()) {
+            if (methods.contains(element)) {
+                orderedMethods.add((ExecutableElement) element);
+            }
+        }
+        return orderedMethods;
+    }
+
+    private String getPackageName(final TypeElement element) {
+        final PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(element);
+        return packageElement.getQualifiedName().toString();
+    }
+
+    private String getResolverName(final TypeElement element) {
+        final String packageName = getPackageName(element);
+        final String binaryName = processingEnv.getElementUtils().getBinaryName(element).toString();
+        final String simpleBinaryName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        return simpleBinaryName + POSTFIX_RESOLVER;
+    }
+
+    private void writeResolver(final TypeElement scope, final String resolverName, final List<ExecutableElement> methods) {
+
+        final String packageName = getPackageName(scope);
+        final String qualifiedName = packageName.isEmpty() ? resolverName : packageName + "." + resolverName;
+
+        try {
+            final JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, scope);
+            final Writer writer = file.openWriter();
+
+            try {
+                writer.write(generateResolver(scope, packageName, resolverName, methods));
+            } finally {
+                writer.close();
+            }
+        } catch (final IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write dependency resolver: " + e.getMessage(), scope);
+        }
+    }
+
+    private String generateResolver(final TypeElement scope, final String packageName, final String resolverName, final List<ExecutableElement> methods) {
+
+        final String scopeName = getErasure(scope.asType());
+        final Map<String, Integer> typeIndices = new LinkedHashMap<>();
+        final List<List<Integer>> providedIndices = new ArrayList<>();
+
+        for (final ExecutableElement method : methods) {
+            final List<Integer> indices = new ArrayList<>();
+
+            for (final String type : getProvidedTypes(method.getReturnType(), packageName)) {
+                if (!typeIndices.containsKey(type)) {
+                    typeIndices.put(type, typeIndices.size());
+                    indices.add(typeIndices.get(type));
+                }
+            }
+            if (indices.isEmpty()) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "All the types provided by the method are provided by preceding provider methods", method);
+            }
+            providedIndices.add(indices);
+        }
+
+        final StringBuilder source = new StringBuilder();
+
+        source.append("// Generated code from ").append(getClass().getName()).append(". Do not modify!\n");
+
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+
+        source.append("import ").append(PACKAGE_DEPENDENCY).append(".DependencyResolver;\n\n");
+
+        source.append("@SuppressWarnings(\"rawtypes\")\n");
+        source.append("public final class ").append(resolverName).append(" extends DependencyResolver<").append(scopeName).append("> {\n\n");
+
+        source.append("    public ").append(resolverName).append("() {\n");
+        source.append("        super(");
+
+        int index = 0;
+
+        for (final String type : typeIndices.keySet()) {
+            source.append(index++ > 0 ? ",\n                " : "").append(type).append(".class");
+        }
+        source.append(");\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    protected Object provide(final ").append(scopeName).append(" scope, final int typeIndex) {\n");
+        source.append("        switch (typeIndex) {\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            final List<Integer> indices = providedIndices.get(i);
+
+            if (!indices.isEmpty()) {
+                for (final Integer typeIndex : indices) {
+                    source.append("            case ").append(typeIndex).append(":\n");
+                }
+                source.append("                return scope.").append(methods.get(i).getSimpleName()).append("();\n");
+            }
+        }
+
+        source.append("            default:\n");
+        source.append("                return null;\n");
+        source.append("        }\n");
+        source.append("    }\n");
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * Gets the given provided type and all its supertypes, except {@link Object}, that are
+     * accessible from the given package.
+     */
+    private Set<String> getProvidedTypes(final TypeMirror type, final String packageName) {
+        final Set<String> providedTypes = new LinkedHashSet<>();
+        collectProvidedTypes(type, packageName, providedTypes);
+        return providedTypes;
+    }
+
+    private void collectProvidedTypes(final TypeMirror type, final String packageName, final Set<String> providedTypes) {
+
+        if (type.getKind() != TypeKind.DECLARED) {
+            return;
+        }
+
+        final TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+
+        if (element.getQualifiedName().contentEquals(Object.class.getName())) {
+            return;
+        }
+
+        if (isAccessible(element, packageName)) {
+            providedTypes.add(getErasure(type));
+        }
+
+        for (final TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+            collectProvidedTypes(supertype, packageName, providedTypes);
+        }
+    }
+
+    private boolean isAccessible(final TypeElement element, final String packageName) {
+
+        final boolean samePackage = getPackageName(element).equals(packageName);
+        Element enclosingElement = element;
+
+        while (enclosingElement.getKind() != ElementKind.PACKAGE) {
+            final Set<Modifier> modifiers = enclosingElement.getModifiers();
+
+            if (modifiers.contains(Modifier.PRIVATE) || (!samePackage && !modifiers.contains(Modifier.PUBLIC))) {
+                return false;
+            }
+            enclosingElement = enclosingElement.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private String getErasure(final TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+}
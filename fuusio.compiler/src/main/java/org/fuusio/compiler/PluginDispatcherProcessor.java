@@ -0,0 +1,537 @@
+/*
+ * Copyright (C) 2014 - 2015 Marko Salmela, http://fuusio.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.fuusio.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * {@link PluginDispatcherProcessor} is an annotation processor that generates a dispatcher class
+ * for each interface extending {@code org.fuusio.api.plugin.PluginInterface} and annotated with
+ * {@code org.fuusio.api.plugin.Plugin.Dispatched}. A generated dispatcher invokes the plugged
+ * plugins directly without reflection and without boxing the arguments into an
+ * {@code Object[]}. Interfaces that can not be handled, such as generic interfaces or interfaces
+ * with generic methods, are skipped and {@code PluginBus} falls back to a dynamic proxy for them. An error is reported for a method returning a value other than
+ * a {@code Future} in an interface whose thread affinity always dispatches on another thread.
+ */
+@SupportedAnnotationTypes({"org.fuusio.api.plugin.Plugin.Dispatched", "org.fuusio.api.plugin.Plugin.Affinity"})
+public class PluginDispatcherProcessor extends AbstractProcessor {
+
+    private static final String PACKAGE_PLUGIN = "org.fuusio.api.plugin";
+    private static final String CLASS_PLUGIN_INTERFACE = PACKAGE_PLUGIN + ".PluginInterface";
+    private static final String CLASS_DISPATCHED = PACKAGE_PLUGIN + ".Plugin.Dispatched";
+    private static final String CLASS_AGGREGATE = PACKAGE_PLUGIN + ".Plugin.Aggregate";
+    private static final String CLASS_AFFINITY = PACKAGE_PLUGIN + ".Plugin.Affinity";
+    private static final String CLASS_FUTURE = "java.util.concurrent.Future";
+    private static final String POSTFIX_DISPATCHER = "$$PluginDispatcher";
+
+    private static final String AGGREGATION_LAST = "LAST";
+    private static final String AGGREGATION_FIRST_NON_NULL = "FIRST_NON_NULL";
+    private static final String AGGREGATION_LIST = "LIST";
+    private static final String AGGREGATION_ANY_TRUE = "ANY_TRUE";
+    private static final String AGGREGATION_ALL_TRUE = "ALL_TRUE";
+
+    private static final String AFFINITY_MAIN = "MAIN";
+    private static final String AFFINITY_BACKGROUND = "BACKGROUND";
+    private static final String AFFINITY_SERIAL = "SERIAL";
+
+    /**
+     * Names of the methods declared by {@code PluginDispatcher} that a generated dispatcher can
+     * not implement.
+     */
+    private static final Set<String> RESERVED_METHOD_NAMES = new HashSet<>(Arrays.asList("getInvocationHandler", "getMethod", "getPlugins", "invoke"));
+
+    private final Set<String> mCheckedInterfaces = new HashSet<>();
+    private final Set<String> mGeneratedDispatchers = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+
+        final Elements elements = processingEnv.getElementUtils();
+        final TypeElement pluginInterface = elements.getTypeElement(CLASS_PLUGIN_INTERFACE);
+
+        if (pluginInterface == null) {
+            return false;
+        }
+
+        final TypeElement dispatchedAnnotation = elements.getTypeElement(CLASS_DISPATCHED);
+        final TypeElement affinityAnnotation = elements.getTypeElement(CLASS_AFFINITY);
+
+        for (final Element element : roundEnv.getElementsAnnotatedWith(affinityAnnotation)) {
+            if (isPluginInterface(element, pluginInterface) && mCheckedInterfaces.add(getDispatcherName((TypeElement) element))) {
+                checkReturnTypes((TypeElement) element);
+            }
+        }
+
+        for (final Element element : roundEnv.getElementsAnnotatedWith(dispatchedAnnotation)) {
+            if (!isPluginInterface(element, pluginInterface)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Only an interface extending "
+                        + CLASS_PLUGIN_INTERFACE + " can be annotated with " + CLASS_DISPATCHED, element);
+                continue;
+            }
+
+            final TypeElement typeElement = (TypeElement) element;
+            final String dispatcherName = getDispatcherName(typeElement);
+
+            if (mGeneratedDispatchers.add(dispatcherName) && isSupported(typeElement)) {
+                writeDispatcher(typeElement, dispatcherName);
+            }
+        }
+        return false;
+    }
+
+    private boolean isPluginInterface(final Element element, final TypeElement pluginInterface) {
+
+        if (element.getKind() != ElementKind.INTERFACE || element.equals(pluginInterface)) {
+            return false;
+        }
+
+        final Types types = processingEnv.getTypeUtils();
+        return types.isAssignable(types.erasure(element.asType()), pluginInterface.asType());
+    }
+
+    private boolean isSupported(final TypeElement element) {
+
+        if (!element.getTypeParameters().isEmpty()) {
+            return false;
+        }
+
+        Element enclosingElement = element;
+
+        while (enclosingElement.getKind() != ElementKind.PACKAGE) {
+            if (enclosingElement.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            enclosingElement = enclosingElement.getEnclosingElement();
+        }
+
+        for (final ExecutableElement method : getMethods(element)) {
+            if (!method.getTypeParameters().isEmpty() || RESERVED_METHOD_NAMES.contains(method.getSimpleName().toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports an error for each method of the given interface that returns a value other than
+     * a {@link java.util.concurrent.Future} although the {@code ThreadAffinity} declared for
+     * the interface dispatches invocations always on another thread than the calling thread.
+     * An invocation of such a method could only return its value by blocking the calling thread.
+     */
+    private void checkReturnTypes(final TypeElement element) {
+
+        final String affinity = getAffinity(element);
+
+        if (!AFFINITY_BACKGROUND.equals(affinity) && !AFFINITY_SERIAL.equals(affinity)) {
+            return;
+        }
+
+        final Types types = processingEnv.getTypeUtils();
+        final TypeMirror futureType = types.erasure(processingEnv.getElementUtils().getTypeElement(CLASS_FUTURE).asType());
+
+        for (final ExecutableElement method : getMethods(element)) {
+            final TypeMirror returnType = method.getReturnType();
+
+            if (returnType.getKind() != TypeKind.VOID && !types.isSameType(types.erasure(returnType), futureType)) {
+                final Element reportedElement = method.getEnclosingElement().equals(element) ? method : element;
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Method " + method.getSimpleName()
+                        + " of a plug with affinity " + affinity + " has to return void or " + CLASS_FUTURE, reportedElement);
+            }
+        }
+    }
+
+    private List<ExecutableElement> getMethods(final TypeElement element) {
+        final Elements elements = processingEnv.getElementUtils();
+        final List<ExecutableElement> methods = new ArrayList<>();
+
+        for (final ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(element))) {
+            final Element enclosingElement = method.getEnclosingElement();
+
+            if (enclosingElement.getKind() == ElementKind.INTERFACE
+                    && method.getModifiers().contains(Modifier.ABSTRACT)) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    private String getPackageName(final TypeElement element) {
+        final PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(element);
+        return packageElement.getQualifiedName().toString();
+    }
+
+    private String getDispatcherName(final TypeElement element) {
+        final String packageName = getPackageName(element);
+        final String binaryName = processingEnv.getElementUtils().getBinaryName(element).toString();
+        final String simpleBinaryName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        return simpleBinaryName + POSTFIX_DISPATCHER;
+    }
+
+    private void writeDispatcher(final TypeElement element, final String dispatcherName) {
+
+        final String packageName = getPackageName(element);
+        final String qualifiedName = packageName.isEmpty() ? dispatcherName : packageName + "." + dispatcherName;
+
+        try {
+            final JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, element);
+            final Writer writer = file.openWriter();
+
+            try {
+                writer.write(generateDispatcher(element, packageName, dispatcherName));
+            } finally {
+                writer.close();
+            }
+        } catch (final IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write plugin dispatcher: " + e.getMessage(), element);
+        }
+    }
+
+    private String generateDispatcher(final TypeElement element, final String packageName, final String dispatcherName) {
+
+        final String interfaceName = element.getQualifiedName().toString();
+        final List<ExecutableElement> methods = getMethods(element);
+        final StringBuilder source = new StringBuilder();
+
+        source.append("// Generated code from ").append(getClass().getName()).append(". Do not modify!\n");
+
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+
+        source.append("import java.lang.reflect.Method;\n\n");
+        source.append("import ").append(PACKAGE_PLUGIN).append(".Plugin;\n");
+        source.append("import ").append(PACKAGE_PLUGIN).append(".PluginDispatcher;\n");
+        source.append("import ").append(PACKAGE_PLUGIN).append(".PluginInvocationHandler;\n\n");
+
+        source.append("public final class ").append(dispatcherName).append(" extends PluginDispatcher implements ").append(interfaceName).append(" {\n\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            final ExecutableElement method = methods.get(i);
+            source.append("    private static final Method METHOD_").append(i).append(" = getMethod(").append(interfaceName).append(".class, \"").append(method.getSimpleName()).append('"');
+
+            for (final VariableElement parameter : method.getParameters()) {
+                source.append(", ").append(getErasure(parameter.asType())).append(".class");
+            }
+            source.append(");\n");
+        }
+
+        source.append("\n    public ").append(dispatcherName).append("(final PluginInvocationHandler handler) {\n");
+        source.append("        super(handler);\n");
+        source.append("    }\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            source.append('\n');
+            generateMethod(source, element, methods.get(i), i);
+        }
+
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private void generateMethod(final StringBuilder source, final TypeElement element, final ExecutableElement method, final int index) {
+
+        // Resolve the signature as a member of the interface so that type variables of generic
+        // superinterfaces are replaced with their actual type arguments
+        final ExecutableType methodType = (ExecutableType) processingEnv.getTypeUtils().asMemberOf((DeclaredType) element.asType(), method);
+        final String interfaceName = element.getQualifiedName().toString();
+        final TypeMirror returnType = methodType.getReturnType();
+        final boolean isVoid = returnType.getKind() == TypeKind.VOID;
+        final List<? extends TypeMirror> parameters = methodType.getParameterTypes();
+        final String methodName = method.getSimpleName().toString();
+
+        if (!isVoid && !returnType.getKind().isPrimitive()) {
+            source.append("    @SuppressWarnings(\"unchecked\")\n");
+        }
+
+        source.append("    @Override\n");
+        source.append("    public ").append(returnType).append(' ').append(methodName).append('(');
+
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                source.append(", ");
+            }
+
+            final TypeMirror parameterType = parameters.get(i);
+
+            if (method.isVarArgs() && i == parameters.size() - 1) {
+                final String arrayType = parameterType.toString();
+                source.append("final ").append(arrayType.substring(0, arrayType.length() - 2)).append("... arg").append(i);
+            } else {
+                source.append("final ").append(parameterType).append(" arg").append(i);
+            }
+        }
+        source.append(')');
+
+        final List<? extends TypeMirror> thrownTypes = methodType.getThrownTypes();
+
+        for (int i = 0; i < thrownTypes.size(); i++) {
+            source.append(i == 0 ? " throws " : ", ").append(thrownTypes.get(i));
+        }
+
+        final String arguments = getArguments(parameters.size());
+        final String aggregation = isVoid ? null : getAggregation(method);
+        final boolean isDirect = isVoid || isDirectAggregation(method, returnType, aggregation);
+
+        source.append(" {\n");
+
+        if (isDirect) {
+            source.append("        final Plugin[] plugins = getPlugins();\n\n");
+        }
+
+        if (!isVoid) {
+            final String invocation = "((" + interfaceName + ") plugins[i])." + methodName + '(' + arguments + ')';
+
+            if (isDirect) {
+                source.append("        if (plugins != null) {\n");
+
+                if (AGGREGATION_FIRST_NON_NULL.equals(aggregation)) {
+                    source.append("            for (int i = plugins.length - 1; i >= 0; i--) {\n");
+                    source.append("                final ").append(returnType).append(" value = ").append(invocation).append(";\n\n");
+                    source.append("                if (value != null) {\n");
+                    source.append("                    return value;\n");
+                    source.append("                }\n");
+                    source.append("            }\n");
+                    source.append("            return null;\n");
+                } else if (AGGREGATION_LIST.equals(aggregation)) {
+                    source.append("            final java.util.ArrayList<Object> values = new java.util.ArrayList<>();\n\n");
+                    source.append("            for (int i = plugins.length - 1; i >= 0; i--) {\n");
+                    source.append("                final ").append(returnType).append(" value = ").append(invocation).append(";\n\n");
+                    source.append("                if (value != null) {\n");
+                    source.append("                    values.addAll(value);\n");
+                    source.append("                }\n");
+                    source.append("            }\n");
+                    source.append("            return (").append(returnType).append(") (").append(getErasure(returnType)).append(") values;\n");
+                } else if (AGGREGATION_ANY_TRUE.equals(aggregation) || AGGREGATION_ALL_TRUE.equals(aggregation)) {
+                    final boolean anyTrue = AGGREGATION_ANY_TRUE.equals(aggregation);
+                    source.append("            for (int i = plugins.length - 1; i >= 0; i--) {\n");
+                    source.append("                if (").append(anyTrue ? "" : "!").append(invocation).append(") {\n");
+                    source.append("                    return ").append(anyTrue).append(";\n");
+                    source.append("                }\n");
+                    source.append("            }\n");
+                    source.append("            return ").append(!anyTrue).append(";\n");
+                } else {
+                    source.append("            ").append(returnType).append(" returnValue = ").append(getDefaultValue(returnType)).append(";\n\n");
+                    source.append("            for (int i = plugins.length - 1; i >= 0; i--) {\n");
+                    source.append("                returnValue = ").append(invocation).append(";\n");
+                    source.append("            }\n");
+                    source.append("            return returnValue;\n");
+                }
+                source.append("        }\n\n");
+            }
+
+            final String boxedType = getBoxedType(returnType);
+
+            if (returnType.getKind().isPrimitive()) {
+                source.append("        final Object returnValue = invoke(METHOD_").append(index).append(", ").append(getArgumentArray(parameters.size())).append(");\n");
+                source.append("        return (returnValue != null) ? (").append(boxedType).append(") returnValue : ").append(getDefaultValue(returnType)).append(";\n");
+            } else if (isObject(returnType)) {
+                source.append("        return invoke(METHOD_").append(index).append(", ").append(getArgumentArray(parameters.size())).append(");\n");
+            } else {
+                source.append("        return (").append(boxedType).append(") invoke(METHOD_").append(index).append(", ").append(getArgumentArray(parameters.size())).append(");\n");
+            }
+        } else {
+            source.append("        if (plugins != null) {\n");
+            source.append("            for (int i = plugins.length - 1; i >= 0; i--) {\n");
+            source.append("                ((").append(interfaceName).append(") plugins[i]).").append(methodName).append('(').append(arguments).append(");\n");
+            source.append("            }\n");
+            source.append("        } else {\n");
+            source.append("            invoke(METHOD_").append(index).append(", ").append(getArgumentArray(parameters.size())).append(");\n");
+            source.append("        }\n");
+        }
+
+        source.append("    }\n");
+    }
+
+    /**
+     * Validates the aggregation of the given method and reports an error if the aggregation does
+     * not match the return type of the method.
+     *
+     * @return {@code true} if a direct dispatch can be generated for the aggregation, or
+     * {@code false} if the invocation has to be always delegated to the invocation handler.
+     */
+    private boolean isDirectAggregation(final ExecutableElement method, final TypeMirror returnType, final String aggregation) {
+
+        final Types types = processingEnv.getTypeUtils();
+        final Elements elements = processingEnv.getElementUtils();
+        String requirement = null;
+
+        if (AGGREGATION_LAST.equals(aggregation)) {
+            return true;
+        } else if (AGGREGATION_FIRST_NON_NULL.equals(aggregation)) {
+            if (returnType.getKind().isPrimitive()) {
+                requirement = "a non-primitive return type";
+            }
+        } else if (AGGREGATION_LIST.equals(aggregation)) {
+            final TypeMirror erasure = types.erasure(returnType);
+            final TypeMirror listType = types.erasure(elements.getTypeElement("java.util.List").asType());
+            final TypeMirror collectionType = types.erasure(elements.getTypeElement("java.util.Collection").asType());
+
+            if (!types.isSameType(erasure, listType) && !types.isSameType(erasure, collectionType)) {
+                requirement = "return type List or Collection";
+            }
+        } else if (AGGREGATION_ANY_TRUE.equals(aggregation) || AGGREGATION_ALL_TRUE.equals(aggregation)) {
+            if (returnType.getKind() != TypeKind.BOOLEAN) {
+                requirement = "return type boolean";
+            }
+        } else {
+            // REDUCE is dispatched by the invocation handler using the declared reducer
+            return false;
+        }
+
+        if (requirement != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Aggregation " + aggregation + " requires " + requirement, method);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the name of the aggregation declared for the given method using
+     * {@code Plugin.Aggregate}.
+     *
+     * @param method An {@link ExecutableElement}.
+     * @return The name of the aggregation constant.
+     */
+    private String getAggregation(final ExecutableElement method) {
+
+        for (final AnnotationMirror annotation : method.getAnnotationMirrors()) {
+            final TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+
+            if (annotationType.getQualifiedName().contentEquals(CLASS_AGGREGATE)) {
+                for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        return ((VariableElement) entry.getValue().getValue()).getSimpleName().toString();
+                    }
+                }
+            }
+        }
+        return AGGREGATION_LAST;
+    }
+
+    /**
+     * Gets the name of the thread affinity declared for the given interface using
+     * {@code Plugin.Affinity}.
+     *
+     * @param element A {@link TypeElement}.
+     * @return The name of the thread affinity constant.
+     */
+    private String getAffinity(final TypeElement element) {
+
+        for (final AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            final TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+
+            if (annotationType.getQualifiedName().contentEquals(CLASS_AFFINITY)) {
+                for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        return ((VariableElement) entry.getValue().getValue()).getSimpleName().toString();
+                    }
+                }
+            }
+        }
+        return AFFINITY_MAIN;
+    }
+
+    private boolean isObject(final TypeMirror type) {
+        return getErasure(type).equals(Object.class.getName());
+    }
+
+    private String getErasure(final TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private String getBoxedType(final TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((javax.lang.model.type.PrimitiveType) type).getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    private static String getDefaultValue(final TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "false";
+            case CHAR:
+                return "(char) 0";
+            case BYTE:
+                return "(byte) 0";
+            case SHORT:
+                return "(short) 0";
+            case INT:
+                return "0";
+            case LONG:
+                return "0L";
+            case FLOAT:
+                return "0f";
+            case DOUBLE:
+                return "0d";
+            default:
+                return "null";
+        }
+    }
+
+    private static String getArguments(final int count) {
+        final StringBuilder arguments = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                arguments.append(", ");
+            }
+            arguments.append("arg").append(i);
+        }
+        return arguments.toString();
+    }
+
+    private static String getArgumentArray(final int count) {
+        if (count == 0) {
+            return "null";
+        }
+        return "new Object[]{" + getArguments(count) + "}";
+    }
+}